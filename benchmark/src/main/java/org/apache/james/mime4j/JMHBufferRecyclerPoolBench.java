@@ -0,0 +1,167 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.mime4j.stream.EntityState;
+import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimeTokenStream;
+import org.apache.james.mime4j.util.BufferRecyclerPools;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Parses a batch of messages concurrently, each on its own task, to compare
+ * the buffer recycler pools on platform and virtual threads.
+ * <p>
+ * The <code>virtual</code> executor uses a virtual thread per task. On a JVM
+ * without virtual threads it falls back to a new platform thread per task,
+ * which has the same effect on thread-local recycling: no thread ever reuses a
+ * buffer.
+ */
+@State(Scope.Benchmark)
+public class JMHBufferRecyclerPoolBench {
+    private static final byte[] CONTENT = loadMessage("long-multipart.msg");
+    private static final int TASKS = 64;
+
+    @Param({"thread-local", "shared"})
+    public String pool;
+
+    @Param({"platform", "virtual"})
+    public String executor;
+
+    private ExecutorService executorService;
+    private MimeConfig config;
+
+    @Test
+    public void launchBenchmark() throws Exception {
+        Options opt = new OptionsBuilder()
+            .include(this.getClass().getName() + ".benchmark*")
+            .mode(Mode.AverageTime)
+            .addProfiler(GCProfiler.class)
+            .timeUnit(TimeUnit.MICROSECONDS)
+            .warmupTime(TimeValue.seconds(5))
+            .warmupIterations(2)
+            .measurementTime(TimeValue.seconds(5))
+            .measurementIterations(5)
+            .threads(1)
+            .forks(1)
+            .shouldFailOnError(true)
+            .shouldDoGC(true)
+            .build();
+
+        new Runner(opt).run();
+    }
+
+    private static byte[] loadMessage(String resourceName) {
+        try {
+            ClassLoader cl = JMHBufferRecyclerPoolBench.class.getClassLoader();
+
+            ByteArrayOutputStream outstream = new ByteArrayOutputStream();
+            try (InputStream instream = cl.getResourceAsStream(resourceName)) {
+                ContentUtil.copy(instream, outstream);
+            }
+
+            return outstream.toByteArray();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            // Java 21+
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BufferRecyclerPools.setDefault(BufferRecyclerPools.forName(pool));
+        config = MimeConfig.custom().setBufferRecyclerPool(BufferRecyclerPools.forName(pool)).build();
+        if (executor.equals("virtual")) {
+            executorService = newThreadPerTaskExecutor();
+        } else {
+            executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executorService.shutdown();
+        BufferRecyclerPools.setDefault(null);
+    }
+
+    @Benchmark
+    public void benchmarkParse(Blackhole bh) throws Exception {
+        List<Future<Integer>> results = new ArrayList<>(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            results.add(executorService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    MimeTokenStream stream = new MimeTokenStream(config);
+                    stream.parse(new ByteArrayInputStream(CONTENT));
+                    int total = 0;
+                    for (EntityState state = stream.getState(); state != EntityState.T_END_OF_STREAM; state = stream
+                        .next()) {
+                        if (state == EntityState.T_BODY) {
+                            total += ContentUtil.buffer(stream.getDecodedInputStream()).length;
+                        }
+                    }
+                    stream.stop();
+                    return total;
+                }
+            }));
+        }
+        for (Future<Integer> result : results) {
+            bh.consume(result.get());
+        }
+    }
+}
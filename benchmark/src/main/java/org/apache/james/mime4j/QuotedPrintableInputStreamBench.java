@@ -34,9 +34,16 @@ import org.apache.james.mime4j.util.ContentUtil;
 public class QuotedPrintableInputStreamBench {
 
     public static void main(String[] args) throws Exception {
+        // random bytes, most of them escaped
         byte[] data = initData(2 * 1024 * 1024);
-        byte[] encoded = encode(data);
+        run("heavily escaped", data, encode(data));
 
+        // text lines, with an occasional escaped byte
+        byte[] text = initText(2 * 1024 * 1024);
+        run("mostly plain", text, encodeText(text));
+    }
+
+    private static void run(String name, byte[] data, byte[] encoded) throws Exception {
         // decoder test to make sure everything is okay
 
         testDecode(data, encoded);
@@ -68,6 +75,7 @@ public class QuotedPrintableInputStreamBench {
 
         double mbPerSec = (totalBytes / 1024.0 / 1024) / (dt / 1000.0);
 
+        System.out.println(name + ":");
         System.out.println(dt + " ms");
         System.out.println(totalBytes + " bytes");
         System.out.println(mbPerSec + " mb/sec");
@@ -80,6 +88,37 @@ public class QuotedPrintableInputStreamBench {
         return data;
     }
 
+    private static byte[] initText(int size) {
+        Random random = new Random(size);
+        byte[] data = new byte[size];
+        int column = 0;
+        for (int i = 0; i < size; i++) {
+            if (column >= 60 && i < size - 1) {
+                data[i++] = '\r';
+                data[i] = '\n';
+                column = 0;
+                continue;
+            }
+            int r = random.nextInt(200);
+            if (r == 0) {
+                data[i] = (byte) 0xe9;
+            } else if (r < 30 && column > 0 && data[i - 1] != ' ') {
+                data[i] = ' ';
+            } else {
+                data[i] = (byte) ('a' + random.nextInt(26));
+            }
+            column++;
+        }
+        return data;
+    }
+
+    private static byte[] encodeText(byte[] data) throws IOException {
+        InputStream in = new ByteArrayInputStream(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncoderUtil.encodeQ(in, out);
+        return out.toByteArray();
+    }
+
     private static byte[] encode(byte[] data) throws IOException {
         InputStream in = new ByteArrayInputStream(data);
         ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -21,9 +21,9 @@ package org.apache.james.mime4j.codec;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.SoftReference;
 
 import org.apache.james.mime4j.util.BufferRecycler;
+import org.apache.james.mime4j.util.BufferRecyclerPools;
 import org.apache.james.mime4j.util.ByteArrayBuffer;
 import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
 
@@ -31,18 +31,8 @@ import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
  * Performs Base-64 decoding on an underlying stream.
  */
 public class Base64InputStream extends InputStream {
-    protected static final ThreadLocal<SoftReference<BufferRecycler>> _recyclerRef = new ThreadLocal<>();
-
     public static BufferRecycler getBufferRecycler() {
-        SoftReference<BufferRecycler> ref = _recyclerRef.get();
-        BufferRecycler br = (ref == null) ? null : ref.get();
-
-        if (br == null) {
-            br = new BufferRecycler();
-            ref = new SoftReference<>(br);
-            _recyclerRef.set(ref);
-        }
-        return br;
+        return BufferRecyclerPools.getDefault().getBufferRecycler();
     }
     private static final int ENCODED_BUFFER_SIZE = 1536;
 
@@ -197,6 +187,13 @@ public class Base64InputStream extends InputStream {
             // decode buffer
 
             while (position < size && index < to) {
+                if (sextets == 0) {
+                    index = decodeQuanta(buffer, index, to);
+                    if (position == size || index == to) {
+                        continue;
+                    }
+                }
+
                 int value = encoded[position++] & 0xff;
 
                 if (value == BASE64_PAD) {
@@ -254,6 +251,45 @@ public class Base64InputStream extends InputStream {
         return to - off;
     }
 
+    /**
+     * Decodes whole quanta of four base64 chars, as long as they fit in the
+     * given buffer, skipping CRLF line breaks between them. Stops before
+     * padding, any other byte, a quantum that is not fully buffered or the
+     * end of the given buffer, which are left to the byte by byte loop.
+     *
+     * @return the index following the last decoded byte.
+     */
+    private int decodeQuanta(final byte[] buffer, int index, final int to) {
+        final byte[] encoded = this.encoded;
+        final int[] table = BASE64_DECODE;
+        final int size = this.size;
+        int p = position;
+        while (index < to - 2) {
+            if (p < size - 1 && encoded[p] == 0x0D && encoded[p + 1] == 0x0A) {
+                p += 2;
+                continue;
+            }
+            if (p > size - 4) {
+                break;
+            }
+            int s1 = table[encoded[p] & 0xff];
+            int s2 = table[encoded[p + 1] & 0xff];
+            int s3 = table[encoded[p + 2] & 0xff];
+            int s4 = table[encoded[p + 3] & 0xff];
+            if ((s1 | s2 | s3 | s4) < 0) {
+                break;
+            }
+            int data = (s1 << 18) | (s2 << 12) | (s3 << 6) | s4;
+            buffer[index] = (byte) (data >>> 16);
+            buffer[index + 1] = (byte) (data >>> 8);
+            buffer[index + 2] = (byte) data;
+            index += 3;
+            p += 4;
+        }
+        position = p;
+        return index;
+    }
+
     private int decodePad(int data, int sextets, final byte[] buffer,
             int index, final int end) throws IOException {
         eof = true;
@@ -19,35 +19,26 @@
 
 package org.apache.james.mime4j.codec;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.lang.ref.SoftReference;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
 
 import org.apache.james.mime4j.io.InputStreams;
 import org.apache.james.mime4j.util.BufferRecycler;
+import org.apache.james.mime4j.util.BufferRecyclerPools;
 import org.apache.james.mime4j.util.CharsetUtil;
+import org.apache.james.mime4j.util.ContentUtil;
 import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
 
 /**
  * Static methods for decoding strings, byte arrays and encoded words.
  */
 public class DecoderUtil {
-    protected static final ThreadLocal<SoftReference<BufferRecycler>> _recyclerRef = new ThreadLocal<>();
-
     public static BufferRecycler getBufferRecycler() {
-        SoftReference<BufferRecycler> ref = _recyclerRef.get();
-        BufferRecycler br = (ref == null) ? null : ref.get();
-
-        if (br == null) {
-            br = new BufferRecycler();
-            ref = new SoftReference<>(br);
-            _recyclerRef.set(ref);
-        }
-        return br;
+        return BufferRecyclerPools.getDefault().getBufferRecycler();
     }
 
     /**
@@ -215,133 +206,275 @@ public class DecoderUtil {
     public static String decodeEncodedWords(String body, DecodeMonitor monitor, Charset fallback,
             Map<Charset, Charset> charsetOverrides)
             throws IllegalArgumentException {
+        if (body.indexOf("=?") < 0) {
+            return body;
+        }
+        EncodedWordDecoder decoder = new EncodedWordDecoder(body, monitor, fallback, charsetOverrides);
+        try {
+            return decoder.decode();
+        } finally {
+            decoder.release();
+        }
+    }
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        StringBuilder sb = new StringBuilder();
-        int position = 0;
-        String mimeCharset ="";
-        String encoding ="";
-
-        while (position < body.length()) {
-            int startPattern = body.indexOf("=?", position);
-            if (startPattern < 0) {
-                if (position == 0) {
-                    return body;
-                }
-                appendStringBuffer(fallback, charsetOverrides, out, sb, mimeCharset);
-                sb.append(body, position, body.length());
-                break;
-            }
+    /**
+     * Decodes the encoded words of a string by index, without extracting
+     * them. The bytes of consecutive words of the same charset and encoding
+     * are decoded into a single recycled buffer, and turned into chars at
+     * once.
+     */
+    private static final class EncodedWordDecoder {
+
+        private final String body;
+        private final DecodeMonitor monitor;
+        private final Charset fallback;
+        private final Map<Charset, Charset> charsetOverrides;
+        private final StringBuilder sb;
+
+        private byte[] buf;
+        private int length;
+
+        // charset and encoding of the last encoded word, and of the buffered bytes
+        private String mimeCharset;
+        private String encoding;
+        private Charset charset;
+
+        EncodedWordDecoder(String body, DecodeMonitor monitor, Charset fallback,
+                Map<Charset, Charset> charsetOverrides) {
+            this.body = body;
+            this.monitor = monitor;
+            this.fallback = fallback;
+            this.charsetOverrides = charsetOverrides;
+            this.sb = new StringBuilder(body.length());
+            this.buf = getBufferRecycler().allocByteBuffer(1, body.length());
+        }
 
-            int charsetEnd = body.indexOf('?', startPattern + 2);
-            int encodingEnd = body.indexOf('?', charsetEnd + 1);
-            int encodedTextEnd = body.indexOf("?=", encodingEnd + 1);
-
-            if (charsetEnd < 0 || encodingEnd < 0 || encodedTextEnd < 0) {
-                // Invalid pattern
-                appendStringBuffer(fallback, charsetOverrides, out, sb, mimeCharset);
-                sb.append(body, position, startPattern + 2);
-                position = startPattern + 2;
-            } else if (encodingEnd == encodedTextEnd) {
-                appendStringBuffer(fallback, charsetOverrides, out, sb, mimeCharset);
-                sb.append(body, position, Math.min(encodedTextEnd + 2, body.length()));
-                position = encodedTextEnd +2;
-            } else {
-                String separator = body.substring(position, startPattern);
-                if ((!CharsetUtil.isWhitespace(separator) || position == 0) && !separator.isEmpty()) {
-                    appendStringBuffer(fallback, charsetOverrides, out, sb, mimeCharset);
-                    sb.append(separator);
+        String decode() {
+            int position = 0;
+            while (position < body.length()) {
+                int startPattern = body.indexOf("=?", position);
+                if (startPattern < 0) {
+                    flush();
+                    sb.append(body, position, body.length());
+                    break;
                 }
-                String mimeCurCharset = body.substring(startPattern + 2, charsetEnd);
-                String curEncoding = body.substring(charsetEnd + 1, encodingEnd);
-                String encodedText = body.substring(encodingEnd + 1, encodedTextEnd);
 
-                if (!mimeCharset.isEmpty() && !mimeCurCharset.equals(mimeCharset)){
-                    appendStringBuffer(fallback, charsetOverrides, out, sb, mimeCharset);
-                }
+                int charsetEnd = body.indexOf('?', startPattern + 2);
+                int encodingEnd = body.indexOf('?', charsetEnd + 1);
+                int encodedTextEnd = body.indexOf("?=", encodingEnd + 1);
+
+                if (charsetEnd < 0 || encodingEnd < 0 || encodedTextEnd < 0) {
+                    // Invalid pattern
+                    flush();
+                    sb.append(body, position, startPattern + 2);
+                    position = startPattern + 2;
+                } else if (encodingEnd == encodedTextEnd) {
+                    flush();
+                    sb.append(body, position, Math.min(encodedTextEnd + 2, body.length()));
+                    position = encodedTextEnd + 2;
+                } else {
+                    if (startPattern > position && (position == 0 || !isWhitespace(position, startPattern))) {
+                        flush();
+                        sb.append(body, position, startPattern);
+                    }
+                    if (!matches(mimeCharset, startPattern + 2, charsetEnd)) {
+                        flush();
+                        mimeCharset = body.substring(startPattern + 2, charsetEnd);
+                        charset = lookupCharset(mimeCharset, fallback, charsetOverrides);
+                    }
+                    if (!matches(encoding, charsetEnd + 1, encodingEnd)) {
+                        flush();
+                        encoding = body.substring(charsetEnd + 1, encodingEnd);
+                    }
 
-                if (!encoding.isEmpty() && !curEncoding.equals(encoding)){
-                    appendStringBuffer(fallback, charsetOverrides, out, sb, mimeCharset);
+                    if (encodedTextEnd > encodingEnd + 1 && !tryDecodeEncodedWord(encodingEnd + 1, encodedTextEnd)) {
+                        flush();
+                        sb.append(body, startPattern, encodedTextEnd + 2);
+                    }
+                    position = encodedTextEnd + 2;
                 }
+            }
+            flush();
+            return sb.toString();
+        }
 
-                mimeCharset=mimeCurCharset;
-                encoding=curEncoding;
+        void release() {
+            getBufferRecycler().releaseByteBuffer(1, buf);
+        }
 
-                if (encodedText.isEmpty()) {
-                    position = encodedTextEnd + 2;
-                    continue;
+        private boolean matches(String s, int from, int to) {
+            return s != null && s.length() == to - from && body.regionMatches(from, s, 0, s.length());
+        }
+
+        private boolean isWhitespace(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (!CharsetUtil.isWhitespace(body.charAt(i))) {
+                    return false;
                 }
-                byte []decoded;
-
-                decoded = tryDecodeEncodedWord(mimeCurCharset, curEncoding, encodedText, monitor, fallback, charsetOverrides);
-                if (decoded != null) {
-                    if (0 < decoded.length) {
-                        try {
-                            out.write(decoded);
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                    }
-                } else {
-                    sb.append(body, startPattern, encodedTextEnd + 2);
+            }
+            return true;
+        }
+
+        private void flush() {
+            if (length > 0) {
+                sb.append(ContentUtil.decode(charset, buf, 0, length));
+                length = 0;
+            }
+        }
+
+        /**
+         * Decodes the text of an encoded word, appending its bytes to the
+         * buffer.
+         *
+         * @return <code>false</code> if the word cannot be decoded.
+         */
+        private boolean tryDecodeEncodedWord(int from, int to) {
+            if (charset == null) {
+                monitor(monitor, mimeCharset, encoding, body.substring(from, to), "leaving word encoded",
+                        "Mime charser '", mimeCharset, "' doesn't have a corresponding Java charset");
+                return false;
+            }
+            boolean q = encoding.equalsIgnoreCase("Q");
+            if (!q && !encoding.equalsIgnoreCase("B")) {
+                monitor(monitor, mimeCharset, encoding, body.substring(from, to), "leaving word encoded",
+                        "Warning: Unknown encoding in encoded word");
+                return false;
+            }
+
+            int n = q ? decodeQInPlace(body, from, to, buf, length) : decodeBInPlace(body, from, to, buf, length);
+            if (n >= 0) {
+                length += n;
+                return true;
+            }
+            // malformed, left to the lenient decoders
+            String encodedText = body.substring(from, to);
+            try {
+                byte[] decoded = q ? decodeByteAryQ(encodedText, monitor) : decodeByteAryB(encodedText, monitor);
+                if (length + decoded.length > buf.length) {
+                    buf = Arrays.copyOf(buf, Math.max(buf.length * 2, length + decoded.length));
                 }
-                position = encodedTextEnd + 2;
+                System.arraycopy(decoded, 0, buf, length, decoded.length);
+                length += decoded.length;
+                return true;
+            } catch (UnsupportedEncodingException e) {
+                monitor(monitor, mimeCharset, encoding, encodedText, "leaving word encoded",
+                        "Unsupported encoding (", e.getMessage(), ") in encoded word");
+                return false;
+            } catch (RuntimeException e) {
+                monitor(monitor, mimeCharset, encoding, encodedText, "leaving word encoded",
+                        "Could not decode (", e.getMessage(), ") encoded word");
+                return false;
             }
         }
-        appendStringBuffer(fallback, charsetOverrides, out, sb,mimeCharset);
 
-        return sb.toString();
     }
 
-    private static void appendStringBuffer(Charset fallback, Map<Charset, Charset> charsetOverrides, ByteArrayOutputStream out, StringBuilder sb, String mimeCharset) {
-        if (0 < out.size()) {
-            byte[] byTemp = out.toByteArray();
-            Charset charset = lookupCharset(mimeCharset, fallback, charsetOverrides);
-            sb.append(new String(byTemp, charset));
-            out.reset();
+    /**
+     * Decodes well-formed 'Q' encoded text in place: printable ASCII chars,
+     * underscores and valid escapes only.
+     *
+     * @return the number of bytes decoded to <code>dst</code>, or
+     *         <code>-1</code> if the text is malformed and must be decoded
+     *         by the lenient decoder.
+     */
+    private static int decodeQInPlace(String s, int from, int to, byte[] dst, int off) {
+        int index = off;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == '_') {
+                dst[index++] = 0x20;
+            } else if (c == '=') {
+                if (i + 2 >= to) {
+                    return -1;
+                }
+                int upper = hex(s.charAt(i + 1));
+                int lower = hex(s.charAt(i + 2));
+                if (upper < 0 || lower < 0) {
+                    return -1;
+                }
+                dst[index++] = (byte) ((upper << 4) | lower);
+                i += 2;
+            } else if (c > 0x20 && c < 0x7f) {
+                dst[index++] = (byte) c;
+            } else {
+                return -1;
+            }
         }
+        return index - off;
     }
 
-    // return null on error
-    private static byte[] tryDecodeEncodedWord(
-            final String mimeCharset,
-            final String encoding,
-            final String encodedText,
-            final DecodeMonitor monitor,
-            final Charset fallback,
-            final Map<Charset, Charset> charsetOverrides) {
-        Charset charset = lookupCharset(mimeCharset, fallback, charsetOverrides);
-        if (charset == null) {
-            monitor(monitor, mimeCharset, encoding, encodedText, "leaving word encoded",
-                    "Mime charser '", mimeCharset, "' doesn't have a corresponding Java charset");
-            return null;
+    /**
+     * Decodes well-formed 'B' encoded text in place: whole quanta of base64
+     * chars, the last one possibly padded.
+     *
+     * @return the number of bytes decoded to <code>dst</code>, or
+     *         <code>-1</code> if the text is malformed and must be decoded
+     *         by the lenient decoder.
+     */
+    private static int decodeBInPlace(String s, int from, int to, byte[] dst, int off) {
+        if ((to - from) % 4 != 0) {
+            return -1;
+        }
+        int index = off;
+        for (int i = from; i < to; i += 4) {
+            int s1 = base64(s.charAt(i));
+            int s2 = base64(s.charAt(i + 1));
+            if ((s1 | s2) < 0) {
+                return -1;
+            }
+            char c3 = s.charAt(i + 2);
+            char c4 = s.charAt(i + 3);
+            if (c4 == '=' && i + 4 == to) {
+                if (c3 == '=') {
+                    dst[index++] = (byte) ((s1 << 2) | (s2 >>> 4));
+                    return index - off;
+                }
+                int s3 = base64(c3);
+                if (s3 < 0) {
+                    return -1;
+                }
+                dst[index++] = (byte) ((s1 << 2) | (s2 >>> 4));
+                dst[index++] = (byte) ((s2 << 4) | (s3 >>> 2));
+                return index - off;
+            }
+            int s3 = base64(c3);
+            int s4 = base64(c4);
+            if ((s3 | s4) < 0) {
+                return -1;
+            }
+            int data = (s1 << 18) | (s2 << 12) | (s3 << 6) | s4;
+            dst[index++] = (byte) (data >>> 16);
+            dst[index++] = (byte) (data >>> 8);
+            dst[index++] = (byte) data;
         }
+        return index - off;
+    }
 
-        if (encodedText.length() == 0) {
-            monitor(monitor, mimeCharset, encoding, encodedText, "leaving word encoded",
-                    "Missing encoded text in encoded word");
-            return null;
+    private static int hex(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else {
+            return -1;
         }
+    }
 
-        try {
-            if (encoding.equalsIgnoreCase("Q")) {
-                return decodeByteAryQ(encodedText, monitor);
-            } else if (encoding.equalsIgnoreCase("B")) {
-                return decodeByteAryB(encodedText, monitor);
-            } else {
-                monitor(monitor, mimeCharset, encoding, encodedText, "leaving word encoded",
-                        "Warning: Unknown encoding in encoded word");
-                return null;
-            }
-        } catch (UnsupportedEncodingException e) {
-            // should not happen because of isDecodingSupported check above
-            monitor(monitor, mimeCharset, encoding, encodedText, "leaving word encoded",
-                    "Unsupported encoding (", e.getMessage(), ") in encoded word");
-            return null;
-        } catch (RuntimeException e) {
-            monitor(monitor, mimeCharset, encoding, encodedText, "leaving word encoded",
-                    "Could not decode (", e.getMessage(), ") encoded word");
-            return null;
+    private static int base64(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        } else if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        } else if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        } else if (c == '+') {
+            return 62;
+        } else if (c == '/') {
+            return 63;
+        } else {
+            return -1;
         }
     }
 
@@ -21,9 +21,9 @@ package org.apache.james.mime4j.codec;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.SoftReference;
 
 import org.apache.james.mime4j.util.BufferRecycler;
+import org.apache.james.mime4j.util.BufferRecyclerPools;
 import org.apache.james.mime4j.util.ByteArrayBuffer;
 import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
 
@@ -31,18 +31,8 @@ import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
  * Performs Quoted-Printable decoding on an underlying stream.
  */
 public class QuotedPrintableInputStream extends InputStream {
-    protected static final ThreadLocal<SoftReference<BufferRecycler>> _recyclerRef = new ThreadLocal<>();
-
     public static BufferRecycler getBufferRecycler() {
-        SoftReference<BufferRecycler> ref = _recyclerRef.get();
-        BufferRecycler br = (ref == null) ? null : ref.get();
-
-        if (br == null) {
-            br = new BufferRecycler();
-            ref = new SoftReference<>(br);
-            _recyclerRef.set(ref);
-        }
-        return br;
+        return BufferRecyclerPools.getDefault().getBufferRecycler();
     }
 
     private static final int DEFAULT_BUFFER_SIZE = 1024 * 2;
@@ -51,6 +41,21 @@ public class QuotedPrintableInputStream extends InputStream {
     private static final byte CR = 0x0D;
     private static final byte LF = 0x0A;
 
+    /** Bytes that end a run of literal bytes: '=' and whitespace, line breaks included */
+    private static final boolean[] RUN_END = new boolean[256];
+
+    /** Values of hexadecimal digits, negative for other bytes */
+    private static final int[] HEX = new int[256];
+
+    static {
+        for (int i = 0; i < RUN_END.length; i++) {
+            RUN_END[i] = i == EQ || Character.isWhitespace(i);
+            int digit = Character.digit(i, 16);
+            // negative enough for any value combined with it to be negative
+            HEX[i] = i < 0x80 && digit >= 0 ? digit : -0x100;
+        }
+    }
+
     private final byte[] singleByte = new byte[1];
 
     private final InputStream in;
@@ -200,6 +205,31 @@ public class QuotedPrintableInputStream extends InputStream {
             }
 
             while (pos < limit && index < to) {
+                // fast paths, taken when no blank or CR is pending
+                if (!lastWasCR && blanks.length() == 0) {
+                    int first = encoded[pos] & 0xFF;
+                    if (!RUN_END[first]) {
+                        int run = literalRun(Math.min(limit, pos + (to - index)));
+                        System.arraycopy(encoded, pos, buffer, index, run - pos);
+                        index += run - pos;
+                        pos = run;
+                        continue;
+                    } else if (first == EQ && pos + 3 <= limit) {
+                        int value = (HEX[encoded[pos + 1] & 0xFF] << 4) | HEX[encoded[pos + 2] & 0xFF];
+                        if (value >= 0) {
+                            buffer[index++] = (byte) value;
+                            pos += 3;
+                            continue;
+                        }
+                    } else if (first == CR && pos + 2 <= limit && encoded[pos + 1] == LF && index + 2 <= to) {
+                        // hard line break
+                        buffer[index++] = CR;
+                        buffer[index++] = LF;
+                        pos += 2;
+                        continue;
+                    }
+                }
+
                 int b = encoded[pos++] & 0xFF;
 
                 if (lastWasCR && b != LF) {
@@ -293,6 +323,40 @@ public class QuotedPrintableInputStream extends InputStream {
         return to - off;
     }
 
+    /**
+     * Finds the end of the run of literal bytes starting at the current
+     * position: bytes up to the next '=' or line break, including blanks
+     * followed by another byte of the same line. Blanks that may end a line
+     * are left to the state machine, which drops them.
+     *
+     * @param end index the run may not extend past.
+     * @return the index following the run.
+     */
+    private int literalRun(final int end) {
+        final byte[] encoded = this.encoded;
+        int run = pos;
+        while (run < end) {
+            int b = encoded[run] & 0xFF;
+            if (!RUN_END[b]) {
+                run++;
+                continue;
+            }
+            if (b == EQ || b == CR || b == LF) {
+                break;
+            }
+            int next = run + 1;
+            while (next < end && RUN_END[encoded[next] & 0xFF] && encoded[next] != EQ
+                    && encoded[next] != CR && encoded[next] != LF) {
+                next++;
+            }
+            if (next >= end || encoded[next] == CR || encoded[next] == LF) {
+                break;
+            }
+            run = next;
+        }
+        return run;
+    }
+
     /**
      * Converts '0' => 0, 'A' => 10, etc.
      * @param c ASCII character value.
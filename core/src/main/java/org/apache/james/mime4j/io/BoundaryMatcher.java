@@ -0,0 +1,170 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.io;
+
+import java.nio.ByteBuffer;
+
+import org.apache.james.mime4j.util.ByteScanner;
+import org.apache.james.mime4j.util.CharsetUtil;
+
+/**
+ * Pre-compiled matcher for a MIME multipart delimiter line
+ * (<code>"--" boundary</code>).
+ * <p>
+ * A delimiter can only appear at the start of a line, so instead of running a
+ * general substring search over the data, the matcher jumps from line feed to
+ * line feed (eight bytes at a time, see {@link ByteScanner}) and only compares
+ * the delimiter at line starts. A matcher is immutable and built once per
+ * boundary.
+ */
+public final class BoundaryMatcher {
+
+    /** A delimiter line starts at the given offset */
+    public static final int MATCH = 1;
+    /** No delimiter line starts at the given offset */
+    public static final int NO_MATCH = 0;
+    /** More data is needed to decide */
+    public static final int UNDECIDED = -1;
+
+    private final byte[] delimiter;
+
+    /**
+     * @param boundary Boundary string (not including leading hyphens).
+     */
+    public BoundaryMatcher(String boundary) {
+        this.delimiter = new byte[boundary.length() + 2];
+        this.delimiter[0] = (byte) '-';
+        this.delimiter[1] = (byte) '-';
+        for (int i = 0; i < boundary.length(); i++) {
+            this.delimiter[i + 2] = (byte) boundary.charAt(i);
+        }
+    }
+
+    /**
+     * @return length of the delimiter, leading hyphens included.
+     */
+    public int length() {
+        return delimiter.length;
+    }
+
+    /**
+     * Looks for a delimiter line in <code>buf[from, to)</code>.
+     * <p>
+     * A delimiter matches when it is followed by whitespace, by <code>"--"</code>
+     * or by the end of the data. Only <code>from</code> (when
+     * <code>lineStart</code> is set) and positions immediately following a LF are
+     * considered.
+     *
+     * @param buf data to search.
+     * @param view long view of <code>buf</code> (see {@link ByteScanner#longView(byte[])}),
+     *        may be <code>null</code>.
+     * @param from first index to inspect (inclusive).
+     * @param to last index to inspect (exclusive).
+     * @param lineStart whether <code>from</code> is the start of a line.
+     * @return index of the first hyphen of the delimiter, or <code>-1</code>.
+     */
+    public int indexOf(byte[] buf, ByteBuffer view, int from, int to, boolean lineStart) {
+        int i = from;
+        if (lineStart && matchesAt(buf, i, to)) {
+            return i;
+        }
+        for (;;) {
+            int lf = ByteScanner.indexOf(buf, view, (byte) '\n', i, to);
+            if (lf == -1) {
+                return -1;
+            }
+            i = lf + 1;
+            if (matchesAt(buf, i, to)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Decides whether a delimiter line starts at <code>off</code> when the data
+     * may be incomplete, as is the case when parsing input as it arrives.
+     *
+     * @param buf data to inspect.
+     * @param off start of the line.
+     * @param to end of the data available so far (exclusive).
+     * @param endOfStream whether no data follows <code>to</code>.
+     * @return {@link #MATCH}, {@link #NO_MATCH}, or {@link #UNDECIDED} if more
+     *         data is needed to decide.
+     */
+    public int match(byte[] buf, int off, int to, boolean endOfStream) {
+        int avail = to - off;
+        int n = Math.min(avail, delimiter.length);
+        for (int i = 0; i < n; i++) {
+            if (buf[off + i] != delimiter[i]) {
+                return NO_MATCH;
+            }
+        }
+        if (avail < delimiter.length) {
+            return endOfStream ? NO_MATCH : UNDECIDED;
+        }
+        if (avail == delimiter.length) {
+            return endOfStream ? MATCH : UNDECIDED;
+        }
+        char ch = (char) (buf[off + delimiter.length] & 0xff);
+        if (CharsetUtil.isWhitespace(ch)) {
+            return MATCH;
+        }
+        if (ch != '-') {
+            return NO_MATCH;
+        }
+        if (avail == delimiter.length + 1) {
+            return endOfStream ? NO_MATCH : UNDECIDED;
+        }
+        return buf[off + delimiter.length + 1] == '-' ? MATCH : NO_MATCH;
+    }
+
+    private boolean matchesAt(byte[] buf, int off, int to) {
+        int pos = off + delimiter.length;
+        if (pos > to) {
+            return false;
+        }
+        for (int i = 0; i < delimiter.length; i++) {
+            if (buf[off + i] != delimiter[i]) {
+                return false;
+            }
+        }
+        int remaining = to - pos;
+        if (remaining <= 0) {
+            // the delimiter is terminated with EOS
+            return true;
+        }
+        // or with a whitespace or '--'
+        char ch = (char) (buf[pos] & 0xff);
+        if (CharsetUtil.isWhitespace(ch)) {
+            return true;
+        }
+        return ch == '-' && remaining > 1 && buf[pos + 1] == '-';
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder(delimiter.length);
+        for (byte b : delimiter) {
+            buffer.append((char) b);
+        }
+        return buffer.toString();
+    }
+
+}
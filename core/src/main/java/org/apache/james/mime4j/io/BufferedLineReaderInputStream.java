@@ -20,30 +20,22 @@
 package org.apache.james.mime4j.io;
 
 import org.apache.james.mime4j.util.BufferRecycler;
+import org.apache.james.mime4j.util.BufferRecyclerPools;
 import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.ByteScanner;
 import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 
 /**
  * Input buffer that can be used to search for patterns using Quick Search
  * algorithm in data read from an {@link InputStream}.
  */
 public class BufferedLineReaderInputStream extends LineReaderInputStream {
-    protected static final ThreadLocal<SoftReference<BufferRecycler>> _recyclerRef = new ThreadLocal<>();
-
     public static BufferRecycler getBufferRecycler() {
-        SoftReference<BufferRecycler> ref = _recyclerRef.get();
-        BufferRecycler br = (ref == null) ? null : ref.get();
-
-        if (br == null) {
-            br = new BufferRecycler();
-            ref = new SoftReference<>(br);
-            _recyclerRef.set(ref);
-        }
-        return br;
+        return BufferRecyclerPools.getDefault().getBufferRecycler();
     }
 
     private boolean truncated;
@@ -51,21 +43,38 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
     boolean tempBuffer = false;
 
     private byte[] origBuffer;
+    private ByteBuffer origBufferView;
     private int origBufpos;
     private int origBuflen;
+    private long origBytesConsumed;
 
     private byte[] buffer;
+    private ByteBuffer bufferView;
     private int bufpos;
-    private int bytesConsumed;
+    private long bytesConsumed;
     private int buflen;
     private int[] shiftTable;
 
     private final int maxLineLen;
+    private final boolean direct;
+    private final BufferRecycler bufferRecycler;
 
     public BufferedLineReaderInputStream(
             final InputStream instream,
             int buffersize,
             int maxLineLen) {
+        this(instream, buffersize, maxLineLen, getBufferRecycler());
+    }
+
+    /**
+     * @param bufferRecycler recycler the buffers of this stream are allocated
+     *        from and released to.
+     */
+    public BufferedLineReaderInputStream(
+            final InputStream instream,
+            int buffersize,
+            int maxLineLen,
+            final BufferRecycler bufferRecycler) {
         super(instream);
         if (instream == null) {
             throw new IllegalArgumentException("Input stream may not be null");
@@ -73,13 +82,14 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
         if (buffersize <= 0) {
             throw new IllegalArgumentException("Buffer size may not be negative or zero");
         }
-        BufferRecycler bufferRecycler = getBufferRecycler();
+        this.bufferRecycler = bufferRecycler;
         this.buffer = bufferRecycler.allocByteBuffer(0, buffersize);
+        this.bufferView = ByteScanner.longView(this.buffer);
         this.bufpos = 0;
         this.buflen = 0;
         this.maxLineLen = maxLineLen;
         this.truncated = false;
-        this.shiftTable = bufferRecycler.allocintBuffer(256);
+        this.direct = false;
 
         // When a new BufferedLineReaderInputStream is created at the start of each part,
         // we set the starting point for byte consumption to the previous value.
@@ -94,6 +104,85 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
         this(instream, buffersize, -1);
     }
 
+    /**
+     * Creates a direct stream that reads <code>b[off, off + len)</code> in place:
+     * the given array becomes the buffer of this stream and is never copied,
+     * compacted, modified or recycled.
+     *
+     * @param b complete content to read.
+     * @param off offset of the content within <code>b</code>.
+     * @param len length of the content.
+     * @param maxLineLen maximum line length, or <code>-1</code> for no limit.
+     */
+    public BufferedLineReaderInputStream(
+            final byte[] b,
+            int off,
+            int len,
+            int maxLineLen) {
+        this(b, off, len, maxLineLen, 0);
+    }
+
+    private BufferedLineReaderInputStream(
+            final byte[] b,
+            int off,
+            int len,
+            int maxLineLen,
+            long bytesConsumed) {
+        super(InputStreams.create(b, off + len, 0));
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.buffer = b;
+        this.bufferView = ByteScanner.longView(b);
+        this.bufpos = off;
+        this.buflen = off + len;
+        this.maxLineLen = maxLineLen;
+        this.truncated = false;
+        this.direct = true;
+        this.bytesConsumed = bytesConsumed;
+        this.bufferRecycler = getBufferRecycler();
+    }
+
+    /**
+     * Returns <code>true</code> if all the remaining content of this stream is
+     * held in place in its buffer, see
+     * {@link #BufferedLineReaderInputStream(byte[], int, int, int)}.
+     */
+    public boolean isDirect() {
+        return this.direct && !this.tempBuffer;
+    }
+
+    /**
+     * Detaches all the remaining content of a direct stream.
+     *
+     * @see #slice(int, int)
+     */
+    public BufferedLineReaderInputStream sliceRemaining(int maxLineLen) {
+        return slice(bufferLen(), maxLineLen);
+    }
+
+    /**
+     * Detaches the next <code>len</code> bytes of a direct stream as a new direct
+     * stream sharing the same backing array, and skips them in this stream.
+     *
+     * @param len number of buffered bytes to detach.
+     * @param maxLineLen maximum line length of the new stream.
+     * @return the detached stream, or <code>null</code> if this stream is not
+     *         direct (see {@link #isDirect()}).
+     */
+    public BufferedLineReaderInputStream slice(int len, int maxLineLen) {
+        if (!isDirect()) {
+            return null;
+        }
+        if (len < 0 || len > bufferLen()) {
+            throw new IndexOutOfBoundsException();
+        }
+        BufferedLineReaderInputStream slice = new BufferedLineReaderInputStream(
+                this.buffer, this.bufpos, len, maxLineLen, this.bytesConsumed);
+        skip(len);
+        return slice;
+    }
+
     private void expand(int newlen) {
         byte newbuffer[] = new byte[newlen];
         int len = bufferLen();
@@ -101,10 +190,12 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
             System.arraycopy(this.buffer, this.bufpos, newbuffer, this.bufpos, len);
         }
         this.buffer = newbuffer;
+        this.bufferView = ByteScanner.longView(newbuffer);
     }
 
     public void ensureCapacity(int len) {
-        if (len > this.buffer.length) {
+        // a direct stream already holds all of its content
+        if (!this.direct && len > this.buffer.length) {
             expand(len);
         }
     }
@@ -116,12 +207,18 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
             if (bufpos != buflen) throw new IllegalStateException("unread only works when a buffer is fully read before the next refill is asked!");
             // restore the original buffer
             buffer = origBuffer;
+            bufferView = origBufferView;
+            origBufferView = null;
             buflen = origBuflen;
             bufpos = origBufpos;
+            bytesConsumed = origBytesConsumed;
             tempBuffer = false;
             // return that we just read bufferLen data.
             return bufferLen();
         }
+        if (this.direct) {
+            return -1;
+        }
         // compact the buffer if necessary
         if (this.bufpos > 0) { // could swtich to (this.buffer.length / 2) but needs a 4*boundary capacity, then (instead of 2).
             int len = bufferLen();
@@ -157,9 +254,42 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
     }
 
     public void release() {
-        BufferRecycler bufferRecycler = getBufferRecycler();
-        bufferRecycler.releaseByteBuffer(0, buffer);
+        if (!this.direct) {
+            bufferRecycler.releaseByteBuffer(0, buffer);
+        }
         bufferRecycler.releaseIntBuffer(shiftTable);
+        shiftTable = null;
+    }
+
+    /**
+     * Skips all the remaining content of this stream without reading it through
+     * the buffer where possible: what the underlying stream reports as
+     * {@link InputStream#available() available} is skipped with
+     * {@link InputStream#skip(long)}, which is a position change for files and
+     * for content held in memory. Only what is left, if anything, is read.
+     *
+     * @return number of bytes skipped.
+     */
+    public long skipRemaining() throws IOException {
+        if (!readAllowed()) return 0;
+        long skipped = 0;
+        for (;;) {
+            skipped += skip(bufferLen());
+            if (!this.tempBuffer && !this.direct) {
+                int available = in.available();
+                if (available > 0) {
+                    long l = in.skip(available);
+                    if (l > 0) {
+                        this.bytesConsumed += l;
+                        skipped += l;
+                        continue;
+                    }
+                }
+            }
+            if (fillBuffer() == -1) {
+                return skipped;
+            }
+        }
     }
 
     protected boolean readAllowed() {
@@ -203,6 +333,20 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
         return chunk;
     }
 
+    /**
+     * Skips buffered content by moving the buffer position, without copying it.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0 || !readAllowed()) return 0;
+        while (!hasBufferedData()) {
+            if (fillBuffer() == -1) {
+                return 0;
+            }
+        }
+        return skip((int) Math.min(n, bufferLen()));
+    }
+
     @Override
     public int read(final byte[] b) throws IOException {
         if (!readAllowed()) return -1;
@@ -277,7 +421,9 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
         if (len < pattern.length) {
             return -1;
         }
-
+        if (shiftTable == null) {
+            shiftTable = bufferRecycler.allocintBuffer(256);
+        }
 
         for (int i = 0; i < shiftTable.length; i++) {
             shiftTable[i] = pattern.length + 1;
@@ -323,16 +469,27 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
         return indexOf(pattern, this.bufpos, this.buflen - this.bufpos);
     }
 
+    /**
+     * Looks for a delimiter line of the given matcher. Only <code>off</code>, when it is
+     * the current read position, and positions immediately following a LF are considered.
+     *
+     * @see BoundaryMatcher#indexOf(byte[], ByteBuffer, int, int, boolean)
+     */
+    public int indexOf(final BoundaryMatcher matcher, int off, int len) {
+        if (matcher == null) {
+            throw new IllegalArgumentException("Matcher may not be null");
+        }
+        if (off < this.bufpos || len < 0 || off + len > this.buflen) {
+            throw new IndexOutOfBoundsException("looking for "+off+"("+len+")"+" in "+bufpos+"/"+buflen);
+        }
+        return matcher.indexOf(this.buffer, this.bufferView, off, off + len, off == this.bufpos);
+    }
+
     public int indexOf(byte b, int off, int len) {
         if (off < this.bufpos || len < 0 || off + len > this.buflen) {
             throw new IndexOutOfBoundsException();
         }
-        for (int i = off; i < off + len; i++) {
-            if (this.buffer[i] == b) {
-                return i;
-            }
-        }
-        return -1;
+        return ByteScanner.indexOf(this.buffer, this.bufferView, b, off, off + len);
     }
 
     public int indexOf(byte b) {
@@ -412,11 +569,17 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
     public boolean unread(ByteArrayBuffer buf) {
         if (tempBuffer) return false;
         origBuffer = buffer;
+        origBufferView = bufferView;
         origBuflen = buflen;
         origBufpos = bufpos;
+        // unread bytes were already counted: account for them as immediately
+        // preceding the current position while they are read again
+        origBytesConsumed = bytesConsumed;
+        bytesConsumed -= buf.length();
         bufpos = 0;
         buflen = buf.length();
         buffer = buf.buffer();
+        bufferView = ByteScanner.longView(buffer, buflen);
         tempBuffer = true;
         return true;
     }
@@ -425,17 +588,21 @@ public class BufferedLineReaderInputStream extends LineReaderInputStream {
     public boolean unread(RecycledByteArrayBuffer buf) {
         if (tempBuffer) return false;
         origBuffer = buffer;
+        origBufferView = bufferView;
         origBuflen = buflen;
         origBufpos = bufpos;
+        origBytesConsumed = bytesConsumed;
+        bytesConsumed -= buf.length();
         bufpos = 0;
         buflen = buf.length();
         buffer = buf.buffer();
+        bufferView = ByteScanner.longView(buffer, buflen);
         tempBuffer = true;
         return true;
     }
 
     @Override
-    public int getBytesConsumed() {
+    public long getBytesConsumed() {
         return bytesConsumed;
     }
 
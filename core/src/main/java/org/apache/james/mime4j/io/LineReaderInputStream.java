@@ -69,7 +69,7 @@ public abstract class LineReaderInputStream extends FilterInputStream {
      * @return The count of bytes consumed.
      * @throws RuntimeException if the method is not implemented by the concrete subclass.
      */
-    public int getBytesConsumed() {
+    public long getBytesConsumed() {
         throw new RuntimeException("Not Implemented");
     }
 
@@ -131,27 +131,27 @@ public class LineReaderInputStreamAdaptor extends LineReaderInputStream {
         return bis != null && bis.unread(buf);
     }
 
+    /**
+     * Skips through the underlying stream, which does not copy the content when
+     * it is a {@link BufferedLineReaderInputStream} or a
+     * {@link MimeBoundaryInputStream}. Returns 0 at the end of the stream only.
+     */
     @Override
     public long skip(long count) throws IOException {
         if (count <= 0) {
             return 0; // So specified by InputStream.skip(long).
         }
-        final int bufferSize = count > 8192 ? 8192 : (int) count;
-        final byte[] buffer = new byte[bufferSize];
-        long result = 0;
-        while (count > 0) {
-            int res = read(buffer);
-            if (res == -1) {
-                break;
-            }
-            result += res;
-            count -= res;
+        long result = in.skip(count);
+        this.used = true;
+        if (result > 0) {
+            return result;
         }
-        return result;
+        // nothing skipped does not mean the end of the stream was reached
+        return read() == -1 ? 0 : 1;
     }
 
     @Override
-    public int getBytesConsumed() {
+    public long getBytesConsumed() {
         return isNull(bis) ? super.getBytesConsumed() : bis.getBytesConsumed();
     }
 }
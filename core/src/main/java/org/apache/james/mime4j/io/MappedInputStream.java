@@ -0,0 +1,283 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link InputStream} reading a region of a file through read-only memory
+ * mapped windows, so that reads are served from the page cache with a single
+ * bulk copy and skipping is a position change.
+ * <p>
+ * The region is mapped up-front as a sequence of windows of at most
+ * <code>windowSize</code> bytes each, which lifts the 2 GB limit of a single
+ * mapping. Mappings remain valid once the channel is closed. The file must not
+ * be truncated while it is mapped.
+ */
+public class MappedInputStream extends InputStream {
+
+    /** Default size of a mapped window: 256 MB */
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private final ByteBuffer[] windows;
+    private final long length;
+
+    private int current;
+    private long position;
+
+    private MappedInputStream(final ByteBuffer[] windows) {
+        super();
+        long len = 0;
+        for (ByteBuffer window : windows) {
+            len += window.remaining();
+        }
+        this.windows = windows;
+        this.length = len;
+        this.current = 0;
+        this.position = 0;
+    }
+
+    /**
+     * Returns a stream over the remaining content of the given buffer, which is
+     * shared rather than copied. Content held in memory can then be sliced (see
+     * {@link #slice(long, long)}) the same way as mapped content.
+     *
+     * @param buffer heap or direct buffer.
+     * @return stream over the buffer content.
+     */
+    public static MappedInputStream wrap(final ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer may not be null");
+        }
+        return new MappedInputStream(new ByteBuffer[] { buffer.slice() });
+    }
+
+    /**
+     * Maps the whole content of the given file.
+     *
+     * @param path file to map.
+     * @return stream over the mapped content.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public static MappedInputStream map(final Path path) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("Path may not be null");
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return map(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Maps the whole content of the given channel. The channel may be closed
+     * once this method returns.
+     *
+     * @param channel channel to map.
+     * @return stream over the mapped content.
+     * @throws IOException if the channel cannot be mapped.
+     */
+    public static MappedInputStream map(final FileChannel channel) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("Channel may not be null");
+        }
+        return map(channel, 0, channel.size(), DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Maps <code>size</code> bytes of the given channel starting at
+     * <code>position</code>, using windows of at most <code>windowSize</code>
+     * bytes. The channel may be closed once this method returns.
+     *
+     * @throws IllegalArgumentException if the region does not lie within the
+     *         channel content.
+     * @throws IOException if the channel cannot be mapped.
+     */
+    public static MappedInputStream map(
+            final FileChannel channel,
+            long position,
+            long size,
+            int windowSize) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("Channel may not be null");
+        }
+        if (position < 0 || size < 0) {
+            throw new IllegalArgumentException("Position and size may not be negative");
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size may not be negative or zero");
+        }
+        if (size > channel.size() - position) {
+            throw new IllegalArgumentException("Region " + position + "(" + size + ") exceeds the channel size "
+                    + channel.size());
+        }
+        int count = (int) ((size + windowSize - 1) / windowSize);
+        ByteBuffer[] windows = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long offset = (long) i * windowSize;
+            long chunk = Math.min(windowSize, size - offset);
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + offset, chunk);
+        }
+        return new MappedInputStream(windows);
+    }
+
+    /**
+     * @return total length of the mapped region.
+     */
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * @return number of bytes read or skipped so far.
+     */
+    public long position() {
+        return this.position;
+    }
+
+    /**
+     * Returns a new stream over <code>length</code> bytes of this region starting at
+     * <code>offset</code>, sharing the same mappings. The position of this stream
+     * is not changed.
+     *
+     * @param offset start of the slice, relative to the start of this region.
+     * @param length length of the slice.
+     * @return mapped slice.
+     */
+    public MappedInputStream slice(long offset, long length) {
+        if (offset < 0 || length < 0 || offset + length > this.length) {
+            throw new IndexOutOfBoundsException("slice " + offset + "(" + length + ") of " + this.length);
+        }
+        int first = -1;
+        int last = -1;
+        long start = 0;
+        for (int i = 0; i < this.windows.length; i++) {
+            long end = start + windowLength(i);
+            if (first == -1 && offset < end) {
+                first = i;
+            }
+            if (offset + length <= end) {
+                last = i;
+                break;
+            }
+            start = end;
+        }
+        if (length == 0 || first == -1) {
+            return new MappedInputStream(new ByteBuffer[0]);
+        }
+        ByteBuffer[] slices = new ByteBuffer[last - first + 1];
+        long remaining = length;
+        long skip = offset;
+        for (int i = 0; i < first; i++) {
+            skip -= windowLength(i);
+        }
+        for (int i = first; i <= last; i++) {
+            ByteBuffer window = window(i);
+            window.position((int) skip);
+            int chunk = (int) Math.min(window.remaining(), remaining);
+            window.limit((int) skip + chunk);
+            slices[i - first] = window.slice();
+            remaining -= chunk;
+            skip = 0;
+        }
+        return new MappedInputStream(slices);
+    }
+
+    private int windowLength(int i) {
+        return this.windows[i].limit();
+    }
+
+    private ByteBuffer window(int i) {
+        ByteBuffer window = this.windows[i].duplicate();
+        window.clear();
+        return window;
+    }
+
+    private ByteBuffer currentWindow() {
+        while (this.current < this.windows.length && !this.windows[this.current].hasRemaining()) {
+            this.current++;
+        }
+        return this.current < this.windows.length ? this.windows[this.current] : null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        ByteBuffer window = currentWindow();
+        if (window == null) {
+            return -1;
+        }
+        this.position++;
+        return window.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        ByteBuffer window = currentWindow();
+        if (window == null) {
+            return -1;
+        }
+        int chunk = Math.min(window.remaining(), len);
+        window.get(b, off, chunk);
+        this.position += chunk;
+        return chunk;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (n > skipped) {
+            ByteBuffer window = currentWindow();
+            if (window == null) {
+                break;
+            }
+            int chunk = (int) Math.min(window.remaining(), n - skipped);
+            window.position(window.position() + chunk);
+            skipped += chunk;
+        }
+        this.position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(this.length - this.position, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+}
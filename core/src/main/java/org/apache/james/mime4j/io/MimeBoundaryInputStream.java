@@ -22,7 +22,6 @@ package org.apache.james.mime4j.io;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.MimeIOException;
 import org.apache.james.mime4j.util.ByteArrayBuffer;
-import org.apache.james.mime4j.util.CharsetUtil;
 import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
 
 import java.io.IOException;
@@ -34,7 +33,7 @@ import java.io.IOException;
  */
 public class MimeBoundaryInputStream extends LineReaderInputStream {
 
-    private final byte[] boundary;
+    private final BoundaryMatcher boundary;
     private final boolean strict;
 
     private boolean eof;
@@ -80,13 +79,7 @@ public class MimeBoundaryInputStream extends LineReaderInputStream {
         this.completed = false;
 
         this.strict = strict;
-        this.boundary = new byte[boundary.length() + 2];
-        this.boundary[0] = (byte) '-';
-        this.boundary[1] = (byte) '-';
-        for (int i = 0; i < boundary.length(); i++) {
-            byte ch = (byte) boundary.charAt(i);
-            this.boundary[i + 2] = ch;
-        }
+        this.boundary = new BoundaryMatcher(boundary);
 
         fillBuffer();
     }
@@ -159,6 +152,25 @@ public class MimeBoundaryInputStream extends LineReaderInputStream {
         }
     }
 
+    /**
+     * Skips content up to the next delimiter at most, moving the position of the
+     * underlying buffer while the delimiter is searched for: nothing is copied.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        long total = 0;
+        while (total < n) {
+            if (!readAllowed()) break;
+            if (hasData()) {
+                int chunk = (int) Math.min(n - total, limit - buffer.pos());
+                total += buffer.skip(chunk);
+            } else {
+                fillBuffer();
+            }
+        }
+        return total;
+    }
+
     @Override
     public int readLine(final ByteArrayBuffer dst) throws IOException {
         if (dst == null) {
@@ -229,34 +241,7 @@ public class MimeBoundaryInputStream extends LineReaderInputStream {
             bytesRead = 0;
         }
 
-        int i;
-        int off = buffer.pos();
-        for (;;) {
-            i = buffer.indexOf(boundary, off, buffer.limit() - off);
-            if (i == -1) {
-                break;
-            }
-            // Make sure the boundary is either at the very beginning of the buffer
-            // or preceded with LF
-            if (i == buffer.pos() || buffer.byteAt(i - 1) == '\n') {
-                int pos = i + boundary.length;
-                int remaining = buffer.limit() - pos;
-                if (remaining <= 0) {
-                    // Make sure the boundary is terminated with EOS
-                    break;
-                } else {
-                    // or with a whitespace or '--' 
-                    char ch = (char)(buffer.byteAt(pos));
-                    if (CharsetUtil.isWhitespace(ch)) {
-                        break;
-                    }
-                    if (ch == '-' && remaining > 1 && (char)(buffer.byteAt(pos+1)) == '-') {
-                        break;
-                    } 
-                }
-            }
-            off = i + boundary.length;
-        }
+        int i = buffer.indexOf(boundary, buffer.pos(), buffer.limit() - buffer.pos());
         if (i != -1) {
             limit = i;
             atBoundary = true;
@@ -265,7 +250,7 @@ public class MimeBoundaryInputStream extends LineReaderInputStream {
             if (eof) {
                 limit = buffer.limit();
             } else {
-                limit = buffer.limit() - (boundary.length + 2);
+                limit = buffer.limit() - (boundary.length() + 2);
                                 // [LF] [boundary] [CR][LF] minus one char
             }
         }
@@ -281,7 +266,7 @@ public class MimeBoundaryInputStream extends LineReaderInputStream {
     }
 
     private void calculateBoundaryLen() throws IOException {
-        boundaryLen = boundary.length;
+        boundaryLen = boundary.length();
         int len = limit - buffer.pos();
         if (len >= 0 && initialLength == -1) initialLength = len;
         if (len > 0) {
@@ -336,6 +321,22 @@ public class MimeBoundaryInputStream extends LineReaderInputStream {
         }
     }
 
+    /**
+     * Detaches the content of this part, up to the next delimiter, as a direct
+     * stream sharing the backing array of the underlying buffer. This makes it
+     * possible to parse the part in place when the whole message is held in memory.
+     *
+     * @param maxLineLen maximum line length of the detached stream.
+     * @return the content of this part, or <code>null</code> if the underlying
+     *         buffer is not direct (see {@link BufferedLineReaderInputStream#isDirect()}).
+     */
+    public BufferedLineReaderInputStream slice(int maxLineLen) {
+        if (completed || !buffer.isDirect() || !endOfStream()) {
+            return null;
+        }
+        return buffer.slice(Math.max(limit - buffer.pos(), 0), maxLineLen);
+    }
+
     public boolean isLastPart() {
         return lastPart;
     }
@@ -346,11 +347,7 @@ public class MimeBoundaryInputStream extends LineReaderInputStream {
 
     @Override
     public String toString() {
-        final StringBuilder buffer = new StringBuilder("MimeBoundaryInputStream, boundary ");
-        for (byte b : boundary) {
-            buffer.append((char) b);
-        }
-        return buffer.toString();
+        return "MimeBoundaryInputStream, boundary " + boundary;
     }
 
     @Override
@@ -364,7 +361,7 @@ public class MimeBoundaryInputStream extends LineReaderInputStream {
     }
 
     @Override
-    public int getBytesConsumed() {
+    public long getBytesConsumed() {
         return this.buffer.getBytesConsumed();
     }
 }
@@ -21,9 +21,12 @@ package org.apache.james.mime4j.parser;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.io.MappedInputStream;
 import org.apache.james.mime4j.stream.BodyDescriptor;
 import org.apache.james.mime4j.stream.BodyDescriptorBuilder;
 import org.apache.james.mime4j.stream.EntityState;
@@ -178,6 +181,32 @@ public class MimeStreamParser {
         }
     }
 
+    /**
+     * Parses the content of the given file, read through memory mapped windows
+     * (see {@link MappedInputStream}).
+     *
+     * @param path the file to parse.
+     * @throws MimeException if the message can not be processed
+     * @throws IOException on I/O errors.
+     * @see #parse(InputStream)
+     */
+    public void parse(Path path) throws MimeException, IOException {
+        parse(MappedInputStream.map(path));
+    }
+
+    /**
+     * Parses the whole content of the given channel, read through memory mapped
+     * windows (see {@link MappedInputStream}).
+     *
+     * @param channel the channel to parse.
+     * @throws MimeException if the message can not be processed
+     * @throws IOException on I/O errors.
+     * @see #parse(InputStream)
+     */
+    public void parse(FileChannel channel) throws MimeException, IOException {
+        parse(MappedInputStream.map(channel));
+    }
+
     /**
      * Determines if this parser is currently in raw mode.
      *
@@ -224,6 +253,14 @@ public class MimeStreamParser {
         mimeTokenStream.setRecursionMode(RecursionMode.M_NO_RECURSE);
     }
 
+    /**
+     * Enables headers only mode. In this mode the parsing ends with the
+     * header of the current entity: its body is skipped, not read.
+     */
+    public void setHeadersOnly() {
+        mimeTokenStream.setRecursionMode(RecursionMode.M_HEADERS_ONLY);
+    }
+
     /**
      * Finishes the parsing and stops reading lines.
      * NOTE: No more lines will be parsed but the parser
@@ -28,9 +28,9 @@ class BasicBodyDescriptor implements BodyDescriptor {
     private final String charset;
     private final String transferEncoding;
     private final long contentLength;
-    public final int headerStartByte;
-    public final int bodyStartByte;
-    public final int bodyEndByte;
+    public final long headerStartByte;
+    public final long bodyStartByte;
+    public final long bodyEndByte;
 
     BasicBodyDescriptor(
       final String mimeType,
@@ -40,8 +40,8 @@ class BasicBodyDescriptor implements BodyDescriptor {
       final String charset,
       final String transferEncoding,
       final long contentLength,
-      int partHeaderStartByte,
-      int partBodyStartByte, int bodyEndByte) {
+      long partHeaderStartByte,
+      long partBodyStartByte, long bodyEndByte) {
         super();
         this.mimeType = mimeType;
         this.mediaType = mediaType;
@@ -84,17 +84,17 @@ class BasicBodyDescriptor implements BodyDescriptor {
     }
 
     @Override
-    public int getHeaderStartByte() {
+    public long getHeaderStartByte() {
         return headerStartByte;
     }
 
     @Override
-    public int getBodyStartByte() {
+    public long getBodyStartByte() {
         return bodyStartByte;
     }
 
   @Override
-  public int getBodyEndByte() {
+  public long getBodyEndByte() {
     return bodyEndByte;
   }
 
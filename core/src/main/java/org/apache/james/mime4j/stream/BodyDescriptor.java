@@ -36,15 +36,15 @@ public interface BodyDescriptor extends ContentDescriptor {
      *
      * @return Start byte position of the header.
      */
-    int getHeaderStartByte();
+    long getHeaderStartByte();
 
     /**
      * Returns the start byte position of the body for this body.
      *
      * @return Start byte position of the body.
      */
-    int getBodyStartByte();
+    long getBodyStartByte();
 
-    int getBodyEndByte();
+    long getBodyEndByte();
 
 }
@@ -71,20 +71,20 @@ public interface BodyDescriptorBuilder {
      *
      * @param position The start byte location of the header.
      */
-    void setHeaderStartByte(int position);
+    void setHeaderStartByte(long position);
 
     /**
      * Sets the start byte location of the body for the respective part.
      *
      * @param position The start byte location of the body.
      */
-    void setBodyStartByte(int position);
+    void setBodyStartByte(long position);
 
     /**
      * Sets the end byte location of the body for the respective part.
      * @param position The end byte location of the body.
      */
-    void setBodyEndByte(int position);
+    void setBodyEndByte(long position);
 
     /**
      * Builds an instance of {@link BodyDescriptor} based on the internal state.
@@ -0,0 +1,235 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.util.Arrays;
+
+/**
+ * Canonical representation of a well-known header field name.
+ * <p>
+ * Known names are recognized case-insensitively, directly from the raw bytes
+ * of a field, through a perfect hash table built when the class is loaded.
+ * A lookup allocates nothing, and all the fields sharing a known name share
+ * the same name and lower-case name strings. The {@link #ordinal() ordinal}
+ * of a name can index per-name tables, such as field parsers.
+ */
+public final class CanonicalFieldName {
+
+    private static final String[] NAMES = {
+        "Content-Type",
+        "Content-Length",
+        "Content-Transfer-Encoding",
+        "Content-Disposition",
+        "Content-ID",
+        "Content-MD5",
+        "Content-Description",
+        "Content-Language",
+        "Content-Location",
+        "MIME-Version",
+        "Date",
+        "Message-ID",
+        "Subject",
+        "From",
+        "Sender",
+        "To",
+        "Cc",
+        "Bcc",
+        "Reply-To",
+        "Resent-Date",
+        "Resent-From",
+        "Resent-Sender",
+        "Resent-To",
+        "Resent-Cc",
+        "Resent-Bcc",
+        "Received",
+        "Return-Path",
+        "References",
+        "In-Reply-To",
+        "Delivered-To",
+        "Comments",
+        "Keywords"
+    };
+
+    private static final CanonicalFieldName[] VALUES;
+    private static final CanonicalFieldName[] TABLE;
+    private static final int SHIFT;
+    private static final int SEED;
+
+    static {
+        VALUES = new CanonicalFieldName[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            VALUES[i] = new CanonicalFieldName(NAMES[i], i);
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(NAMES.length * 4 - 1);
+        CanonicalFieldName[] table = new CanonicalFieldName[1 << bits];
+        int seed = 0x9E3779B9;
+        // find a multiplier spreading the names over distinct slots
+        while (!fill(table, seed, bits)) {
+            Arrays.fill(table, null);
+            seed += 2;
+        }
+        TABLE = table;
+        SHIFT = 32 - bits;
+        SEED = seed;
+    }
+
+    private static boolean fill(CanonicalFieldName[] table, int seed, int bits) {
+        for (CanonicalFieldName name : VALUES) {
+            int slot = (name.hash * seed) >>> (32 - bits);
+            if (table[slot] != null) {
+                return false;
+            }
+            table[slot] = name;
+        }
+        return true;
+    }
+
+    private final String name;
+    private final String lowerCaseName;
+    private final int ordinal;
+    private final int hash;
+
+    private CanonicalFieldName(String name, int ordinal) {
+        this.name = name.intern();
+        char[] chars = name.toCharArray();
+        int h = chars.length;
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = toLowerCase(chars[i]);
+            h = 31 * h + (chars[i] | 0x20);
+        }
+        this.lowerCaseName = new String(chars).intern();
+        this.ordinal = ordinal;
+        this.hash = h;
+    }
+
+    private static char toLowerCase(int ch) {
+        return (char) (ch >= 'A' && ch <= 'Z' ? ch + 0x20 : ch);
+    }
+
+    /**
+     * Looks up a known field name, ignoring case.
+     *
+     * @param b array holding the name.
+     * @param off offset of the name in the array.
+     * @param len length of the name.
+     * @return the canonical name, or <code>null</code> if the name is not known.
+     */
+    public static CanonicalFieldName lookup(byte[] b, int off, int len) {
+        int h = len;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + (b[i] | 0x20);
+        }
+        CanonicalFieldName candidate = TABLE[(h * SEED) >>> SHIFT];
+        if (candidate == null || candidate.hash != h) {
+            return null;
+        }
+        String lc = candidate.lowerCaseName;
+        if (lc.length() != len) {
+            return null;
+        }
+        for (int i = 0; i < len; i++) {
+            if (toLowerCase(b[off + i] & 0xff) != lc.charAt(i)) {
+                return null;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Looks up a known field name, ignoring case.
+     *
+     * @param s the name.
+     * @return the canonical name, or <code>null</code> if the name is not known.
+     */
+    public static CanonicalFieldName lookup(CharSequence s) {
+        int len = s.length();
+        int h = len;
+        for (int i = 0; i < len; i++) {
+            char ch = s.charAt(i);
+            if (ch > 0x7f) {
+                return null;
+            }
+            h = 31 * h + (ch | 0x20);
+        }
+        CanonicalFieldName candidate = TABLE[(h * SEED) >>> SHIFT];
+        if (candidate == null || candidate.hash != h) {
+            return null;
+        }
+        String lc = candidate.lowerCaseName;
+        if (lc.length() != len) {
+            return null;
+        }
+        for (int i = 0; i < len; i++) {
+            if (toLowerCase(s.charAt(i)) != lc.charAt(i)) {
+                return null;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * @return number of known names, ordinals range from 0 to this value excluded.
+     */
+    public static int count() {
+        return VALUES.length;
+    }
+
+    /**
+     * @return the name as spelled by the RFCs, e.g. <code>Content-Type</code>.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the name in lower case, e.g. <code>content-type</code>.
+     */
+    public String getLowerCaseName() {
+        return lowerCaseName;
+    }
+
+    /**
+     * @return the index of this name amongst the known names.
+     */
+    public int ordinal() {
+        return ordinal;
+    }
+
+    /**
+     * Tells whether the given bytes spell this name with the exact same case.
+     */
+    public boolean matchesCase(byte[] b, int off, int len) {
+        if (name.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (b[off + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
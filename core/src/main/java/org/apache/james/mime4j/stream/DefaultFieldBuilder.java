@@ -19,32 +19,26 @@
 
 package org.apache.james.mime4j.stream;
 
-import java.lang.ref.SoftReference;
 import java.util.BitSet;
 
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.io.MaxHeaderLengthLimitException;
 import org.apache.james.mime4j.util.BufferRecycler;
+import org.apache.james.mime4j.util.BufferRecyclerPools;
 import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.ByteArraySequence;
 import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
 
 /**
  * Default implementation of {@link FieldBuilder}.
- *
+ * <p>
+ * Built fields are copied once into an arena shared by consecutive fields, and
+ * {@link RawField} instances are views over it: their name and body strings
+ * are only decoded when asked for.
  */
 public class DefaultFieldBuilder implements FieldBuilder {
-    protected static final ThreadLocal<SoftReference<BufferRecycler>> _recyclerRef = new ThreadLocal<>();
-
     public static BufferRecycler getBufferRecycler() {
-        SoftReference<BufferRecycler> ref = _recyclerRef.get();
-        BufferRecycler br = (ref == null) ? null : ref.get();
-
-        if (br == null) {
-            br = new BufferRecycler();
-            ref = new SoftReference<>(br);
-            _recyclerRef.set(ref);
-        }
-        return br;
+        return BufferRecyclerPools.getDefault().getBufferRecycler();
     }
 
     private static final BitSet FIELD_CHARS = new BitSet();
@@ -58,11 +52,23 @@ public class DefaultFieldBuilder implements FieldBuilder {
         }
     }
 
+    private static final int ARENA_CHUNK_SIZE = 4096;
+
     private final RecycledByteArrayBuffer buf;
     private final int maxlen;
+    private byte[] arena;
+    private int arenaPos;
 
     public DefaultFieldBuilder(int maxlen) {
-        this.buf = new RecycledByteArrayBuffer(getBufferRecycler(), 4096);
+        this(maxlen, getBufferRecycler());
+    }
+
+    /**
+     * @param maxlen maximum header length, or a non positive value for no limit.
+     * @param bufferRecycler recycler the field buffer is allocated from.
+     */
+    public DefaultFieldBuilder(int maxlen, BufferRecycler bufferRecycler) {
+        this.buf = new RecycledByteArrayBuffer(bufferRecycler, 4096);
         this.maxlen = maxlen;
     }
 
@@ -91,19 +97,61 @@ public class DefaultFieldBuilder implements FieldBuilder {
                 len --;
             }
         }
-        ByteArrayBuffer copy = new ByteArrayBuffer(this.buf.buffer(), len, false);
-        RawField field = RawFieldParser.DEFAULT.parseField(copy);
-        String name = field.getName();
-        for (int i = 0; i < name.length(); i++) {
-            char ch = name.charAt(i);
-            if (!FIELD_CHARS.get(ch)) {
-                throw new MimeException("MIME field name contains illegal characters: "
-                        + field.getName());
+        // arena chunks are never written twice, fields keep referencing them
+        if (this.arena == null || this.arena.length - this.arenaPos < len) {
+            this.arena = new byte[Math.max(ARENA_CHUNK_SIZE, len)];
+            this.arenaPos = 0;
+        }
+        byte[] b = this.arena;
+        int off = this.arenaPos;
+        System.arraycopy(this.buf.buffer(), 0, b, off, len);
+
+        RawField field = buildField(b, off, len);
+        if (field == null) {
+            field = RawFieldParser.DEFAULT.parseField(new ByteArraySequence(b, off, len));
+            String name = field.getName();
+            for (int i = 0; i < name.length(); i++) {
+                char ch = name.charAt(i);
+                if (!FIELD_CHARS.get(ch)) {
+                    throw new MimeException("MIME field name contains illegal characters: "
+                            + field.getName());
+                }
             }
         }
+        this.arenaPos = off + len;
         return field;
     }
 
+    /**
+     * Creates the field directly for the common case of a name made of field
+     * characters only, possibly followed by whitespace. Returns
+     * <code>null</code> for anything else, which is left to
+     * {@link RawFieldParser}.
+     */
+    private static RawField buildField(byte[] b, int off, int len) {
+        int colon = -1;
+        for (int i = 0; i < len; i++) {
+            if (b[off + i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        int nameLen = colon;
+        while (nameLen > 0 && (b[off + nameLen - 1] == ' ' || b[off + nameLen - 1] == '\t')) {
+            nameLen--;
+        }
+        if (nameLen <= 0) {
+            return null;
+        }
+        for (int i = 0; i < nameLen; i++) {
+            int ch = b[off + i] & 0xff;
+            if (ch == '(' || !FIELD_CHARS.get(ch)) {
+                return null;
+            }
+        }
+        return new RawField(b, off, len, colon, nameLen);
+    }
+
     public RecycledByteArrayBuffer getRaw() {
         return this.buf;
     }
@@ -52,9 +52,9 @@ class FallbackBodyDescriptorBuilder implements BodyDescriptorBuilder {
     private String charset;
     private String transferEncoding;
     private long contentLength;
-    public int headerStartByte;
-    public int bodyStartByte;
-    public int bodyEndByte;
+    public long headerStartByte;
+    public long bodyStartByte;
+    public long bodyEndByte;
 
     /**
      * Creates a new root <code>BodyDescriptor</code> instance.
@@ -152,17 +152,17 @@ class FallbackBodyDescriptorBuilder implements BodyDescriptorBuilder {
     }
 
     @Override
-    public void setHeaderStartByte(int headerStartByte) {
+    public void setHeaderStartByte(long headerStartByte) {
         this.headerStartByte = headerStartByte;
     }
 
     @Override
-    public void setBodyStartByte(int bodyStartByte) {
+    public void setBodyStartByte(long bodyStartByte) {
         this.bodyStartByte = bodyStartByte;
     }
 
   @Override
-  public void setBodyEndByte(int bodyEndByte) {
+  public void setBodyEndByte(long bodyEndByte) {
     this.bodyEndByte = bodyEndByte;
   }
 
@@ -48,6 +48,14 @@ public interface Field {
         return getName().toLowerCase(Locale.US);
     }
 
+    /**
+     * Returns the canonical representation of the field name, or
+     * <code>null</code> if the name is not a well-known one.
+     */
+    default CanonicalFieldName getCanonicalName() {
+        return CanonicalFieldName.lookup(getName());
+    }
+
     /**
      * Gets the unparsed and possibly encoded (see RFC 2047) field body string.
      *
@@ -0,0 +1,181 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Set of header field names the parser should report, see
+ * {@link MimeConfig.Builder#setFieldNameFilter(FieldNameFilter)}.
+ * <p>
+ * Names are matched case-insensitively against the raw bytes of a field, so
+ * that a field that is not wanted is skipped before any <code>String</code>,
+ * {@link RawField} or parsed field is created for it. A filter is immutable
+ * and may be shared.
+ */
+public final class FieldNameFilter {
+
+    /**
+     * Fields that determine how the body of an entity is parsed. They are
+     * always handed to the {@link BodyDescriptorBuilder}, but only reported
+     * when accepted by the filter.
+     */
+    static final FieldNameFilter MIME_STRUCTURE = of("Content-Type", "Content-Transfer-Encoding");
+
+    private final Set<String> names;
+    // lower case names indexed by length
+    private final byte[][][] byLength;
+
+    private FieldNameFilter(Set<String> names) {
+        this.names = names;
+        int max = 0;
+        for (String name : names) {
+            max = Math.max(max, name.length());
+        }
+        List<List<byte[]>> lists = new ArrayList<List<byte[]>>();
+        for (int i = 0; i <= max; i++) {
+            lists.add(new ArrayList<byte[]>());
+        }
+        for (String name : names) {
+            byte[] b = new byte[name.length()];
+            for (int i = 0; i < b.length; i++) {
+                b[i] = (byte) name.charAt(i);
+            }
+            lists.get(b.length).add(b);
+        }
+        this.byLength = new byte[max + 1][][];
+        for (int i = 0; i <= max; i++) {
+            this.byLength[i] = lists.get(i).toArray(new byte[0][]);
+        }
+    }
+
+    /**
+     * @param names names of the fields to accept, in any case.
+     * @throws IllegalArgumentException if a name is empty or contains
+     *         characters that are not allowed in a field name.
+     */
+    public static FieldNameFilter of(String... names) {
+        return of(Arrays.asList(names));
+    }
+
+    /**
+     * @param names names of the fields to accept, in any case.
+     * @throws IllegalArgumentException if a name is empty or contains
+     *         characters that are not allowed in a field name.
+     */
+    public static FieldNameFilter of(Collection<String> names) {
+        Set<String> set = new LinkedHashSet<String>();
+        for (String name : names) {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("Field name may not be null or empty");
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (!isNameChar(name.charAt(i))) {
+                    throw new IllegalArgumentException("Invalid field name: " + name);
+                }
+            }
+            set.add(name.toLowerCase(Locale.US));
+        }
+        return new FieldNameFilter(set);
+    }
+
+    private static boolean isNameChar(int ch) {
+        return ch >= 0x21 && ch <= 0x7e && ch != ':';
+    }
+
+    private static int toLower(int ch) {
+        return ch >= 'A' && ch <= 'Z' ? ch + ('a' - 'A') : ch;
+    }
+
+    /**
+     * @return lower case names of the accepted fields.
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * @return whether the field named <code>name</code> is accepted.
+     */
+    public boolean accept(String name) {
+        return name != null && names.contains(name.toLowerCase(Locale.US));
+    }
+
+    /**
+     * @return whether the field whose name is held in
+     *         <code>b[off, off + len)</code> is accepted.
+     */
+    public boolean accept(byte[] b, int off, int len) {
+        if (len >= byLength.length) {
+            return false;
+        }
+        CANDIDATES: for (byte[] candidate : byLength[len]) {
+            for (int i = 0; i < len; i++) {
+                if (toLower(b[off + i] & 0xff) != candidate[i]) {
+                    continue CANDIDATES;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Decides on a raw field, as held in <code>b[0, len)</code>. A field whose
+     * name is not well formed is accepted, so that the parser deals with it as
+     * it would without a filter.
+     */
+    boolean acceptField(byte[] b, int len) {
+        int colon = -1;
+        for (int i = 0; i < len; i++) {
+            if (b[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        if (colon <= 0) {
+            return true;
+        }
+        int end = colon;
+        // obsolete syntax allows whitespace before the colon
+        while (end > 0 && (b[end - 1] == ' ' || b[end - 1] == '\t')) {
+            end--;
+        }
+        for (int i = 0; i < end; i++) {
+            if (!isNameChar(b[i] & 0xff)) {
+                return true;
+            }
+        }
+        return end == 0 || accept(b, 0, end);
+    }
+
+    @Override
+    public String toString() {
+        return names.toString();
+    }
+
+}
@@ -20,6 +20,8 @@
 package org.apache.james.mime4j.stream;
 
 import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.util.BufferRecyclerPool;
+import org.apache.james.mime4j.util.BufferRecyclerPools;
 
 /**
  * Properties used to configure the behavior of MIME stream parsers.
@@ -46,6 +48,8 @@ public final class MimeConfig {
     private final boolean countLineNumbers;
     private final String headlessParsing;
     private final boolean malformedHeaderStartsBody;
+    private final BufferRecyclerPool bufferRecyclerPool;
+    private final FieldNameFilter fieldNameFilter;
 
     MimeConfig(
             boolean strictParsing,
@@ -55,7 +59,9 @@ public final class MimeConfig {
             long maxContentLen,
             boolean countLineNumbers,
             String headlessParsing,
-            boolean malformedHeaderStartsBody) {
+            boolean malformedHeaderStartsBody,
+            BufferRecyclerPool bufferRecyclerPool,
+            FieldNameFilter fieldNameFilter) {
         this.strictParsing = strictParsing;
         this.countLineNumbers = countLineNumbers;
         this.malformedHeaderStartsBody = malformedHeaderStartsBody;
@@ -64,6 +70,8 @@ public final class MimeConfig {
         this.maxHeaderLen = maxHeaderLen;
         this.maxContentLen = maxContentLen;
         this.headlessParsing = headlessParsing;
+        this.bufferRecyclerPool = bufferRecyclerPool;
+        this.fieldNameFilter = fieldNameFilter;
     }
 
     /**
@@ -151,6 +159,29 @@ public final class MimeConfig {
         return headlessParsing;
     }
 
+    /**
+     * Returns the pool the parser takes its working buffers from
+     *
+     * @see Builder#setBufferRecyclerPool(BufferRecyclerPool)
+     *
+     * @return the configured pool, or the default pool if none is configured
+     */
+    public BufferRecyclerPool getBufferRecyclerPool() {
+        return bufferRecyclerPool != null ? bufferRecyclerPool : BufferRecyclerPools.getDefault();
+    }
+
+    /**
+     * Returns the names of the fields the parser reports
+     *
+     * @see Builder#setFieldNameFilter(FieldNameFilter)
+     *
+     * @return the field name filter, or <code>null</code> if all fields are
+     *         reported
+     */
+    public FieldNameFilter getFieldNameFilter() {
+        return fieldNameFilter;
+    }
+
     @Override
     public String toString() {
         StringBuilder b = new StringBuilder();
@@ -162,6 +193,8 @@ public final class MimeConfig {
                 .append(", countLineNumbers=").append(countLineNumbers)
                 .append(", headlessParsing=").append(headlessParsing)
                 .append(", malformedHeaderStartsBody=").append(malformedHeaderStartsBody)
+                .append(", bufferRecyclerPool=").append(bufferRecyclerPool)
+                .append(", fieldNameFilter=").append(fieldNameFilter)
                 .append("]");
         return b.toString();
     }
@@ -182,7 +215,9 @@ public final class MimeConfig {
             .setMaxContentLen(config.getMaxContentLen())
             .setCountLineNumbers(config.isCountLineNumbers())
             .setHeadlessParsing(config.getHeadlessParsing())
-            .setMalformedHeaderStartsBody(config.isMalformedHeaderStartsBody());
+            .setMalformedHeaderStartsBody(config.isMalformedHeaderStartsBody())
+            .setBufferRecyclerPool(config.bufferRecyclerPool)
+            .setFieldNameFilter(config.getFieldNameFilter());
     }
 
     public static class Builder {
@@ -195,6 +230,8 @@ public final class MimeConfig {
         private boolean countLineNumbers;
         private String headlessParsing;
         private boolean malformedHeaderStartsBody;
+        private BufferRecyclerPool bufferRecyclerPool;
+        private FieldNameFilter fieldNameFilter;
 
         public Builder() {
             this.strictParsing = false;
@@ -205,6 +242,8 @@ public final class MimeConfig {
             this.maxHeaderLen = 10000;
             this.maxContentLen = -1;
             this.headlessParsing = null;
+            this.bufferRecyclerPool = null;
+            this.fieldNameFilter = null;
         }
 
         /**
@@ -339,6 +378,44 @@ public final class MimeConfig {
             return this;
         }
 
+        /**
+         * Sets the pool the parser takes its working buffers from. Use
+         * {@link BufferRecyclerPools#shared()} when parsing runs on many short
+         * lived threads, such as virtual threads.
+         * <p>
+         * Default value: <code>null</code>, the pool selected with the
+         * <code>james.mime4j.buffer.pool</code> system property
+         *
+         * @param bufferRecyclerPool
+         *            pool of working buffers, or <code>null</code> for the
+         *            default pool
+         * @see BufferRecyclerPools
+         */
+        public Builder setBufferRecyclerPool(BufferRecyclerPool bufferRecyclerPool) {
+            this.bufferRecyclerPool = bufferRecyclerPool;
+            return this;
+        }
+
+        /**
+         * Restricts the fields the parser reports to those accepted by the
+         * given filter. Other fields are skipped as raw bytes: no
+         * <code>String</code>, {@link RawField} or parsed field is created for
+         * them. <code>Content-Type</code> and
+         * <code>Content-Transfer-Encoding</code> fields are still used to parse
+         * the body, but are not reported unless accepted. Skipped fields count
+         * towards the maximum header limit.
+         * <p>
+         * Default value: <code>null</code>, all fields are reported
+         *
+         * @param fieldNameFilter
+         *            names of the fields to report, or <code>null</code> for all
+         *            fields
+         */
+        public Builder setFieldNameFilter(FieldNameFilter fieldNameFilter) {
+            this.fieldNameFilter = fieldNameFilter;
+            return this;
+        }
+
         public MimeConfig build() {
             return new MimeConfig(
                     strictParsing,
@@ -348,7 +425,9 @@ public final class MimeConfig {
                     maxContentLen,
                     countLineNumbers,
                     headlessParsing,
-                    malformedHeaderStartsBody);
+                    malformedHeaderStartsBody,
+                    bufferRecyclerPool,
+                    fieldNameFilter);
         }
 
     }
@@ -21,7 +21,6 @@ package org.apache.james.mime4j.stream;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.SoftReference;
 
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.codec.Base64InputStream;
@@ -29,24 +28,15 @@ import org.apache.james.mime4j.codec.DecodeMonitor;
 import org.apache.james.mime4j.codec.QuotedPrintableInputStream;
 import org.apache.james.mime4j.io.*;
 import org.apache.james.mime4j.util.BufferRecycler;
+import org.apache.james.mime4j.util.BufferRecyclerPools;
 import org.apache.james.mime4j.util.ByteArrayBuffer;
 import org.apache.james.mime4j.util.CharsetUtil;
 import org.apache.james.mime4j.util.MimeUtil;
 import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
 
 class MimeEntity implements EntityStateMachine {
-    protected static final ThreadLocal<SoftReference<BufferRecycler>> _recyclerRef = new ThreadLocal<>();
-
     public static BufferRecycler getBufferRecycler() {
-        SoftReference<BufferRecycler> ref = _recyclerRef.get();
-        BufferRecycler br = (ref == null) ? null : ref.get();
-
-        if (br == null) {
-            br = new BufferRecycler();
-            ref = new SoftReference<>(br);
-            _recyclerRef.set(ref);
-        }
-        return br;
+        return BufferRecyclerPools.getDefault().getBufferRecycler();
     }
 
     private final EntityState endState;
@@ -54,6 +44,7 @@ class MimeEntity implements EntityStateMachine {
     private final DecodeMonitor monitor;
     private final FieldBuilder fieldBuilder;
     private final BodyDescriptorBuilder bodyDescBuilder;
+    private final BufferRecycler bufferRecycler;
 
     private final ByteArrayBuffer linebuf;
     private final LineNumberSource lineSource;
@@ -62,6 +53,7 @@ class MimeEntity implements EntityStateMachine {
     private EntityState state;
     private int lineCount;
     private boolean endOfHeader;
+    private boolean headerUnread;
     private int headerCount;
     private Field field;
     private BodyDescriptor body;
@@ -70,8 +62,6 @@ class MimeEntity implements EntityStateMachine {
     private MimeBoundaryInputStream currentMimePartStream;
     private LineReaderInputStreamAdaptor dataStream;
 
-    private byte[] tmpbuf;
-
     MimeEntity(
             LineNumberSource lineSource,
             InputStream instream,
@@ -93,10 +83,8 @@ class MimeEntity implements EntityStateMachine {
         this.endOfHeader = false;
         this.headerCount = 0;
         this.lineSource = lineSource;
-        this.inbuffer = new BufferedLineReaderInputStream(
-                instream,
-                4 * 1024,
-                config.getMaxLineLen());
+        this.bufferRecycler = config.getBufferRecyclerPool().getBufferRecycler();
+        this.inbuffer = createLineReader(instream, config.getMaxLineLen(), bufferRecycler);
         this.dataStream = new LineReaderInputStreamAdaptor(
                 inbuffer,
                 config.getMaxLineLen());
@@ -110,7 +98,8 @@ class MimeEntity implements EntityStateMachine {
         this(lineSource, instream, config,
                 EntityState.T_START_MESSAGE, EntityState.T_END_MESSAGE,
                 config.isStrictParsing() ? DecodeMonitor.STRICT : DecodeMonitor.SILENT,
-                new DefaultFieldBuilder(config.getMaxHeaderLen()),
+                new DefaultFieldBuilder(config.getMaxHeaderLen(),
+                        config.getBufferRecyclerPool().getBufferRecycler()),
                 bodyDescBuilder);
     }
 
@@ -137,6 +126,27 @@ class MimeEntity implements EntityStateMachine {
                 bodyDescBuilder);
     }
 
+    private static BufferedLineReaderInputStream createLineReader(
+            InputStream instream, int maxLineLen, BufferRecycler bufferRecycler) {
+        // content held in memory is parsed in place rather than copied to a new buffer
+        BufferedLineReaderInputStream slice = null;
+        if (instream instanceof BufferedLineReaderInputStream) {
+            slice = ((BufferedLineReaderInputStream) instream).sliceRemaining(maxLineLen);
+        } else if (instream instanceof MimeBoundaryInputStream) {
+            slice = ((MimeBoundaryInputStream) instream).slice(maxLineLen);
+        }
+        if (slice != null) {
+            return slice;
+        }
+        // streamed content: every nesting level copies the bytes of its parent's
+        // part into its own buffer and scans them again for its own boundary
+        return new BufferedLineReaderInputStream(
+                instream,
+                4 * 1024,
+                maxLineLen,
+                bufferRecycler);
+    }
+
     public EntityState getState() {
         return state;
     }
@@ -152,7 +162,6 @@ class MimeEntity implements EntityStateMachine {
     public void stop() {
         stopSoft();
         inbuffer.release();
-        getBufferRecycler().releaseByteBuffer(0, tmpbuf);
     }
 
     public void stopSoft() {
@@ -266,15 +275,25 @@ class MimeEntity implements EntityStateMachine {
             headerCount++;
             fieldBuilder.reset();
             readRawField();
+            FieldNameFilter filter = config.getFieldNameFilter();
+            boolean report = filter == null || accept(filter, fieldBuilder.getRaw());
+            if (!report && (recursionMode == RecursionMode.M_HEADERS_ONLY
+                    || !accept(FieldNameFilter.MIME_STRUCTURE, fieldBuilder.getRaw()))) {
+                // the field is not wanted, nor needed to parse the body
+                continue;
+            }
             try {
                 RawField rawfield = fieldBuilder.build();
                 if (rawfield == null) {
                     continue;
                 }
-                if (rawfield.getDelimiterIdx() != rawfield.getName().length()) {
+                if (rawfield.getDelimiterIdx() != rawfield.nameLength()) {
                     monitor(Event.OBSOLETE_HEADER);
                 }
                 Field parsedField = bodyDescBuilder.addField(rawfield);
+                if (!report) {
+                    continue;
+                }
                 field = parsedField != null ? parsedField : rawfield;
                 return true;
             } catch (MimeException e) {
@@ -286,12 +305,26 @@ class MimeEntity implements EntityStateMachine {
                     if (buf == null || !instream.unread(buf)) {
                         throw new MimeParseEventException(Event.INVALID_HEADER);
                     }
+                    headerUnread = true;
                     return false;
                 }
             }
         }
     }
 
+    static boolean accept(FieldNameFilter filter, RecycledByteArrayBuffer raw) {
+        // fields of custom builders not exposing their raw data are not filtered
+        return raw == null || filter.acceptField(raw.buffer(), raw.length());
+    }
+
+    /**
+     * Tells whether a malformed header line was handed back to the body. The
+     * body then no longer matches the bytes between its start and end offsets.
+     */
+    boolean isHeaderUnread() {
+        return headerUnread;
+    }
+
     public EntityStateMachine advance() throws IOException, MimeException {
         switch (state) {
         case T_START_MESSAGE:
@@ -308,6 +341,13 @@ class MimeEntity implements EntityStateMachine {
             break;
         case T_END_HEADER:
             bodyDescBuilder.setBodyStartByte(this.inbuffer.getBytesConsumed());
+            if (recursionMode == RecursionMode.M_HEADERS_ONLY) {
+                inbuffer.skipRemaining();
+                bodyDescBuilder.setBodyEndByte(this.inbuffer.getBytesConsumed());
+                body = bodyDescBuilder.build();
+                state = endState;
+                break;
+            }
             body = bodyDescBuilder.build();
             String mimeType = body.getMimeType();
             if (recursionMode == RecursionMode.M_FLAT) {
@@ -406,11 +446,8 @@ class MimeEntity implements EntityStateMachine {
 
     private void advanceToBoundary() throws IOException {
         if (!dataStream.eof()) {
-            if (tmpbuf == null) {
-                tmpbuf = getBufferRecycler().allocByteBuffer(0, 2048);
-            }
             InputStream instream = getLimitedContentStream();
-            while (instream.read(tmpbuf)!= -1) {
+            while (instream.skip(Long.MAX_VALUE) > 0) {
             }
         }
     }
@@ -424,7 +461,10 @@ class MimeEntity implements EntityStateMachine {
     }
 
     private InputStream decodedStream(InputStream instream) {
-        String transferEncoding = body.getTransferEncoding();
+        return decodedStream(instream, body.getTransferEncoding(), monitor);
+    }
+
+    static InputStream decodedStream(InputStream instream, String transferEncoding, DecodeMonitor monitor) {
         if (MimeUtil.isBase64Encoding(transferEncoding)) {
             instream = new Base64InputStream(instream, monitor);
         } else if (MimeUtil.isQuotedPrintableEncoded(transferEncoding)) {
@@ -0,0 +1,639 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.util.MimeUtil;
+
+/**
+ * Persistent index of the entity tree of a stored message.
+ * <p>
+ * The index records for every entity its IMAP style part number, MIME type,
+ * boundary, charset, transfer encoding and the byte offsets of its header and
+ * body, as collected by the parser through {@link BodyDescriptorBuilder}. It is
+ * meant to be written next to the message once (see {@link #indexFileFor(Path)})
+ * and loaded instead of parsing the message again when a single part is
+ * requested; the part content can then be read directly, for instance with
+ * {@link org.apache.james.mime4j.io.MappedInputStream#slice(long, long)}.
+ * <p>
+ * Part numbers follow IMAP conventions: the root entity has the empty part
+ * number, the children of a multipart are numbered from <code>1</code> and a
+ * message embedded in a <code>message/*</code> part shares the number of that
+ * part. An embedded message with a base64 or quoted-printable transfer
+ * encoding cannot be addressed by raw offsets and is indexed as an opaque part.
+ * <p>
+ * Instances are immutable.
+ */
+public final class MimeStructureIndex {
+
+    /** Suffix of index files written next to a message */
+    public static final String INDEX_FILE_SUFFIX = ".mimeidx";
+
+    private static final int MAGIC = 0x4d344a49; // "M4JI"
+    private static final int VERSION = 1;
+
+    private static final int FLAG_MESSAGE = 1;
+
+    /**
+     * Indexed entity.
+     */
+    public static final class Part {
+
+        private final String partNumber;
+        private final int depth;
+        private final boolean message;
+        private final String mimeType;
+        private final String boundary;
+        private final String charset;
+        private final String transferEncoding;
+        private final long headerStartByte;
+        private final long bodyStartByte;
+        private final long bodyEndByte;
+
+        Part(
+                String partNumber,
+                int depth,
+                boolean message,
+                String mimeType,
+                String boundary,
+                String charset,
+                String transferEncoding,
+                long headerStartByte,
+                long bodyStartByte,
+                long bodyEndByte) {
+            this.partNumber = partNumber;
+            this.depth = depth;
+            this.message = message;
+            this.mimeType = mimeType;
+            this.boundary = boundary;
+            this.charset = charset;
+            this.transferEncoding = transferEncoding;
+            this.headerStartByte = headerStartByte;
+            this.bodyStartByte = bodyStartByte;
+            this.bodyEndByte = bodyEndByte;
+        }
+
+        /**
+         * @return IMAP style part number, empty for the root entity.
+         */
+        public String getPartNumber() {
+            return partNumber;
+        }
+
+        /**
+         * @return nesting level, <code>0</code> for the root entity.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * @return <code>true</code> if this entity is a (possibly embedded)
+         *         message rather than a body part.
+         */
+        public boolean isMessage() {
+            return message;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public boolean isMultipart() {
+            return MimeUtil.isMultipart(mimeType);
+        }
+
+        public String getBoundary() {
+            return boundary;
+        }
+
+        public String getCharset() {
+            return charset;
+        }
+
+        public String getTransferEncoding() {
+            return transferEncoding;
+        }
+
+        public long getHeaderStartByte() {
+            return headerStartByte;
+        }
+
+        public long getBodyStartByte() {
+            return bodyStartByte;
+        }
+
+        public long getBodyEndByte() {
+            return bodyEndByte;
+        }
+
+        /**
+         * @return length of the raw (transfer encoded) body.
+         */
+        public long getBodyLength() {
+            return bodyEndByte - bodyStartByte;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + partNumber + "] " + mimeType
+                    + (message ? " (message)" : "")
+                    + ", boundary: " + boundary
+                    + ", charset: " + charset
+                    + ", transfer encoding: " + transferEncoding
+                    + ", header: " + headerStartByte
+                    + ", body: " + bodyStartByte + "-" + bodyEndByte;
+        }
+
+    }
+
+    private final List<Part> parts;
+    private final Map<String, Part> partsByNumber;
+
+    private MimeStructureIndex(final List<Part> parts) {
+        this.parts = Collections.unmodifiableList(parts);
+        this.partsByNumber = new HashMap<String, Part>(parts.size() * 2);
+        for (Part part : parts) {
+            if (!this.partsByNumber.containsKey(part.getPartNumber())) {
+                this.partsByNumber.put(part.getPartNumber(), part);
+            }
+        }
+    }
+
+    /**
+     * @return all entities in document order, the root entity first.
+     */
+    public List<Part> getParts() {
+        return parts;
+    }
+
+    /**
+     * @return the root entity.
+     */
+    public Part getRoot() {
+        return parts.get(0);
+    }
+
+    /**
+     * Looks up an entity by its IMAP style part number. When a
+     * <code>message/*</code> part and the message embedded in it share the
+     * same number, the part is returned.
+     *
+     * @param partNumber part number such as <code>2.1</code>, or the empty
+     *        string for the root entity.
+     * @return the entity or <code>null</code> if there is no such part.
+     */
+    public Part getPart(final String partNumber) {
+        return partsByNumber.get(partNumber);
+    }
+
+    /**
+     * @return number of bytes of the indexed message, can be compared with the
+     *         size of the stored message to detect a stale index.
+     */
+    public long getMessageLength() {
+        return getRoot().getBodyEndByte();
+    }
+
+    /**
+     * Builds the index of the given message using the default configuration.
+     */
+    public static MimeStructureIndex build(final InputStream instream) throws IOException, MimeException {
+        return build(instream, null);
+    }
+
+    /**
+     * Builds the index of the given message.
+     *
+     * @param instream message content.
+     * @param config parser configuration, may be <code>null</code>.
+     * @return index of the message.
+     */
+    public static MimeStructureIndex build(
+            final InputStream instream,
+            final MimeConfig config) throws IOException, MimeException {
+        if (instream == null) {
+            throw new IllegalArgumentException("Input stream may not be null");
+        }
+        Indexer indexer = new Indexer(config);
+        indexer.stream.parse(instream);
+        return indexer.run();
+    }
+
+    /**
+     * Builds the index of a stored message, reading it through memory mapped
+     * windows.
+     *
+     * @param message message file.
+     * @param config parser configuration, may be <code>null</code>.
+     * @return index of the message.
+     */
+    public static MimeStructureIndex build(
+            final Path message,
+            final MimeConfig config) throws IOException, MimeException {
+        if (message == null) {
+            throw new IllegalArgumentException("Path may not be null");
+        }
+        Indexer indexer = new Indexer(config);
+        indexer.stream.parse(message);
+        return indexer.run();
+    }
+
+    /**
+     * @param message stored message.
+     * @return the path of the index file kept next to the message.
+     */
+    public static Path indexFileFor(final Path message) {
+        return message.resolveSibling(message.getFileName() + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Writes this index in its binary form.
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        for (Part part : parts) {
+            intern(strings, part.getPartNumber());
+            intern(strings, part.getMimeType());
+            intern(strings, part.getBoundary());
+            intern(strings, part.getCharset());
+            intern(strings, part.getTransferEncoding());
+        }
+        DataOutputStream dataout = new DataOutputStream(out);
+        dataout.writeInt(MAGIC);
+        dataout.writeByte(VERSION);
+        writeVarLong(dataout, strings.size());
+        for (String s : strings.keySet()) {
+            dataout.writeUTF(s);
+        }
+        writeVarLong(dataout, parts.size());
+        for (Part part : parts) {
+            writeVarLong(dataout, part.getDepth());
+            dataout.writeByte(part.isMessage() ? FLAG_MESSAGE : 0);
+            writeString(dataout, strings, part.getPartNumber());
+            writeString(dataout, strings, part.getMimeType());
+            writeString(dataout, strings, part.getBoundary());
+            writeString(dataout, strings, part.getCharset());
+            writeString(dataout, strings, part.getTransferEncoding());
+            writeVarLong(dataout, zigZag(part.getHeaderStartByte()));
+            writeVarLong(dataout, zigZag(part.getBodyStartByte() - part.getHeaderStartByte()));
+            writeVarLong(dataout, zigZag(part.getBodyEndByte() - part.getBodyStartByte()));
+        }
+        dataout.flush();
+    }
+
+    /**
+     * Writes this index to the given file, replacing any existing content.
+     */
+    public void write(final Path file) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        try {
+            writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo(OutputStream)}.
+     *
+     * @throws IOException if the content is not a valid index.
+     */
+    public static MimeStructureIndex readFrom(final InputStream instream) throws IOException {
+        DataInputStream datain = new DataInputStream(instream);
+        if (datain.readInt() != MAGIC) {
+            throw new IOException("Not a MIME structure index");
+        }
+        int version = datain.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported MIME structure index version: " + version);
+        }
+        String[] strings = new String[readCount(datain)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = datain.readUTF();
+        }
+        int count = readCount(datain);
+        if (count == 0) {
+            throw new IOException("MIME structure index is empty");
+        }
+        List<Part> parts = new ArrayList<Part>(count);
+        for (int i = 0; i < count; i++) {
+            int depth = readCount(datain);
+            int flags = datain.readUnsignedByte();
+            String partNumber = readString(datain, strings);
+            String mimeType = readString(datain, strings);
+            String boundary = readString(datain, strings);
+            String charset = readString(datain, strings);
+            String transferEncoding = readString(datain, strings);
+            long headerStart = unZigZag(readVarLong(datain));
+            long bodyStart = headerStart + unZigZag(readVarLong(datain));
+            long bodyEnd = bodyStart + unZigZag(readVarLong(datain));
+            parts.add(new Part(partNumber, depth, (flags & FLAG_MESSAGE) != 0,
+                    mimeType, boundary, charset, transferEncoding,
+                    headerStart, bodyStart, bodyEnd));
+        }
+        return new MimeStructureIndex(parts);
+    }
+
+    /**
+     * Reads an index from the given file.
+     *
+     * @throws IOException if the file cannot be read or is not a valid index.
+     */
+    public static MimeStructureIndex read(final Path file) throws IOException {
+        return readFrom(new ByteArrayInputStream(Files.readAllBytes(file)));
+    }
+
+    private static void intern(Map<String, Integer> strings, String s) {
+        if (s != null && !strings.containsKey(s)) {
+            strings.put(s, strings.size());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings, String s) throws IOException {
+        // 0 stands for null
+        writeVarLong(out, s != null ? strings.get(s) + 1 : 0);
+    }
+
+    private static String readString(DataInputStream in, String[] strings) throws IOException {
+        int i = readCount(in);
+        if (i > strings.length) {
+            throw new IOException("Invalid string reference in MIME structure index: " + i);
+        }
+        return i == 0 ? null : strings[i - 1];
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number in MIME structure index");
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Invalid count in MIME structure index: " + value);
+        }
+        return (int) value;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Entity being indexed.
+     */
+    private static final class Node {
+
+        final String partNumber;
+        final int depth;
+        final boolean message;
+        final RecordingBodyDescriptorBuilder builder;
+
+        BodyDescriptor descriptor;
+        long bodyEndByte = -1;
+        long lastChildEndByte = -1;
+        int children;
+
+        Node(String partNumber, int depth, boolean message, RecordingBodyDescriptorBuilder builder) {
+            this.partNumber = partNumber;
+            this.depth = depth;
+            this.message = message;
+            this.builder = builder;
+        }
+
+        Part toPart() {
+            long end = bodyEndByte >= 0 ? bodyEndByte : lastChildEndByte;
+            if (descriptor == null) {
+                return new Part(partNumber, depth, message, null, null, null, null, 0, 0, end);
+            }
+            return new Part(partNumber, depth, message,
+                    descriptor.getMimeType(), descriptor.getBoundary(),
+                    descriptor.getCharset(), descriptor.getTransferEncoding(),
+                    descriptor.getHeaderStartByte(), descriptor.getBodyStartByte(),
+                    end);
+        }
+
+    }
+
+    /**
+     * Decorates the body descriptor builder of every entity so that the
+     * descriptor of an entity embedding a message, which is never reported
+     * through the token stream, can be recovered.
+     */
+    private static final class RecordingBodyDescriptorBuilder implements BodyDescriptorBuilder {
+
+        private final BodyDescriptorBuilder delegate;
+        private final Indexer indexer;
+
+        BodyDescriptor last;
+
+        RecordingBodyDescriptorBuilder(BodyDescriptorBuilder delegate, Indexer indexer) {
+            this.delegate = delegate;
+            this.indexer = indexer;
+        }
+
+        public void reset() {
+            delegate.reset();
+        }
+
+        public Field addField(RawField field) throws MimeException {
+            return delegate.addField(field);
+        }
+
+        public void setHeaderStartByte(long position) {
+            delegate.setHeaderStartByte(position);
+        }
+
+        public void setBodyStartByte(long position) {
+            delegate.setBodyStartByte(position);
+        }
+
+        public void setBodyEndByte(long position) {
+            delegate.setBodyEndByte(position);
+        }
+
+        public BodyDescriptor build() {
+            last = delegate.build();
+            return last;
+        }
+
+        public BodyDescriptorBuilder newChild() {
+            RecordingBodyDescriptorBuilder child = new RecordingBodyDescriptorBuilder(delegate.newChild(), indexer);
+            indexer.lastChild = child;
+            return child;
+        }
+
+    }
+
+    private static final class Indexer {
+
+        final MimeTokenStream stream;
+        final RecordingBodyDescriptorBuilder root;
+        final ArrayDeque<Node> nodes = new ArrayDeque<Node>();
+
+        RecordingBodyDescriptorBuilder lastChild;
+
+        private byte[] skipbuf;
+
+        Indexer(MimeConfig config) {
+            this.root = new RecordingBodyDescriptorBuilder(new FallbackBodyDescriptorBuilder(), this);
+            this.stream = new MimeTokenStream(config, root);
+        }
+
+        MimeStructureIndex run() throws IOException, MimeException {
+            // parts are collected when they start so that the list is in document order
+            List<Node> started = new ArrayList<Node>();
+            for (EntityState state = stream.getState();
+                 state != EntityState.T_END_OF_STREAM;
+                 state = stream.next()) {
+                switch (state) {
+                    case T_START_MESSAGE:
+                        Node enclosing = nodes.peekLast();
+                        if (enclosing != null && enclosing.descriptor == null) {
+                            enclosing.descriptor = enclosing.builder.last;
+                        }
+                        started.add(push(new Node(
+                                enclosing != null ? enclosing.partNumber : "",
+                                nodes.size(), true, enclosing != null ? lastChild : root)));
+                        break;
+                    case T_START_BODYPART:
+                        Node parent = nodes.getLast();
+                        parent.children++;
+                        started.add(push(new Node(
+                                parent.partNumber.isEmpty()
+                                        ? Integer.toString(parent.children)
+                                        : parent.partNumber + "." + parent.children,
+                                nodes.size(), false, lastChild)));
+                        break;
+                    case T_END_HEADER:
+                        BodyDescriptor peek = nodes.getLast().builder.build();
+                        if (MimeUtil.isMessage(peek.getMimeType())
+                                && (MimeUtil.isBase64Encoding(peek.getTransferEncoding())
+                                || MimeUtil.isQuotedPrintableEncoded(peek.getTransferEncoding()))) {
+                            // offsets of a transfer encoded message would not address the stored content
+                            RecursionMode mode = stream.getRecursionMode();
+                            stream.setRecursionMode(RecursionMode.M_NO_RECURSE);
+                            EntityState next;
+                            try {
+                                next = stream.next();
+                            } finally {
+                                stream.setRecursionMode(mode);
+                            }
+                            if (next != EntityState.T_BODY) {
+                                throw new IllegalStateException("Unexpected parser state "
+                                        + MimeTokenStream.stateToString(next) + " for the content of an encoded message");
+                            }
+                            onBody();
+                        }
+                        break;
+                    case T_BODY:
+                        onBody();
+                        break;
+                    case T_START_MULTIPART:
+                        nodes.getLast().descriptor = stream.getBodyDescriptor();
+                        break;
+                    case T_PREAMBLE:
+                    case T_EPILOGUE:
+                        skip(stream.getInputStream());
+                        break;
+                    case T_END_MULTIPART:
+                        nodes.getLast().bodyEndByte = stream.getBodyDescriptor().getBodyEndByte();
+                        break;
+                    case T_END_BODYPART:
+                    case T_END_MESSAGE:
+                        Node node = nodes.removeLast();
+                        Node up = nodes.peekLast();
+                        if (up != null) {
+                            up.lastChildEndByte = node.bodyEndByte >= 0 ? node.bodyEndByte : node.lastChildEndByte;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            List<Part> parts = new ArrayList<Part>(started.size());
+            for (Node node : started) {
+                parts.add(node.toPart());
+            }
+            return new MimeStructureIndex(parts);
+        }
+
+        private Node push(Node node) {
+            nodes.addLast(node);
+            return node;
+        }
+
+        private void onBody() throws IOException {
+            Node node = nodes.getLast();
+            node.descriptor = stream.getBodyDescriptor();
+            node.bodyEndByte = node.descriptor.getBodyStartByte() + skip(stream.getInputStream());
+        }
+
+        private long skip(InputStream instream) throws IOException {
+            if (skipbuf == null) {
+                skipbuf = new byte[4096];
+            }
+            long count = 0;
+            int n;
+            while ((n = instream.read(skipbuf)) != -1) {
+                count += n;
+            }
+            return count;
+        }
+
+    }
+
+}
@@ -24,14 +24,21 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.ArrayDeque;
 
 import org.apache.james.mime4j.Charsets;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.io.BufferedLineReaderInputStream;
+import org.apache.james.mime4j.io.InputStreams;
 import org.apache.james.mime4j.io.LineNumberInputStream;
+import org.apache.james.mime4j.io.MappedInputStream;
 import org.apache.james.mime4j.util.CharsetUtil;
+import org.apache.james.mime4j.util.MimeUtil;
 
 /**
  * <p>
@@ -88,6 +95,10 @@ public class MimeTokenStream {
     private EntityStateMachine currentStateMachine;
     private RecursionMode recursionMode = RecursionMode.M_RECURSE;
     private MimeEntity rootentity;
+    // mapped content being parsed, and its position when parsing started
+    private MappedInputStream source;
+    private long sourceOffset;
+    private MappedBody mappedBody;
 
     /**
      * Constructs a standard (lax) stream.
@@ -126,7 +137,8 @@ public class MimeTokenStream {
         super();
         this.config = config != null ? config : MimeConfig.DEFAULT;
         this.fieldBuilder = fieldBuilder != null ? fieldBuilder :
-            new DefaultFieldBuilder(this.config.getMaxHeaderLen());
+            new DefaultFieldBuilder(this.config.getMaxHeaderLen(),
+                    this.config.getBufferRecyclerPool().getBufferRecycler());
         this.monitor = monitor != null ? monitor :
             (this.config.isStrictParsing() ? DecodeMonitor.STRICT : DecodeMonitor.SILENT);
         this.bodyDescBuilder = bodyDescBuilder != null ? bodyDescBuilder :
@@ -141,6 +153,86 @@ public class MimeTokenStream {
         doParse(stream, EntityState.T_START_MESSAGE);
     }
 
+    /**
+     * Instructs the {@code MimeTokenStream} to parse the message held in
+     * <code>b[off, off + len)</code>.
+     * <p>
+     * The array is parsed in place: it is not copied to an intermediate buffer,
+     * and the streams returned by {@link #getInputStream()} and
+     * {@link #getDecodedInputStream()} read directly from it. The array must
+     * therefore not be modified until parsing is complete. When line numbers are
+     * counted (see {@link MimeConfig#isCountLineNumbers()}) the content is read as
+     * a stream instead.
+     * </p>
+     * <p>If the {@code MimeTokenStream} has already been in use, resets the
+     * streams internal state.</p>
+     */
+    public void parse(byte[] b, int off, int len) {
+        if (b == null) {
+            throw new IllegalArgumentException("Byte array may not be null");
+        }
+        if (config.isCountLineNumbers()) {
+            doParse(InputStreams.create(b, off, len), EntityState.T_START_MESSAGE);
+        } else {
+            doParse(new BufferedLineReaderInputStream(b, off, len, config.getMaxLineLen()),
+                    EntityState.T_START_MESSAGE);
+        }
+    }
+
+    /**
+     * Instructs the {@code MimeTokenStream} to parse the remaining content of the
+     * given buffer. The position of <code>buffer</code> is left unchanged.
+     * <p>
+     * Buffers backed by an accessible array are parsed in place, see
+     * {@link #parse(byte[], int, int)}. Other buffers are read as a stream.
+     * </p>
+     */
+    public void parse(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Byte buffer may not be null");
+        }
+        if (buffer.hasArray()) {
+            parse(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            doParse(InputStreams.create(buffer.duplicate()), EntityState.T_START_MESSAGE);
+        }
+    }
+
+    /**
+     * Instructs the {@code MimeTokenStream} to parse the content of the given file,
+     * read through memory mapped windows (see {@link MappedInputStream}) rather
+     * than through a file input stream. The file must not be truncated until
+     * parsing is complete.
+     * <p>
+     * The streams returned by {@link #getInputStream()} and
+     * {@link #getDecodedInputStream()} for a body are slices of the mapping,
+     * unless the body is nested in a transfer encoded message or follows a
+     * malformed header line (see {@link MimeConfig#isMalformedHeaderStartsBody()}).
+     * The parser still
+     * reads the body through its own buffer to find where it ends. The same
+     * applies to any {@link MappedInputStream} given to {@link #parse(InputStream)}.
+     * </p>
+     * <p>If the {@code MimeTokenStream} has already been in use, resets the
+     * streams internal state.</p>
+     *
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public void parse(Path path) throws IOException {
+        parse(MappedInputStream.map(path));
+    }
+
+    /**
+     * Instructs the {@code MimeTokenStream} to parse the whole content of the given
+     * channel, read through memory mapped windows. The channel may be closed once
+     * this method returns.
+     *
+     * @see #parse(Path)
+     * @throws IOException if the channel cannot be mapped.
+     */
+    public void parse(FileChannel channel) throws IOException {
+        parse(MappedInputStream.map(channel));
+    }
+
     /**
      * <p>Instructs the {@code MimeTokenStream} to parse the given content with
      * the content type. The message stream is assumed to have no message header
@@ -202,6 +294,13 @@ public class MimeTokenStream {
                     bodyDescBuilder);
         }
 
+        if (stream instanceof MappedInputStream) {
+            source = (MappedInputStream) stream;
+            sourceOffset = source.position();
+        } else {
+            source = null;
+        }
+        mappedBody = null;
         rootentity.setRecursionMode(recursionMode);
         currentStateMachine = rootentity;
         entities.clear();
@@ -259,6 +358,12 @@ public class MimeTokenStream {
      */
     public void stop() {
         rootentity.stopSoft();
+        // embedded entities parsed in place do not read through the root entity
+        for (EntityStateMachine entity : entities) {
+            if (entity instanceof MimeEntity) {
+                ((MimeEntity) entity).stopSoft();
+            }
+        }
         fieldBuilder.release();
     }
 
@@ -284,6 +389,10 @@ public class MimeTokenStream {
      *   invalid value.
      */
     public InputStream getInputStream() {
+        InputStream body = mappedBody();
+        if (body != null) {
+            return body;
+        }
         return currentStateMachine.getContentStream();
     }
 
@@ -303,9 +412,109 @@ public class MimeTokenStream {
      *   invalid value.
      */
     public InputStream getDecodedInputStream() {
+        InputStream body = mappedBody();
+        if (body != null) {
+            return MimeEntity.decodedStream(body,
+                    currentStateMachine.getBodyDescriptor().getTransferEncoding(), monitor);
+        }
         return currentStateMachine.getDecodedContentStream();
     }
 
+    /**
+     * Returns the body of the current entity as a slice of the mapped content
+     * being parsed (see {@link #parse(Path)}), or <code>null</code> if the
+     * content is not mapped, the current state is not {@link EntityState#T_BODY},
+     * or the entity is embedded in a transfer encoded message, whose content
+     * is parsed once decoded, or a malformed header line was handed back to a
+     * body, which then no longer matches its offsets.
+     */
+    private MappedBody mappedBody() {
+        if (source == null || state != EntityState.T_BODY
+                || !(currentStateMachine instanceof MimeEntity) || isInEncodedMessage()
+                || isHeaderUnread()) {
+            return null;
+        }
+        if (mappedBody == null) {
+            mappedBody = new MappedBody(currentStateMachine.getContentStream(),
+                    sourceOffset + currentStateMachine.getBodyDescriptor().getBodyStartByte());
+        }
+        return mappedBody;
+    }
+
+    private boolean isInEncodedMessage() {
+        for (EntityStateMachine entity : entities) {
+            // an entity is only nested in the body of a message
+            if (entity != currentStateMachine && entity.getState() == EntityState.T_BODY) {
+                String transferEncoding = entity.getBodyDescriptor().getTransferEncoding();
+                if (MimeUtil.isBase64Encoding(transferEncoding)
+                        || MimeUtil.isQuotedPrintableEncoded(transferEncoding)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isHeaderUnread() {
+        for (EntityStateMachine entity : entities) {
+            if (entity instanceof MimeEntity && ((MimeEntity) entity).isHeaderUnread()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Body read from the mapped content. The parser content stream of the
+     * body is skipped when the body is first read, which finds where the body
+     * ends; the body itself is then read from the mapping, not through the
+     * parser buffers.
+     */
+    private final class MappedBody extends InputStream {
+
+        private final InputStream content;
+        private final long start;
+        private MappedInputStream slice;
+
+        MappedBody(InputStream content, long start) {
+            this.content = content;
+            this.start = start;
+        }
+
+        private MappedInputStream slice() throws IOException {
+            if (slice == null) {
+                long length = 0;
+                long n;
+                while ((n = content.skip(Long.MAX_VALUE)) > 0) {
+                    length += n;
+                }
+                slice = source.slice(start, length);
+            }
+            return slice;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return slice().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return slice().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return slice().skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return slice().available();
+        }
+
+    }
+
     /**
      * Gets a reader configured for the current body or body part.
      * The reader will return a transfer and charset decoded
@@ -371,6 +580,7 @@ public class MimeTokenStream {
         if (state == EntityState.T_END_OF_STREAM  ||  currentStateMachine == null) {
             throw new IllegalStateException("No more tokens are available.");
         }
+        mappedBody = null;
         while (currentStateMachine != null) {
             EntityStateMachine next = currentStateMachine.advance();
             if (next != null) {
@@ -0,0 +1,938 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.io.BoundaryMatcher;
+import org.apache.james.mime4j.io.InputStreams;
+import org.apache.james.mime4j.io.MaxHeaderLimitException;
+import org.apache.james.mime4j.io.MaxLineLimitException;
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.ByteScanner;
+import org.apache.james.mime4j.util.CharsetUtil;
+import org.apache.james.mime4j.util.MimeUtil;
+import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
+
+/**
+ * <p>
+ * Push variant of {@link MimeTokenStream} for servers that receive messages
+ * as a sequence of network buffers and cannot block a thread per connection
+ * while waiting for the rest of the data.
+ * </p>
+ * <p>
+ * Data is handed to the parser with {@link #feed(ByteBuffer)} as it arrives
+ * and {@link #endOfInput()} is called once the message is complete. The
+ * parser emits the same sequence of {@link EntityState} tokens as
+ * {@link MimeTokenStream}, except that {@link #next()} returns
+ * <code>null</code> whenever more input is needed to decide the next token.
+ * All parsing state is kept between calls, and only data not consumed yet is
+ * retained: memory use is bounded by the size of the fed buffers plus the
+ * longest header line rather than by the size of the message.
+ * </p>
+ * <pre>
+ *      NonBlockingMimeTokenStream stream = new NonBlockingMimeTokenStream();
+ *      // for each buffer received from the connection
+ *      stream.feed(buffer);
+ *      for (EntityState state = stream.next(); state != null; state = stream.next()) {
+ *          switch (state) {
+ *            case T_BODY:
+ *              // a chunk of the body content
+ *              InputStream chunk = stream.getInputStream();
+ *              break;
+ *            case T_FIELD:
+ *              Field field = stream.getField();
+ *              break;
+ *            // ...
+ *          }
+ *      }
+ *      // once the connection reports the end of the message
+ *      stream.endOfInput();
+ *      // ... and drain the remaining tokens up to T_END_OF_STREAM
+ * </pre>
+ * <p>
+ * Content states ({@link EntityState#T_BODY}, {@link EntityState#T_PREAMBLE},
+ * {@link EntityState#T_EPILOGUE} and {@link EntityState#T_RAW_ENTITY}) are
+ * reported once for every contiguous chunk of content available, and
+ * {@link #getInputStream()} returns that chunk only. The first chunk of an
+ * entity may be empty; the full content is the concatenation of all chunks.
+ * Content is delivered raw: decoding the transfer encoding is left to the
+ * caller. For the same reason a <code>message/rfc822</code> part with a
+ * <code>base64</code> or <code>quoted-printable</code> transfer encoding is
+ * reported as a body rather than parsed as an embedded message.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe.
+ * </p>
+ */
+public class NonBlockingMimeTokenStream {
+
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
+    // sub-states of a multipart entity once its preamble is over
+    private static final int PART = 0;
+    private static final int DELIMITER = 1;
+    private static final int NEXT_PART = 2;
+    private static final int CLOSED = 3;
+
+    private final MimeConfig config;
+    private final DecodeMonitor monitor;
+    private final FieldBuilder fieldBuilder;
+    private final BodyDescriptorBuilder bodyDescBuilder;
+
+    private final List<Entity> entities = new ArrayList<Entity>();
+    private final List<Level> levels = new ArrayList<Level>();
+
+    private RecursionMode recursionMode = RecursionMode.M_RECURSE;
+    private EntityState state;
+    private Entity current;
+
+    private byte[] buf;
+    private ByteBuffer bufView;
+    // absolute position of buf[0] in the input
+    private long base;
+    private long pos;
+    private long end;
+    private boolean endOfInput;
+
+    // content chunk of the current token
+    private byte[] chunk;
+    private int chunkOff;
+    private int chunkLen;
+
+    // end of the data visible to an entity, computed by view()
+    private long viewLimit;
+    private boolean viewEnd;
+
+    public NonBlockingMimeTokenStream() {
+        this(null);
+    }
+
+    public NonBlockingMimeTokenStream(final MimeConfig config) {
+        this(config, null, null, null);
+    }
+
+    public NonBlockingMimeTokenStream(
+            final MimeConfig config,
+            final BodyDescriptorBuilder bodyDescBuilder) {
+        this(config, null, null, bodyDescBuilder);
+    }
+
+    public NonBlockingMimeTokenStream(
+            final MimeConfig config,
+            final DecodeMonitor monitor,
+            final BodyDescriptorBuilder bodyDescBuilder) {
+        this(config, monitor, null, bodyDescBuilder);
+    }
+
+    public NonBlockingMimeTokenStream(
+            final MimeConfig config,
+            final DecodeMonitor monitor,
+            final FieldBuilder fieldBuilder,
+            final BodyDescriptorBuilder bodyDescBuilder) {
+        super();
+        this.config = config != null ? config : MimeConfig.DEFAULT;
+        this.monitor = monitor != null ? monitor :
+            (this.config.isStrictParsing() ? DecodeMonitor.STRICT : DecodeMonitor.SILENT);
+        this.fieldBuilder = fieldBuilder != null ? fieldBuilder :
+            new DefaultFieldBuilder(this.config.getMaxHeaderLen(),
+                    this.config.getBufferRecyclerPool().getBufferRecycler());
+        this.bodyDescBuilder = bodyDescBuilder != null ? bodyDescBuilder :
+            new FallbackBodyDescriptorBuilder();
+        this.buf = new byte[INITIAL_BUFFER_SIZE];
+        this.bufView = ByteScanner.longView(this.buf);
+        Entity root = new Entity(this.bodyDescBuilder, 0,
+                EntityState.T_START_MESSAGE, EntityState.T_END_MESSAGE);
+        this.entities.add(root);
+        this.current = root;
+        this.state = EntityState.T_START_MESSAGE;
+    }
+
+    /**
+     * Appends the remaining content of the given buffer to the input. The
+     * content is copied, so the buffer may be reused once this method
+     * returns.
+     *
+     * @param src input data.
+     * @throws IllegalStateException if {@link #endOfInput()} has been called.
+     */
+    public void feed(final ByteBuffer src) {
+        if (src == null) {
+            throw new IllegalArgumentException("Buffer may not be null");
+        }
+        if (endOfInput) {
+            throw new IllegalStateException("End of input has already been signalled");
+        }
+        int len = src.remaining();
+        if (len == 0) {
+            return;
+        }
+        ensureCapacity(len);
+        src.get(buf, index(end), len);
+        end += len;
+    }
+
+    /**
+     * Signals that no more input follows, so that the pending tokens can be
+     * completed.
+     */
+    public void endOfInput() {
+        endOfInput = true;
+    }
+
+    /**
+     * @return whether {@link #endOfInput()} has been called.
+     */
+    public boolean isEndOfInput() {
+        return endOfInput;
+    }
+
+    /**
+     * Finishes the parse as if the input ended at the current position. This
+     * will still trigger the 'end' events.
+     */
+    public void stop() {
+        end = pos;
+        endOfInput = true;
+    }
+
+    /** Gets the configuration of this parser. */
+    public MimeConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Returns the current state.
+     */
+    public EntityState getState() {
+        return state;
+    }
+
+    /**
+     * Gets the current recursion mode.
+     */
+    public RecursionMode getRecursionMode() {
+        return recursionMode;
+    }
+
+    /**
+     * Sets the current recursion mode. Entities started from now on are
+     * parsed according to the given mode.
+     */
+    public void setRecursionMode(RecursionMode mode) {
+        this.recursionMode = mode;
+    }
+
+    /**
+     * This method is valid, if {@link #getState()} returns {@link EntityState#T_FIELD}.
+     * @return String with the fields raw contents.
+     * @throws IllegalStateException {@link #getState()} returns another
+     *   value than {@link EntityState#T_FIELD}.
+     */
+    public Field getField() {
+        if (state != EntityState.T_FIELD) {
+            throw new IllegalStateException("Invalid state: " + MimeTokenStream.stateToString(state));
+        }
+        return current.field;
+    }
+
+    /**
+     * <p>Gets a descriptor for the current entity.
+     * This method is valid if {@link #getState()} returns:</p>
+     * <ul>
+     * <li>{@link EntityState#T_BODY}</li>
+     * <li>{@link EntityState#T_START_MULTIPART}</li>
+     * <li>{@link EntityState#T_EPILOGUE}</li>
+     * <li>{@link EntityState#T_PREAMBLE}</li>
+     * <li>{@link EntityState#T_END_MULTIPART}</li>
+     * </ul>
+     * @return <code>BodyDescriptor</code>, not nulls
+     */
+    public BodyDescriptor getBodyDescriptor() {
+        switch (state) {
+        case T_BODY:
+        case T_START_MULTIPART:
+        case T_PREAMBLE:
+        case T_EPILOGUE:
+        case T_END_MULTIPART:
+            return current.body;
+        default:
+            throw new IllegalStateException("Invalid state: " + MimeTokenStream.stateToString(state));
+        }
+    }
+
+    /**
+     * This method returns the raw content of the current chunk. It is valid if
+     * {@link #getState()} returns {@link EntityState#T_BODY},
+     * {@link EntityState#T_PREAMBLE}, {@link EntityState#T_EPILOGUE} or
+     * {@link EntityState#T_RAW_ENTITY}. The stream is valid until
+     * {@link #next()} is called.
+     *
+     * @return Data stream, depending on the current state.
+     * @throws IllegalStateException {@link #getState()} returns an
+     *   invalid value.
+     */
+    public InputStream getInputStream() {
+        switch (state) {
+        case T_BODY:
+        case T_PREAMBLE:
+        case T_EPILOGUE:
+        case T_RAW_ENTITY:
+            if (chunk == null) {
+                return InputStreams.create(new byte[0]);
+            }
+            return InputStreams.create(chunk, chunkOff, chunkLen);
+        default:
+            throw new IllegalStateException("Invalid state: " + MimeTokenStream.stateToString(state));
+        }
+    }
+
+    /**
+     * Advances to the next token.
+     *
+     * @return the new state, or <code>null</code> if more input is needed to
+     *   decide the next token, in which case the current state is retained.
+     * @throws IllegalStateException if the end of the stream has been reached.
+     * @throws IOException if the content limit is exceeded.
+     * @throws MimeException if the input cannot be parsed.
+     */
+    public EntityState next() throws IOException, MimeException {
+        if (state == EntityState.T_END_OF_STREAM) {
+            throw new IllegalStateException("No more tokens are available.");
+        }
+        chunk = null;
+        for (;;) {
+            Entity entity = entities.get(entities.size() - 1);
+            switch (entity.state) {
+            case T_START_MESSAGE:
+            case T_START_BODYPART:
+                return emit(entity, EntityState.T_START_HEADER);
+            case T_START_HEADER:
+                if (!entity.headerStarted) {
+                    entity.bodyDescBuilder.reset();
+                    entity.bodyDescBuilder.setHeaderStartByte(pos);
+                    entity.headerStarted = true;
+                }
+                // fall through
+            case T_FIELD: {
+                int result = nextField(entity);
+                if (result < 0) {
+                    return null;
+                }
+                return emit(entity, result > 0 ? EntityState.T_FIELD : EntityState.T_END_HEADER);
+            }
+            case T_END_HEADER:
+                if (recursionMode == RecursionMode.M_HEADERS_ONLY) {
+                    entity.bodyDescBuilder.setBodyStartByte(pos);
+                    entity.body = entity.bodyDescBuilder.build();
+                    entity.state = EntityState.T_BODY;
+                    entity.skipping = true;
+                    break;
+                }
+                return endHeader(entity);
+            case T_START_MULTIPART:
+                if (levels.size() == entity.level) {
+                    String boundary = entity.body.getBoundary();
+                    if (boundary == null) {
+                        throw new MimeException("Multipart body does not have a valid boundary");
+                    }
+                    levels.add(new Level(new BoundaryMatcher(boundary), pos));
+                }
+                Level level = levels.get(entity.level);
+                view(entity.level + 1);
+                if (level.delimiter == level.regionStart) {
+                    entity.state = EntityState.T_PREAMBLE;
+                    entity.partsStarted = true;
+                    break;
+                }
+                if (level.delimiter < 0 && level.candidate == level.regionStart && !viewEnd) {
+                    // cannot tell yet whether the body starts with a delimiter
+                    return null;
+                }
+                return firstChunk(entity, EntityState.T_PREAMBLE);
+            case T_PREAMBLE:
+                if (entity.partsStarted) {
+                    return nextPart(entity);
+                }
+                // fall through
+            case T_BODY:
+            case T_EPILOGUE:
+            case T_RAW_ENTITY:
+                view(entity.state == EntityState.T_PREAMBLE ? entity.level + 1 : entity.level);
+                if (viewLimit > pos) {
+                    if (entity.embedding || entity.skipping) {
+                        // the content belongs to an embedded message already
+                        // parsed, or is discarded as it arrives
+                        pos = viewLimit;
+                        break;
+                    }
+                    return nextChunk(entity, entity.state);
+                }
+                if (!viewEnd) {
+                    return null;
+                }
+                if (entity.state == EntityState.T_BODY) {
+                    if (entity.skipping) {
+                        entity.bodyDescBuilder.setBodyEndByte(pos);
+                        entity.body = entity.bodyDescBuilder.build();
+                    }
+                    return emit(entity, entity.endState);
+                } else if (entity.state == EntityState.T_EPILOGUE) {
+                    return endMultipart(entity);
+                } else if (entity.state == EntityState.T_RAW_ENTITY) {
+                    entities.remove(entities.size() - 1);
+                } else {
+                    entity.partsStarted = true;
+                    entity.phase = PART;
+                }
+                break;
+            case T_END_MULTIPART:
+                return emit(entity, entity.endState);
+            case T_END_MESSAGE:
+            case T_END_BODYPART:
+                entities.remove(entities.size() - 1);
+                if (entities.isEmpty()) {
+                    return emit(entity, EntityState.T_END_OF_STREAM);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Invalid state: " + MimeTokenStream.stateToString(entity.state));
+            }
+        }
+    }
+
+    private EntityState endHeader(Entity entity) throws IOException {
+        entity.bodyDescBuilder.setBodyStartByte(pos);
+        entity.body = entity.bodyDescBuilder.build();
+        String mimeType = entity.body.getMimeType();
+        if (recursionMode == RecursionMode.M_FLAT) {
+            view(entity.level);
+            return firstChunk(entity, EntityState.T_BODY);
+        } else if (MimeUtil.isMultipart(mimeType)) {
+            return emit(entity, EntityState.T_START_MULTIPART);
+        } else if (recursionMode != RecursionMode.M_NO_RECURSE
+                && MimeUtil.isMessage(mimeType)
+                && !isEncoded(entity.body)) {
+            entity.state = EntityState.T_BODY;
+            entity.embedding = true;
+            return start(newEntity(entity, EntityState.T_START_MESSAGE, EntityState.T_END_MESSAGE));
+        } else {
+            view(entity.level);
+            return firstChunk(entity, EntityState.T_BODY);
+        }
+    }
+
+    private static boolean isEncoded(BodyDescriptor body) {
+        String transferEncoding = body.getTransferEncoding();
+        return MimeUtil.isBase64Encoding(transferEncoding)
+                || MimeUtil.isQuotedPrintableEncoded(transferEncoding);
+    }
+
+    private Entity newEntity(Entity parent, EntityState startState, EntityState endState) {
+        // the entity is bounded by all the delimiters seen so far
+        int level = levels.size();
+        if (recursionMode == RecursionMode.M_RAW) {
+            return new Entity(null, level, EntityState.T_RAW_ENTITY, null);
+        }
+        return new Entity(parent.bodyDescBuilder.newChild(), level, startState, endState);
+    }
+
+    private EntityState start(Entity entity) throws IOException {
+        entities.add(entity);
+        if (entity.state == EntityState.T_RAW_ENTITY) {
+            view(entity.level);
+            return firstChunk(entity, EntityState.T_RAW_ENTITY);
+        }
+        return emit(entity, entity.state);
+    }
+
+    /**
+     * Moves a multipart entity past the part just parsed: skips what is left
+     * of it, then the delimiter line, and starts the next part or the
+     * epilogue.
+     */
+    private EntityState nextPart(Entity entity) throws IOException, MimeException {
+        Level level = levels.size() > entity.level ? levels.get(entity.level) : null;
+        for (;;) {
+            switch (entity.phase) {
+            case PART:
+                view(entity.level + 1);
+                pos = Math.max(pos, viewLimit);
+                if (!viewEnd) {
+                    return null;
+                }
+                if (level.delimiter < 0) {
+                    monitor(Event.MIME_BODY_PREMATURE_END);
+                    levels.remove(levels.size() - 1);
+                    return endMultipart(entity);
+                }
+                pos = level.delimiter + level.matcher.length();
+                entity.checkLastPart = true;
+                entity.lastPart = false;
+                entity.phase = DELIMITER;
+                break;
+            case DELIMITER:
+                if (!skipDelimiterLine(entity)) {
+                    return null;
+                }
+                if (entity.lastPart) {
+                    levels.remove(levels.size() - 1);
+                    entity.phase = CLOSED;
+                } else {
+                    entity.phase = NEXT_PART;
+                }
+                break;
+            case NEXT_PART:
+                view(entity.level);
+                if (viewLimit > pos) {
+                    level.reset(pos);
+                    entity.phase = PART;
+                    return start(newEntity(entity, EntityState.T_START_BODYPART, EntityState.T_END_BODYPART));
+                }
+                if (!viewEnd) {
+                    return null;
+                }
+                monitor(Event.MIME_BODY_PREMATURE_END);
+                levels.remove(levels.size() - 1);
+                return endMultipart(entity);
+            case CLOSED:
+                view(entity.level);
+                if (viewLimit > pos) {
+                    return firstChunk(entity, EntityState.T_EPILOGUE);
+                }
+                if (!viewEnd) {
+                    return null;
+                }
+                return endMultipart(entity);
+            default:
+                throw new IllegalStateException("Invalid phase: " + entity.phase);
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a delimiter line, noting whether it closes the
+     * multipart.
+     *
+     * @return whether the line has been skipped, <code>false</code> if more
+     *   input is needed.
+     */
+    private boolean skipDelimiterLine(Entity entity) {
+        view(entity.level);
+        for (;;) {
+            if (viewLimit - pos > 1) {
+                byte ch1 = buf[index(pos)];
+                byte ch2 = buf[index(pos + 1)];
+                if (entity.checkLastPart && ch1 == '-' && ch2 == '-') {
+                    entity.lastPart = true;
+                    entity.checkLastPart = false;
+                    pos += 2;
+                } else if (ch1 == '\r' && ch2 == '\n') {
+                    pos += 2;
+                    return true;
+                } else if (ch1 == '\n') {
+                    pos++;
+                    return true;
+                } else {
+                    // ignoring everything in a line starting with a delimiter
+                    pos++;
+                }
+            } else {
+                if (viewEnd) {
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    private EntityState endMultipart(Entity entity) {
+        entity.bodyDescBuilder.setBodyEndByte(pos);
+        entity.body = entity.bodyDescBuilder.build();
+        return emit(entity, EntityState.T_END_MULTIPART);
+    }
+
+    private EntityState emit(Entity entity, EntityState newState) {
+        entity.state = newState;
+        this.current = entity;
+        this.state = newState;
+        return newState;
+    }
+
+    private EntityState firstChunk(Entity entity, EntityState newState) throws IOException {
+        entity.contentLength = 0;
+        return nextChunk(entity, newState);
+    }
+
+    /**
+     * Hands out the content visible up to the last call to {@link #view(int)}.
+     */
+    private EntityState nextChunk(Entity entity, EntityState newState) throws IOException {
+        int len = (int) Math.max(viewLimit - pos, 0);
+        entity.contentLength += len;
+        long maxContentLen = config.getMaxContentLen();
+        if (maxContentLen >= 0 && entity.contentLength > maxContentLen) {
+            throw new IOException("Input stream limit exceeded. Limit was " + maxContentLen);
+        }
+        chunk = buf;
+        chunkOff = index(pos);
+        chunkLen = len;
+        pos += len;
+        return emit(entity, newState);
+    }
+
+    private int nextField(Entity entity) throws IOException, MimeException {
+        int maxHeaderCount = config.getMaxHeaderCount();
+        // the loop is here to transparently skip invalid headers
+        for (;;) {
+            if (!entity.fieldInProgress) {
+                if (entity.endOfHeader) {
+                    return 0;
+                }
+                if (maxHeaderCount > 0 && entity.headerCount >= maxHeaderCount) {
+                    throw new MaxHeaderLimitException("Maximum header limit (" + maxHeaderCount + ") exceeded");
+                }
+                entity.headerCount++;
+                fieldBuilder.reset();
+                entity.fieldInProgress = true;
+            }
+            if (!readRawField(entity)) {
+                return -1;
+            }
+            entity.fieldInProgress = false;
+            FieldNameFilter filter = config.getFieldNameFilter();
+            boolean report = filter == null || MimeEntity.accept(filter, fieldBuilder.getRaw());
+            if (!report && (recursionMode == RecursionMode.M_HEADERS_ONLY
+                    || !MimeEntity.accept(FieldNameFilter.MIME_STRUCTURE, fieldBuilder.getRaw()))) {
+                // the field is not wanted, nor needed to parse the body
+                continue;
+            }
+            try {
+                RawField rawfield = fieldBuilder.build();
+                if (rawfield == null) {
+                    continue;
+                }
+                if (rawfield.getDelimiterIdx() != rawfield.nameLength()) {
+                    monitor(Event.OBSOLETE_HEADER);
+                }
+                Field parsedField = entity.bodyDescBuilder.addField(rawfield);
+                if (!report) {
+                    continue;
+                }
+                entity.field = parsedField != null ? parsedField : rawfield;
+                return 1;
+            } catch (MimeException e) {
+                monitor(Event.INVALID_HEADER);
+                if (config.isMalformedHeaderStartsBody()) {
+                    RecycledByteArrayBuffer raw = fieldBuilder.getRaw();
+                    // Complain, if raw data is not available
+                    if (raw == null) {
+                        throw new MimeParseEventException(Event.INVALID_HEADER);
+                    }
+                    unread(raw);
+                    return 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether a complete field has been read, <code>false</code> if
+     *   more input is needed.
+     */
+    private boolean readRawField(Entity entity) throws IOException, MimeException {
+        if (entity.endOfHeader) {
+            throw new IllegalStateException();
+        }
+        ByteArrayBuffer linebuf = entity.linebuf;
+        for (;;) {
+            if (!entity.lineInProgress) {
+                // If there's still data stuck in the line buffer
+                // copy it to the field buffer
+                if (linebuf.length() > 0) {
+                    fieldBuilder.append(linebuf);
+                }
+                linebuf.clear();
+                entity.lineInProgress = true;
+            }
+            int result = readLine(entity);
+            if (result == 0) {
+                return false;
+            }
+            entity.lineInProgress = false;
+            if (result == -1) {
+                monitor(Event.HEADERS_PREMATURE_END);
+                entity.endOfHeader = true;
+                return true;
+            }
+            int len = linebuf.length();
+            if (len > 0 && linebuf.byteAt(len - 1) == '\n') {
+                len--;
+            }
+            if (len > 0 && linebuf.byteAt(len - 1) == '\r') {
+                len--;
+            }
+            if (len == 0) {
+                // empty line detected
+                entity.endOfHeader = true;
+                return true;
+            }
+            entity.lineCount++;
+            if (entity.lineCount > 1) {
+                int ch = linebuf.byteAt(0);
+                if (ch != CharsetUtil.SP && ch != CharsetUtil.HT) {
+                    // new header detected
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends what is available of the current line to the line buffer of the
+     * entity.
+     *
+     * @return <code>1</code> if the line is complete, <code>-1</code> if the
+     *   entity has no more data, <code>0</code> if more input is needed.
+     */
+    private int readLine(Entity entity) throws MimeException {
+        view(entity.level);
+        int from = index(pos);
+        int to = index(Math.max(viewLimit, pos));
+        int lf = from < to ? ByteScanner.indexOf(buf, bufView, (byte) '\n', from, to) : -1;
+        int len = lf != -1 ? lf + 1 - from : to - from;
+        if (len > 0) {
+            entity.linebuf.append(buf, from, len);
+            pos += len;
+        }
+        int maxLineLen = config.getMaxLineLen();
+        if (maxLineLen > 0 && entity.linebuf.length() >= maxLineLen) {
+            throw new MimeException(new MaxLineLimitException(
+                    "Maximum line length limit (" + maxLineLen + ") exceeded"));
+        }
+        if (lf != -1) {
+            return 1;
+        }
+        if (!viewEnd) {
+            return 0;
+        }
+        return entity.linebuf.length() > 0 ? 1 : -1;
+    }
+
+    /**
+     * Puts the raw data of a malformed field back so that it is read again as
+     * body content.
+     */
+    private void unread(RecycledByteArrayBuffer raw) {
+        int len = raw.length();
+        if (index(pos) < len) {
+            int live = (int) (end - pos);
+            byte[] newbuf = new byte[Math.max(buf.length, len + live)];
+            System.arraycopy(buf, index(pos), newbuf, len, live);
+            base = pos - len;
+            buf = newbuf;
+            bufView = ByteScanner.longView(newbuf);
+        }
+        pos -= len;
+        System.arraycopy(raw.buffer(), 0, buf, index(pos), len);
+    }
+
+    protected void monitor(Event event) throws MimeException {
+        if (monitor.isListening()) {
+            String message = event.toString();
+            if (monitor.warn(message, "ignoring")) {
+                throw new MimeParseEventException(event);
+            }
+        }
+    }
+
+    /**
+     * Computes the end of the data visible inside the first <code>depth</code>
+     * multipart levels into {@link #viewLimit}, and whether no more data will
+     * become visible there into {@link #viewEnd}.
+     */
+    private void view(int depth) {
+        long limit = end;
+        boolean eof = endOfInput;
+        for (int i = 0; i < depth; i++) {
+            Level level = levels.get(i);
+            if (level.delimiter < 0) {
+                scan(level, limit, eof);
+            }
+            limit = level.cut;
+            eof = eof || level.delimiter >= 0;
+        }
+        viewLimit = limit;
+        viewEnd = eof;
+    }
+
+    /**
+     * Looks for the delimiter of the given level at the line starts below
+     * <code>limit</code> not inspected yet. A line break preceding a
+     * delimiter belongs to the delimiter, so it is held back until it is
+     * known whether a delimiter follows.
+     */
+    private void scan(Level level, long limit, boolean eof) {
+        for (;;) {
+            if (level.candidate >= 0) {
+                long p = level.candidate;
+                int result = level.matcher.match(buf, index(p), index(Math.max(p, limit)), eof);
+                if (result == BoundaryMatcher.MATCH) {
+                    level.delimiter = p;
+                    level.cut = strip(level, p);
+                    return;
+                }
+                if (result == BoundaryMatcher.UNDECIDED) {
+                    level.cut = strip(level, p);
+                    return;
+                }
+                level.candidate = -1;
+                level.searchFrom = p;
+            }
+            int from = index(level.searchFrom);
+            int to = index(limit);
+            int lf = from < to ? ByteScanner.indexOf(buf, bufView, (byte) '\n', from, to) : -1;
+            if (lf == -1) {
+                level.searchFrom = Math.max(level.searchFrom, limit);
+                long cut = limit;
+                if (!eof && cut > Math.max(level.regionStart, pos) && buf[index(cut - 1)] == '\r') {
+                    cut--;
+                }
+                level.cut = Math.max(cut, pos);
+                return;
+            }
+            level.candidate = base + lf + 1;
+        }
+    }
+
+    private long strip(Level level, long p) {
+        long floor = Math.max(level.regionStart, pos);
+        long cut = p;
+        if (cut - 1 >= floor && buf[index(cut - 1)] == '\n') {
+            cut--;
+            if (cut - 1 >= floor && buf[index(cut - 1)] == '\r') {
+                cut--;
+            }
+        }
+        return cut;
+    }
+
+    private int index(long position) {
+        return (int) (position - base);
+    }
+
+    private void ensureCapacity(int len) {
+        if (index(end) + len <= buf.length) {
+            return;
+        }
+        // data before the current position is no longer needed
+        int keep = index(pos);
+        int live = index(end) - keep;
+        if (chunk != buf && live + len <= buf.length) {
+            System.arraycopy(buf, keep, buf, 0, live);
+        } else {
+            // the current chunk still refers to the old buffer
+            int capacity = live + len <= buf.length ? buf.length : Math.max(live + len, buf.length * 2);
+            byte[] newbuf = new byte[capacity];
+            System.arraycopy(buf, keep, newbuf, 0, live);
+            buf = newbuf;
+            bufView = ByteScanner.longView(newbuf);
+        }
+        base += keep;
+    }
+
+    /**
+     * Parsing state of an entity.
+     */
+    private static final class Entity {
+
+        final BodyDescriptorBuilder bodyDescBuilder;
+        // number of multipart levels bounding the entity
+        final int level;
+        final EntityState endState;
+        final ByteArrayBuffer linebuf;
+
+        EntityState state;
+        boolean headerStarted;
+        boolean fieldInProgress;
+        boolean lineInProgress;
+        boolean endOfHeader;
+        int lineCount;
+        int headerCount;
+        Field field;
+        BodyDescriptor body;
+
+        boolean embedding;
+        boolean skipping;
+        boolean partsStarted;
+        int phase;
+        boolean checkLastPart;
+        boolean lastPart;
+        long contentLength;
+
+        Entity(BodyDescriptorBuilder bodyDescBuilder, int level, EntityState startState, EntityState endState) {
+            this.bodyDescBuilder = bodyDescBuilder;
+            this.level = level;
+            this.state = startState;
+            this.endState = endState;
+            this.linebuf = new ByteArrayBuffer(64);
+        }
+
+    }
+
+    /**
+     * Delimiter search state of an open multipart.
+     */
+    private static final class Level {
+
+        final BoundaryMatcher matcher;
+        // start of the current part
+        long regionStart;
+        // start of a line to be matched against the delimiter, or -1
+        long candidate;
+        // where to look for the next line start
+        long searchFrom;
+        // start of the delimiter line, or -1 if not found yet
+        long delimiter;
+        // end of the content known to precede any delimiter
+        long cut;
+
+        Level(BoundaryMatcher matcher, long start) {
+            this.matcher = matcher;
+            reset(start);
+        }
+
+        void reset(long start) {
+            regionStart = start;
+            candidate = start;
+            searchFrom = start;
+            delimiter = -1;
+            cut = start;
+        }
+
+    }
+
+}
@@ -22,6 +22,7 @@ package org.apache.james.mime4j.stream;
 import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 
+import org.apache.james.mime4j.util.ByteArraySequence;
 import org.apache.james.mime4j.util.ByteSequence;
 import org.apache.james.mime4j.util.CharsetUtil;
 import org.apache.james.mime4j.util.ContentUtil;
@@ -38,22 +39,50 @@ import org.apache.james.mime4j.util.MimeUtil;
  */
 public final class RawField implements Field {
 
-    private final ByteSequence raw;
+    private final byte[] buffer;
+    private final int offset;
+    private final int length;
     private final int delimiterIdx;
-    private final String name;
-    private final String body;
+    private final int nameLength;
+    private ByteSequence raw;
+    private String name;
+    private String body;
     private String nameLowerCase;
+    private CanonicalFieldName canonicalName;
+    private boolean canonicalNameResolved;
 
     RawField(ByteSequence raw, int delimiterIdx, String name, String body) {
         if (name == null) {
             throw new IllegalArgumentException("Field may not be null");
         }
+        this.buffer = null;
+        this.offset = 0;
+        this.length = 0;
         this.raw = raw;
         this.delimiterIdx = delimiterIdx;
         this.name = name.trim();
+        this.nameLength = this.name.length();
         this.body = body;
     }
 
+    /**
+     * Creates a field over a range of a byte array, which is neither copied
+     * nor modified. The name and body strings are only decoded when asked for.
+     *
+     * @param buffer array holding the field, without its trailing line break.
+     * @param offset offset of the field in the array.
+     * @param length length of the field.
+     * @param delimiterIdx index of the colon, relative to <code>offset</code>.
+     * @param nameLength length of the name, which starts at <code>offset</code>.
+     */
+    RawField(byte[] buffer, int offset, int length, int delimiterIdx, int nameLength) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.delimiterIdx = delimiterIdx;
+        this.nameLength = nameLength;
+    }
+
     public RawField(String name, String body) {
         this(null, -1, name, body);
 
@@ -82,34 +111,77 @@ public final class RawField implements Field {
     }
 
     public ByteSequence getRaw() {
+        if (raw == null && buffer != null) {
+            raw = new ByteArraySequence(buffer, offset, length);
+        }
         return raw;
     }
 
     public String getName() {
+        if (name == null) {
+            CanonicalFieldName canonical = getCanonicalName();
+            if (canonical != null && canonical.matchesCase(buffer, offset, nameLength)) {
+                name = canonical.getName();
+            } else {
+                name = new String(buffer, offset, nameLength, StandardCharsets.ISO_8859_1);
+            }
+        }
         return name;
     }
 
     @Override
     public String getNameLowerCase() {
         if (nameLowerCase == null) {
-            nameLowerCase = name.toLowerCase(Locale.US);
+            CanonicalFieldName canonical = getCanonicalName();
+            if (canonical != null) {
+                nameLowerCase = canonical.getLowerCaseName();
+            } else if (name == null) {
+                char[] chars = new char[nameLength];
+                for (int i = 0; i < nameLength; i++) {
+                    int ch = buffer[offset + i] & 0xff;
+                    chars[i] = (char) (ch >= 'A' && ch <= 'Z' ? ch + 0x20 : ch);
+                }
+                nameLowerCase = new String(chars);
+            } else {
+                nameLowerCase = name.toLowerCase(Locale.US);
+            }
         }
         return nameLowerCase;
     }
 
-    public String getBody() {
-        if (body != null) {
-            return body;
+    @Override
+    public CanonicalFieldName getCanonicalName() {
+        if (!canonicalNameResolved) {
+            if (name == null) {
+                canonicalName = CanonicalFieldName.lookup(buffer, offset, nameLength);
+            } else {
+                canonicalName = CanonicalFieldName.lookup(name);
+            }
+            canonicalNameResolved = true;
         }
-        if (raw != null) {
-            int len = raw.length();
-            int off = delimiterIdx + 1;
-            if (len > off + 1 && (CharsetUtil.isWhitespace((char) (raw.byteAt(off) & 0xff)))) {
-                off++;
+        return canonicalName;
+    }
+
+    public String getBody() {
+        if (body == null) {
+            ByteSequence raw = getRaw();
+            if (raw != null) {
+                int len = raw.length();
+                int off = delimiterIdx + 1;
+                if (len > off + 1 && (CharsetUtil.isWhitespace((char) (raw.byteAt(off) & 0xff)))) {
+                    off++;
+                }
+                body = MimeUtil.unfold(ContentUtil.decode(raw, off, len - off, StandardCharsets.UTF_8));
             }
-            return MimeUtil.unfold(ContentUtil.decode(raw, off, len - off, StandardCharsets.UTF_8));
         }
-        return null;
+        return body;
+    }
+
+    /**
+     * @return length of the name, without decoding it.
+     */
+    int nameLength() {
+        return nameLength;
     }
 
     public int getDelimiterIdx() {
@@ -118,6 +190,7 @@ public final class RawField implements Field {
 
     @Override
     public String toString() {
+        ByteSequence raw = getRaw();
         if (raw != null) {
             return ContentUtil.decode(raw);
         } else {
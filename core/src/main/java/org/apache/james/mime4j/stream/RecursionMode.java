@@ -40,6 +40,12 @@ public enum RecursionMode {
      * Do not recurse <code>message/rfc822</code> parts
      * and treat multiparts as a single flat body.
      */
-    M_FLAT
+    M_FLAT,
+    /**
+     * Parse the header of the current entity only: its body is skipped
+     * without being read through the line reader, and the entity ends
+     * right after the header.
+     */
+    M_HEADERS_ONLY
 
 }
@@ -19,58 +19,105 @@
 
 package org.apache.james.mime4j.util;
 
-import java.util.ArrayList;
 import java.util.Optional;
 
 /**
  * This is a small utility class, whose main functionality is to allow
- * simple reuse of raw byte/char buffers. It is usually used through
- * <code>ThreadLocal</code> member of the owning class pointing to
- * instance of this class through a <code>SoftReference</code>. The
- * end result is a low-overhead GC-cleanable recycling: hopefully
- * ideal for use by stream readers.
- *<p>
- * Rewritten in 2.10 to be thread-safe (see [jackson-core#479] for details),
- * to not rely on {@code ThreadLocal} access.
+ * simple reuse of raw byte/char buffers. Instances are obtained from a
+ * {@link BufferRecyclerPool}, by default one instance per thread held
+ * through a <code>SoftReference</code>. The end result is a low-overhead
+ * GC-cleanable recycling: hopefully ideal for use by stream readers.
+ * This implementation is not thread-safe, see {@link StripedBufferRecycler}
+ * for one that can be shared.
+ * <p>
+ * Buffers are pooled by size class: requested sizes are rounded up to a
+ * power of two, and a released buffer goes to the class of the largest power
+ * of two it can hold, so that a request is only ever served with a buffer of
+ * at most twice the size needed. At most <code>buffersPerClass</code> buffers
+ * are retained per class, and buffers larger than
+ * <code>maxBufferSize</code> elements are never retained, so that a single
+ * pathological message cannot pin a huge buffer for the lifetime of the
+ * recycler. Both limits default to the values of the
+ * <code>james.mime4j.buffer.recycling.buffersPerClass</code> and
+ * <code>james.mime4j.buffer.recycling.maxBufferSize</code> system properties,
+ * and recycling as a whole is disabled by setting
+ * <code>james.mime4j.buffer.recycling.enabled</code> to <code>false</code>.
  */
 public class BufferRecycler {
     static final boolean ENABLED = Optional.ofNullable(System.getProperty("james.mime4j.buffer.recycling.enabled"))
         .map(Boolean::parseBoolean)
         .orElse(true);
 
-    protected final ArrayList<byte[]>[] _byteBuffers;
-    protected final ArrayList<char[]>[] _charBuffers;
-    protected final ArrayList<int[]> _intBuffers;
+    /** Default number of buffers retained per size class and kind */
+    public static final int DEFAULT_BUFFERS_PER_CLASS =
+        Integer.getInteger("james.mime4j.buffer.recycling.buffersPerClass", 4);
+    /** Default size, in elements, of the largest buffer retained: 1 M */
+    public static final int DEFAULT_MAX_BUFFER_SIZE =
+        Integer.getInteger("james.mime4j.buffer.recycling.maxBufferSize", 1024 * 1024);
+
+    protected static final int BYTES = 0;
+    protected static final int CHARS = 1;
+    protected static final int INTS = 2;
+
+    private static final int[] ELEMENT_SIZE = {1, 2, 4};
+
+    protected final int buffersPerClass;
+    protected final int maxBufferSize;
+
+    private final Object[][][] stacks;
+    private final int[][] counts;
+
+    private long hits;
+    private long misses;
+    private long retainedBytes;
+    private long peakRetainedBytes;
 
     /**
      * Default constructor used for creating instances of this default
      * implementation.
      */
     public BufferRecycler() {
-        this(4, 4);
+        this(DEFAULT_BUFFERS_PER_CLASS, DEFAULT_MAX_BUFFER_SIZE);
     }
 
     /**
-     * Alternate constructor to be used by sub-classes, to allow customization
-     * of number of low-level buffers in use.
-     *
-     * @param bbCount Number of {@code byte[]} buffers to allocate
-     * @param cbCount Number of {@code char[]} buffers to allocate
-     *
-     * @since 2.4
+     * @param buffersPerClass maximum number of buffers of each kind retained per
+     *        size class.
+     * @param maxBufferSize size, in elements, of the largest buffer retained.
      */
-    protected BufferRecycler(int bbCount, int cbCount) {
-        _byteBuffers = new ArrayList[bbCount];
-        for (int i = 0; i < bbCount; i++) {
-            _byteBuffers[i] = new ArrayList<>();
-        }
-        _charBuffers = new ArrayList[cbCount];
-        for (int i = 0; i < cbCount; i++) {
-            _charBuffers[i] = new ArrayList<>();
+    public BufferRecycler(int buffersPerClass, int maxBufferSize) {
+        if (buffersPerClass < 0 || maxBufferSize < 0) {
+            throw new IllegalArgumentException("Buffer limits may not be negative");
         }
-        _intBuffers = new ArrayList<>();
+        this.buffersPerClass = buffersPerClass;
+        // keep rounded sizes within the range of an int
+        this.maxBufferSize = Math.min(maxBufferSize, 1 << 30);
+        int classes = sizeClassCount();
+        this.stacks = new Object[3][classes][];
+        this.counts = new int[3][classes];
     }
-    
+
+    /**
+     * @return number of size classes, that is one more than the class of the
+     *         largest buffer retained.
+     */
+    protected final int sizeClassCount() {
+        return maxBufferSize > 0 ? sizeClass(maxBufferSize) + 1 : 0;
+    }
+
+    /**
+     * @return class of a buffer of <code>length</code> elements: the largest
+     *         power of two not greater than <code>length</code>.
+     */
+    protected static int sizeClass(int length) {
+        return 31 - Integer.numberOfLeadingZeros(length);
+    }
+
+    private static int roundUp(int size) {
+        int highest = Integer.highestOneBit(size);
+        return highest == size ? size : highest << 1;
+    }
+
     /**
      * @param ix One of <code>READ_IO_BUFFER</code> constants.
      *
@@ -80,51 +127,30 @@ public class BufferRecycler {
         return allocByteBuffer(ix, 0);
     }
 
-    public final int[] allocintBuffer(int minSize) {
+    public int[] allocintBuffer(int minSize) {
         final int DEF_SIZE = 256;
-        if (minSize < DEF_SIZE) {
-            minSize = DEF_SIZE;
-        }
-        final ArrayList<int[]> buffers = _intBuffers;
-        int[] buffer = null;
-        if (buffers.size() > 0) {
-            buffer = buffers.remove(buffers.size() -1);
-        }
-        if (buffer == null || buffer.length < minSize) {
-            buffer = new int[minSize];
-        }
-        return buffer;
+        return (int[]) alloc(INTS, Math.max(minSize, DEF_SIZE));
     }
 
+    /**
+     * @param ix kept for compatibility, buffers are pooled by size.
+     * @param minSize minimum size of the buffer.
+     * @return Buffer allocated (possibly recycled)
+     */
     public byte[] allocByteBuffer(int ix, int minSize) {
         final int DEF_SIZE = 4000;
-        if (minSize < DEF_SIZE) {
-            minSize = DEF_SIZE;
-        }
-        final ArrayList<byte[]> buffers = _byteBuffers[ix];
-        byte[] buffer = null;
-        if (buffers.size() > 0) {
-            buffer = buffers.remove(buffers.size() -1);
-        }
-        if (buffer == null || buffer.length < minSize) {
-            buffer = balloc(minSize);
-        }
-        return buffer;
+        return (byte[]) alloc(BYTES, Math.max(minSize, DEF_SIZE));
     }
 
     public void releaseByteBuffer(int ix, byte[] buffer) {
-        if (buffer == null) {
-            return;
+        if (buffer != null) {
+            release(BYTES, buffer, buffer.length);
         }
-        _byteBuffers[ix].add(buffer);
     }
 
     public void releaseIntBuffer(int[] buffer) {
-        if (buffer == null) {
-            return;
-        }
-        if (ENABLED) {
-            _intBuffers.add(buffer);
+        if (buffer != null) {
+            release(INTS, buffer, buffer.length);
         }
     }
     
@@ -134,23 +160,12 @@ public class BufferRecycler {
 
     public char[] allocCharBuffer(int ix, int minSize) {
         final int DEF_SIZE = 4000;
-        if (minSize < DEF_SIZE) {
-            minSize = DEF_SIZE;
-        }
-        final ArrayList<char[]> buffers = _charBuffers[ix];
-        char[] buffer = null;
-        if (buffers.size() > 0) {
-            buffer = buffers.remove(buffers.size() -1);
-        }
-        if (buffer == null || buffer.length < minSize) {
-            buffer = calloc(minSize);
-        }
-        return buffer;
+        return (char[]) alloc(CHARS, Math.max(minSize, DEF_SIZE));
     }
 
     public void releaseCharBuffer(int ix, char[] buffer) {
-        if (ENABLED) {
-            _charBuffers[ix].add(buffer);
+        if (buffer != null) {
+            release(CHARS, buffer, buffer.length);
         }
     }
 
@@ -161,4 +176,144 @@ public class BufferRecycler {
     protected char[] calloc(int size) {
         return new char[size];
     }
+
+    private Object alloc(int kind, int minSize) {
+        if (minSize <= maxBufferSize) {
+            int size = roundUp(minSize);
+            if (size <= maxBufferSize) {
+                Object buffer = take(kind, sizeClass(size));
+                if (buffer != null) {
+                    recordHit();
+                    addRetainedBytes(-bytes(kind, buffer));
+                    return buffer;
+                }
+                recordMiss();
+                return newBuffer(kind, size);
+            }
+        }
+        recordMiss();
+        return newBuffer(kind, minSize);
+    }
+
+    private void release(int kind, Object buffer, int length) {
+        if (!ENABLED || length == 0 || length > maxBufferSize) {
+            // oversized buffers are left to the garbage collector
+            return;
+        }
+        if (offer(kind, sizeClass(length), buffer)) {
+            addRetainedBytes((long) length * ELEMENT_SIZE[kind]);
+        }
+    }
+
+    private Object newBuffer(int kind, int size) {
+        switch (kind) {
+        case BYTES:
+            return balloc(size);
+        case CHARS:
+            return calloc(size);
+        default:
+            return new int[size];
+        }
+    }
+
+    private static long bytes(int kind, Object buffer) {
+        switch (kind) {
+        case BYTES:
+            return ((byte[]) buffer).length;
+        case CHARS:
+            return 2L * ((char[]) buffer).length;
+        default:
+            return 4L * ((int[]) buffer).length;
+        }
+    }
+
+    /**
+     * Takes a retained buffer of the given kind and size class.
+     *
+     * @return the buffer, or <code>null</code> if none is retained.
+     */
+    protected Object take(int kind, int sizeClass) {
+        int n = counts[kind][sizeClass];
+        if (n == 0) {
+            return null;
+        }
+        Object[] stack = stacks[kind][sizeClass];
+        Object buffer = stack[--n];
+        stack[n] = null;
+        counts[kind][sizeClass] = n;
+        return buffer;
+    }
+
+    /**
+     * Retains a buffer of the given kind and size class.
+     *
+     * @return <code>false</code> if the class is full and the buffer was not
+     *         retained.
+     */
+    protected boolean offer(int kind, int sizeClass, Object buffer) {
+        int n = counts[kind][sizeClass];
+        if (n >= buffersPerClass) {
+            return false;
+        }
+        Object[] stack = stacks[kind][sizeClass];
+        if (stack == null) {
+            stack = new Object[buffersPerClass];
+            stacks[kind][sizeClass] = stack;
+        }
+        stack[n] = buffer;
+        counts[kind][sizeClass] = n + 1;
+        return true;
+    }
+
+    protected void recordHit() {
+        hits++;
+    }
+
+    protected void recordMiss() {
+        misses++;
+    }
+
+    protected void addRetainedBytes(long delta) {
+        retainedBytes += delta;
+        if (retainedBytes > peakRetainedBytes) {
+            peakRetainedBytes = retainedBytes;
+        }
+    }
+
+    /**
+     * @return number of allocations served with a retained buffer.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of allocations that required a new buffer.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return total size, in bytes, of the buffers currently retained.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * @return highest value ever reached by {@link #getRetainedBytes()}.
+     */
+    public long getPeakRetainedBytes() {
+        return peakRetainedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[hits=" + getHits()
+                + ", misses=" + getMisses()
+                + ", retainedBytes=" + getRetainedBytes()
+                + ", peakRetainedBytes=" + getPeakRetainedBytes()
+                + "]";
+    }
 }
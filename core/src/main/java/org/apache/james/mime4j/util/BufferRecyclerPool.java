@@ -0,0 +1,39 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.util;
+
+/**
+ * Source of the {@link BufferRecycler} instances used by the parser and the
+ * codecs to reuse their working buffers.
+ * <p>
+ * A buffer must be released to the recycler it was allocated from, which is
+ * why callers keep hold of the recycler they obtained for as long as they
+ * keep the buffer. Implementations must be thread-safe.
+ *
+ * @see BufferRecyclerPools
+ */
+public interface BufferRecyclerPool {
+
+    /**
+     * @return recycler to be used by the calling thread.
+     */
+    BufferRecycler getBufferRecycler();
+
+}
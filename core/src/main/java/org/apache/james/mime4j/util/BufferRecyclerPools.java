@@ -0,0 +1,151 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.util;
+
+import java.lang.ref.SoftReference;
+
+/**
+ * Built-in {@link BufferRecyclerPool} implementations and the pool used by
+ * default.
+ * <p>
+ * The default pool is selected with the
+ * <code>james.mime4j.buffer.pool</code> system property:
+ * <ul>
+ * <li><code>thread-local</code> (the default): one recycler per thread, held
+ * through a <code>SoftReference</code>. Best for a small set of long lived
+ * threads.</li>
+ * <li><code>shared</code>: a single {@link StripedBufferRecycler} for all
+ * threads. Best when parsing runs on many short lived threads, such as
+ * virtual threads, which would otherwise never reuse a buffer.</li>
+ * <li>the fully qualified name of a {@link BufferRecyclerPool} implementation
+ * with a public no-argument constructor.</li>
+ * </ul>
+ * A pool can also be set per parser with
+ * {@link org.apache.james.mime4j.stream.MimeConfig.Builder#setBufferRecyclerPool(BufferRecyclerPool)}.
+ */
+public final class BufferRecyclerPools {
+
+    public static final String POOL_PROPERTY = "james.mime4j.buffer.pool";
+
+    private static final BufferRecyclerPool THREAD_LOCAL = new ThreadLocalPool();
+
+    private static volatile BufferRecyclerPool defaultPool = forName(System.getProperty(POOL_PROPERTY));
+
+    private BufferRecyclerPools() {
+    }
+
+    /**
+     * @return pool keeping one recycler per thread.
+     */
+    public static BufferRecyclerPool threadLocal() {
+        return THREAD_LOCAL;
+    }
+
+    /**
+     * @return pool sharing one thread-safe recycler between all threads.
+     */
+    public static BufferRecyclerPool shared() {
+        return SharedPool.INSTANCE;
+    }
+
+    /**
+     * @return pool used when none is configured.
+     */
+    public static BufferRecyclerPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * Replaces the pool used when none is configured.
+     *
+     * @param pool new default pool, or <code>null</code> to restore the one
+     *        selected by the system property.
+     */
+    public static void setDefault(BufferRecyclerPool pool) {
+        defaultPool = pool != null ? pool : forName(System.getProperty(POOL_PROPERTY));
+    }
+
+    /**
+     * Resolves a pool name as accepted by the
+     * <code>james.mime4j.buffer.pool</code> system property.
+     *
+     * @param name <code>thread-local</code>, <code>shared</code> or a class name;
+     *        <code>null</code> selects the thread-local pool.
+     * @return the pool.
+     * @throws IllegalArgumentException if the pool cannot be instantiated.
+     */
+    public static BufferRecyclerPool forName(String name) {
+        if (name == null || name.isEmpty() || name.equalsIgnoreCase("thread-local")) {
+            return threadLocal();
+        }
+        if (name.equalsIgnoreCase("shared")) {
+            return shared();
+        }
+        try {
+            return (BufferRecyclerPool) Class.forName(name).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot instantiate buffer recycler pool " + name, e);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException("Cannot instantiate buffer recycler pool " + name, e);
+        }
+    }
+
+    private static final class ThreadLocalPool implements BufferRecyclerPool {
+
+        private final ThreadLocal<SoftReference<BufferRecycler>> recyclerRef = new ThreadLocal<>();
+
+        public BufferRecycler getBufferRecycler() {
+            SoftReference<BufferRecycler> ref = recyclerRef.get();
+            BufferRecycler br = (ref == null) ? null : ref.get();
+
+            if (br == null) {
+                br = new BufferRecycler();
+                ref = new SoftReference<>(br);
+                recyclerRef.set(ref);
+            }
+            return br;
+        }
+
+        @Override
+        public String toString() {
+            return "thread-local";
+        }
+
+    }
+
+    private static final class SharedPool implements BufferRecyclerPool {
+
+        // created on first use only
+        static final SharedPool INSTANCE = new SharedPool();
+
+        private final BufferRecycler recycler = new StripedBufferRecycler();
+
+        public BufferRecycler getBufferRecycler() {
+            return recycler;
+        }
+
+        @Override
+        public String toString() {
+            return "shared";
+        }
+
+    }
+
+}
@@ -0,0 +1,80 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.util;
+
+/**
+ * An immutable view of a range of a byte array. The array is not copied, and
+ * must not be modified as long as the view is in use.
+ */
+public final class ByteArraySequence implements ByteSequence {
+
+    private final byte[] buffer;
+    private final int off;
+    private final int len;
+
+    /**
+     * @param buffer array holding the bytes.
+     * @param off offset of the first byte of the sequence.
+     * @param len number of bytes in the sequence.
+     */
+    public ByteArraySequence(byte[] buffer, int off, int len) {
+        if (buffer == null)
+            throw new IllegalArgumentException();
+        if (off < 0 || len < 0 || off + len > buffer.length)
+            throw new IndexOutOfBoundsException();
+        this.buffer = buffer;
+        this.off = off;
+        this.len = len;
+    }
+
+    public int length() {
+        return this.len;
+    }
+
+    public byte byteAt(int i) {
+        if (i < 0 || i >= this.len)
+            throw new IndexOutOfBoundsException();
+
+        return this.buffer[this.off + i];
+    }
+
+    public byte[] toByteArray() {
+        byte[] b = new byte[this.len];
+        System.arraycopy(this.buffer, this.off, b, 0, this.len);
+        return b;
+    }
+
+    /**
+     * @return the underlying array, the sequence starts at {@link #offset()}.
+     */
+    public byte[] buffer() {
+        return this.buffer;
+    }
+
+    public int offset() {
+        return this.off;
+    }
+
+    @Override
+    public String toString() {
+        return new String(toByteArray());
+    }
+
+}
@@ -0,0 +1,182 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Optional;
+
+/**
+ * Byte scanning primitives that inspect eight bytes at a time ("SIMD within
+ * a register") through a little-endian <code>long</code> view of a byte array.
+ * <p>
+ * The word-at-a-time path can be disabled with the
+ * <code>james.mime4j.swar.enabled</code> system property, in which case every
+ * method falls back to a plain byte-by-byte loop.
+ */
+public final class ByteScanner {
+
+    static final boolean ENABLED = Optional.ofNullable(System.getProperty("james.mime4j.swar.enabled"))
+        .map(Boolean::parseBoolean)
+        .orElse(true);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /** Ranges shorter than this are not worth a view */
+    private static final int MIN_VIEW_LENGTH = 16;
+
+    private ByteScanner() {
+    }
+
+    /**
+     * Creates a <code>long</code> view over the given array, suitable for the
+     * word-at-a-time methods of this class.
+     *
+     * @param buf backing array.
+     * @return little-endian view of <code>buf</code>, or <code>null</code>
+     *         when word-at-a-time scanning is disabled.
+     */
+    public static ByteBuffer longView(byte[] buf) {
+        if (!ENABLED || buf == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates a <code>long</code> view over the given array, only when the
+     * scanned content is long enough for the word-at-a-time methods of this
+     * class to pay for the view.
+     *
+     * @param buf backing array.
+     * @param length number of bytes that will be scanned.
+     * @return little-endian view of <code>buf</code>, or <code>null</code>
+     *         when word-at-a-time scanning is disabled or not worth it.
+     */
+    public static ByteBuffer longView(byte[] buf, int length) {
+        return length >= MIN_VIEW_LENGTH ? longView(buf) : null;
+    }
+
+    /**
+     * Returns the index of the first occurrence of <code>b</code> in
+     * <code>buf[from, to)</code>, or <code>-1</code>.
+     *
+     * @param buf array to scan.
+     * @param view view created by {@link #longView(byte[])} for <code>buf</code>,
+     *        may be <code>null</code> to force the byte-by-byte loop.
+     * @param b byte to look for.
+     * @param from first index to inspect (inclusive).
+     * @param to last index to inspect (exclusive).
+     * @return index of <code>b</code> or <code>-1</code>.
+     */
+    public static int indexOf(byte[] buf, ByteBuffer view, byte b, int from, int to) {
+        int i = from;
+        if (view != null) {
+            long pattern = ONES * (b & 0xff);
+            int last = to - 8;
+            for (; i <= last; i += 8) {
+                long found = zeroBytes(view.getLong(i) ^ pattern);
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+        }
+        for (; i < to; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first byte in <code>buf[from, to)</code> that is
+     * either <code>b1</code> or <code>b2</code>, or <code>-1</code>.
+     *
+     * @see #indexOf(byte[], ByteBuffer, byte, int, int)
+     */
+    public static int indexOfAny(byte[] buf, ByteBuffer view, byte b1, byte b2, int from, int to) {
+        int i = from;
+        if (view != null) {
+            long p1 = ONES * (b1 & 0xff);
+            long p2 = ONES * (b2 & 0xff);
+            int last = to - 8;
+            for (; i <= last; i += 8) {
+                long word = view.getLong(i);
+                long found = zeroBytes(word ^ p1) | zeroBytes(word ^ p2);
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+        }
+        for (; i < to; i++) {
+            if (buf[i] == b1 || buf[i] == b2) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first byte in <code>buf[from, to)</code> with its
+     * high bit set (i.e. a non US-ASCII byte), or <code>-1</code>.
+     *
+     * @see #indexOf(byte[], ByteBuffer, byte, int, int)
+     */
+    public static int indexOfNonAscii(byte[] buf, ByteBuffer view, int from, int to) {
+        int i = from;
+        if (view != null) {
+            int last = to - 8;
+            for (; i <= last; i += 8) {
+                long found = view.getLong(i) & HIGHS;
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+        }
+        for (; i < to; i++) {
+            if (buf[i] < 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first non US-ASCII byte in
+     * <code>buf[from, to)</code>, or <code>-1</code>, creating a view for the
+     * word-at-a-time loop only when the range is long enough to benefit.
+     *
+     * @see #indexOfNonAscii(byte[], ByteBuffer, int, int)
+     */
+    public static int indexOfNonAscii(byte[] buf, int from, int to) {
+        return indexOfNonAscii(buf, longView(buf, to - from), from, to);
+    }
+
+    /**
+     * Flags every zero byte of <code>x</code> with its high bit. Bytes above a
+     * flagged byte may be false positives, the lowest flagged byte never is.
+     */
+    private static long zeroBytes(long x) {
+        return (x - ONES) & ~x & HIGHS;
+    }
+
+}
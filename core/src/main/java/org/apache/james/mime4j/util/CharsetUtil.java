@@ -20,8 +20,16 @@
 package org.apache.james.mime4j.util;
 
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Utility class for working with character sets.
@@ -43,6 +51,45 @@ public class CharsetUtil {
     /** US-ASCII HT, horizontal-tab (9) */
     public static final int HT = '\t';
 
+    private static final int MAX_CACHED_CHARSETS = 512;
+    private static final int DECODERS_PER_THREAD = 4;
+
+    /** Cached value of names that do not resolve to a supported charset */
+    private static final Object UNSUPPORTED = new Object();
+
+    private static final ConcurrentMap<String, Object> CHARSETS = new ConcurrentHashMap<String, Object>();
+
+    /** Common misspellings of charset names, and names Java does not know */
+    private static final Map<String, String> ALIASES;
+
+    static {
+        Map<String, String> aliases = new HashMap<String, String>();
+        aliases.put("utf8mb4", "UTF-8");
+        aliases.put("utf-8mb4", "UTF-8");
+        aliases.put("latin-1", "ISO-8859-1");
+        aliases.put("iso-8859-1:1987", "ISO-8859-1");
+        aliases.put("iso-8859-8-i", "ISO-8859-8");
+        aliases.put("cp-850", "IBM850");
+        aliases.put("cp-1252", "windows-1252");
+        aliases.put("win-1251", "windows-1251");
+        aliases.put("win-1252", "windows-1252");
+        aliases.put("ks_c_5601", "EUC-KR");
+        aliases.put("x-gbk", "GBK");
+        aliases.put("chinese", "GB2312");
+        aliases.put("cn-gb", "GB2312");
+        aliases.put("macintosh", "x-MacRoman");
+        aliases.put("x-mac-roman", "x-MacRoman");
+        aliases.put("ucs-2", "UTF-16");
+        ALIASES = Collections.unmodifiableMap(aliases);
+    }
+
+    private static final ThreadLocal<CharsetDecoder[]> DECODERS = new ThreadLocal<CharsetDecoder[]>() {
+        @Override
+        protected CharsetDecoder[] initialValue() {
+            return new CharsetDecoder[DECODERS_PER_THREAD];
+        }
+    };
+
     /**
      * Returns <code>true</code> if the specified character falls into the US
      * ASCII character set (Unicode range 0000 to 007f).
@@ -161,19 +208,79 @@ public class CharsetUtil {
      * This method is a wrapper around {@link Charset#forName(String)} method
      * that catches {@link IllegalCharsetNameException} and
      *  {@link UnsupportedCharsetException} and returns <code>null</code>.
+     * Surrounding blanks and quotes are ignored, and a few common misspellings
+     * such as <code>utf8mb4</code> are recognized.
+     * </p>
+     * <p>
+     * Results, unsupported names included, are cached by lower case name, so
+     * that a name is resolved once. The cache is cleared when it holds too
+     * many names.
      * </p>
      */
     public static Charset lookup(final String name) {
         if (name == null) {
             return null;
         }
+        String key = name.toLowerCase(Locale.ROOT);
+        Object charset = CHARSETS.get(key);
+        if (charset == null) {
+            charset = resolve(key);
+            if (CHARSETS.size() >= MAX_CACHED_CHARSETS) {
+                // flooded with distinct names, start over rather than track usage
+                CHARSETS.clear();
+            }
+            CHARSETS.put(key, charset);
+        }
+        return charset != UNSUPPORTED ? (Charset) charset : null;
+    }
+
+    private static Object resolve(final String name) {
+        int start = 0;
+        int end = name.length();
+        while (start < end && (isWhitespace(name.charAt(start)) || name.charAt(start) == '"')) {
+            start++;
+        }
+        while (end > start && (isWhitespace(name.charAt(end - 1)) || name.charAt(end - 1) == '"')) {
+            end--;
+        }
+        String trimmed = name.substring(start, end);
+        String alias = ALIASES.get(trimmed);
         try {
-            return Charset.forName(name);
+            return Charset.forName(alias != null ? alias : trimmed);
         } catch (IllegalCharsetNameException ex) {
-            return null;
+            return UNSUPPORTED;
         } catch (UnsupportedCharsetException ex) {
-            return null;
+            return UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Returns a decoder of the given charset that replaces malformed input and
+     * unmappable characters, as {@link Charset#decode(java.nio.ByteBuffer)}
+     * does. Decoders are reset and reused by the calling thread, which keeps
+     * the few it used last; they must not be handed to other threads.
+     *
+     * @param charset charset to decode.
+     * @return a reset decoder.
+     */
+    public static CharsetDecoder decoder(final Charset charset) {
+        CharsetDecoder[] decoders = DECODERS.get();
+        int i = 0;
+        while (i < decoders.length - 1 && decoders[i] != null && !decoders[i].charset().equals(charset)) {
+            i++;
+        }
+        CharsetDecoder decoder = decoders[i];
+        if (decoder == null || !decoder.charset().equals(charset)) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        } else {
+            decoder.reset();
         }
+        // most recently used first
+        System.arraycopy(decoders, 0, decoders, 1, i);
+        decoders[0] = decoder;
+        return decoder;
     }
 
  }
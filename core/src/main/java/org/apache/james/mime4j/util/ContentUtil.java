@@ -29,6 +29,7 @@ import java.io.Writer;
 import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -39,19 +40,10 @@ import org.apache.james.mime4j.Charsets;
  * Utility methods for converting textual content of a message.
  */
 public class ContentUtil {
-    protected static final ThreadLocal<SoftReference<BufferRecycler>> _recyclerRef = new ThreadLocal<>();
     protected static final ThreadLocal<SoftReference<ByteArrayOutputStreamRecycler>> _outputStreamRecyclerRef = new ThreadLocal<>();
 
     public static BufferRecycler getBufferRecycler() {
-        SoftReference<BufferRecycler> ref = _recyclerRef.get();
-        BufferRecycler br = (ref == null) ? null : ref.get();
-
-        if (br == null) {
-            br = new BufferRecycler();
-            ref = new SoftReference<>(br);
-            _recyclerRef.set(ref);
-        }
-        return br;
+        return BufferRecyclerPools.getDefault().getBufferRecycler();
     }
 
     public static ByteArrayOutputStreamRecycler getOutputStreamRecycler() {
@@ -221,6 +213,13 @@ public class ContentUtil {
         if (byteSequence == null) {
             return null;
         }
+        if (byteSequence instanceof ByteArrayBuffer) {
+            ByteArrayBuffer bab = (ByteArrayBuffer) byteSequence;
+            return new String(bab.buffer(), offset, length, StandardCharsets.ISO_8859_1);
+        } else if (byteSequence instanceof ByteArraySequence) {
+            ByteArraySequence bas = (ByteArraySequence) byteSequence;
+            return new String(bas.buffer(), bas.offset() + offset, length, StandardCharsets.ISO_8859_1);
+        }
         char[] underlying = new char[length];
         for (int i = offset; i < offset + length; i++) {
             underlying[i - offset] = (char) (byteSequence.byteAt(i) & 0xff);
@@ -247,6 +246,13 @@ public class ContentUtil {
         if (byteSequence == null) {
             return null;
         }
+        if (byteSequence instanceof ByteArrayBuffer) {
+            ByteArrayBuffer bab = (ByteArrayBuffer) byteSequence;
+            return decodeAscii(charset, bab.buffer(), offset, length);
+        } else if (byteSequence instanceof ByteArraySequence) {
+            ByteArraySequence bas = (ByteArraySequence) byteSequence;
+            return decodeAscii(charset, bas.buffer(), bas.offset() + offset, length);
+        }
 
         StringBuilder buf = new StringBuilder(length);
         for (int i = offset; i < offset + length; i++) {
@@ -259,6 +265,13 @@ public class ContentUtil {
         return buf.toString();
     }
 
+    private static String decodeAscii(Charset charset, byte[] buffer, int offset, int length) {
+        if (ByteScanner.indexOfNonAscii(buffer, offset, offset + length) < 0) {
+            return new String(buffer, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        return decodeChars(charset != null ? charset : Charset.defaultCharset(), buffer, offset, length);
+    }
+
     /**
      * Decodes a sub-sequence of the specified sequence of bytes into a string
      * using the specified charset.
@@ -284,16 +297,60 @@ public class ContentUtil {
         if (byteSequence instanceof ByteArrayBuffer) {
             ByteArrayBuffer bab = (ByteArrayBuffer) byteSequence;
             return decode(charset, bab.buffer(), offset, length);
+        } else if (byteSequence instanceof ByteArraySequence) {
+            ByteArraySequence bas = (ByteArraySequence) byteSequence;
+            return decode(charset, bas.buffer(), bas.offset() + offset, length);
         } else {
             byte[] bytes = byteSequence.toByteArray();
             return decode(charset, bytes, offset, length);
         }
     }
 
-    private static String decode(Charset charset, byte[] buffer, int offset,
+    /**
+     * Decodes a range of a byte array into a string using the specified
+     * charset. Pure US-ASCII content is copied as ISO-8859-1, which is
+     * stored as is in compact strings, when the charset encodes US-ASCII the
+     * same way; the charset decoder only runs on content with high bytes.
+     *
+     * @param charset
+     *            Java charset to be used for the conversion.
+     * @param buffer
+     *            bytes to decode.
+     * @param offset
+     *            offset into the array.
+     * @param length
+     *            number of bytes.
+     * @return decoded string.
+     */
+    public static String decode(Charset charset, byte[] buffer, int offset,
             int length) {
-        return charset.decode(ByteBuffer.wrap(buffer, offset, length))
-                .toString();
+        if (charset == null) {
+            charset = Charset.defaultCharset();
+        }
+        if (isAsciiCompatible(charset) && ByteScanner.indexOfNonAscii(buffer, offset, offset + length) < 0) {
+            return new String(buffer, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        return decodeChars(charset, buffer, offset, length);
+    }
+
+    private static String decodeChars(Charset charset, byte[] buffer, int offset,
+            int length) {
+        try {
+            return CharsetUtil.decoder(charset).decode(ByteBuffer.wrap(buffer, offset, length))
+                    .toString();
+        } catch (CharacterCodingException ex) {
+            // cannot happen, the decoder replaces malformed input
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1)) {
+            return true;
+        }
+        String name = charset.name();
+        return name.startsWith("ISO-8859-") || name.startsWith("windows-125");
     }
 
     public static byte[] toByteArray(final String s, final Charset charset) {
@@ -0,0 +1,162 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe {@link BufferRecycler} that can be shared by any number of
+ * threads.
+ * <p>
+ * Released buffers are kept in a fixed number of slots per size class, split
+ * in stripes to limit contention: a thread takes and returns buffers in the
+ * stripe selected by its id, using compare-and-set only. Nothing is allocated
+ * to track the buffers, and at most <code>slotsPerStripe</code> buffers per
+ * stripe, size class and kind are retained; further buffers are left to the
+ * garbage collector.
+ */
+public class StripedBufferRecycler extends BufferRecycler {
+
+    private static final int DEFAULT_SLOTS_PER_STRIPE = 4;
+
+    private final int stripeMask;
+    private final int slotsPerStripe;
+    private final AtomicReferenceArray<Object>[][] slots;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong peakRetainedBytes = new AtomicLong();
+
+    /**
+     * Creates a recycler with two stripes per available processor.
+     */
+    public StripedBufferRecycler() {
+        this(2 * Runtime.getRuntime().availableProcessors(), DEFAULT_SLOTS_PER_STRIPE);
+    }
+
+    /**
+     * @param stripes number of stripes, rounded up to a power of two.
+     * @param slotsPerStripe number of buffers of each kind and size class
+     *        retained per stripe.
+     */
+    public StripedBufferRecycler(int stripes, int slotsPerStripe) {
+        this(stripes, slotsPerStripe, DEFAULT_MAX_BUFFER_SIZE);
+    }
+
+    /**
+     * @param stripes number of stripes, rounded up to a power of two.
+     * @param slotsPerStripe number of buffers of each kind and size class
+     *        retained per stripe.
+     * @param maxBufferSize size, in elements, of the largest buffer retained.
+     */
+    @SuppressWarnings("unchecked")
+    public StripedBufferRecycler(int stripes, int slotsPerStripe, int maxBufferSize) {
+        super(0, maxBufferSize);
+        if (stripes <= 0 || slotsPerStripe <= 0) {
+            throw new IllegalArgumentException("Stripe and slot counts may not be negative or zero");
+        }
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        this.stripeMask = n - 1;
+        this.slotsPerStripe = slotsPerStripe;
+        this.slots = new AtomicReferenceArray[3][sizeClassCount()];
+        for (AtomicReferenceArray<Object>[] kindSlots : slots) {
+            for (int i = 0; i < kindSlots.length; i++) {
+                kindSlots[i] = new AtomicReferenceArray<>(n * slotsPerStripe);
+            }
+        }
+    }
+
+    private int stripe() {
+        // thread ids are sequential, spread them over the stripes
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return ((int) (id >>> 32) & stripeMask) * slotsPerStripe;
+    }
+
+    @Override
+    protected Object take(int kind, int sizeClass) {
+        AtomicReferenceArray<Object> classSlots = slots[kind][sizeClass];
+        int from = stripe();
+        for (int i = from; i < from + slotsPerStripe; i++) {
+            Object buffer = classSlots.get(i);
+            if (buffer != null && classSlots.compareAndSet(i, buffer, null)) {
+                return buffer;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected boolean offer(int kind, int sizeClass, Object buffer) {
+        AtomicReferenceArray<Object> classSlots = slots[kind][sizeClass];
+        int from = stripe();
+        for (int i = from; i < from + slotsPerStripe; i++) {
+            if (classSlots.get(i) == null && classSlots.compareAndSet(i, null, buffer)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void recordHit() {
+        hits.increment();
+    }
+
+    @Override
+    protected void recordMiss() {
+        misses.increment();
+    }
+
+    @Override
+    protected void addRetainedBytes(long delta) {
+        long retained = retainedBytes.addAndGet(delta);
+        long peak = peakRetainedBytes.get();
+        while (retained > peak && !peakRetainedBytes.compareAndSet(peak, retained)) {
+            peak = peakRetainedBytes.get();
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    @Override
+    public long getPeakRetainedBytes() {
+        return peakRetainedBytes.get();
+    }
+
+}
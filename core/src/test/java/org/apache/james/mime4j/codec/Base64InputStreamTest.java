@@ -178,6 +178,37 @@ public class Base64InputStreamTest {
         }
     }
 
+    @Test
+    public void testDecodeWrappedLinesWithNoise() throws Exception {
+        byte[] data = new byte[5000];
+        new Random(1).nextBytes(data);
+        String encoded = java.util.Base64.getMimeEncoder().encodeToString(data);
+        // a bare line feed, a space, a line break inside a quantum and an invalid byte
+        encoded = encoded.substring(0, 10) + "\n" + encoded.substring(10, 21) + " " + encoded.substring(21, 102)
+                + "\r\n" + encoded.substring(102, 300) + "*" + encoded.substring(300);
+        byte[] bytes = ContentUtil.toAsciiByteArray(encoded);
+
+        for (int bufferSize = 1; bufferSize <= 64; bufferSize++) {
+            final int[] warnings = new int[1];
+            Base64InputStream decoder = new Base64InputStream(InputStreams.create(bytes), new DecodeMonitor() {
+                @Override
+                public boolean warn(String error, String dropDesc) {
+                    warnings[0]++;
+                    return false;
+                }
+            });
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[bufferSize];
+            int n;
+            while ((n = decoder.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            decoder.close();
+            Assert.assertArrayEquals(data, out.toByteArray());
+            Assert.assertEquals(1, warnings[0]);
+        }
+    }
+
     /**
      * Tests {@link InputStream#read()}
      */
@@ -173,4 +173,19 @@ public class DecoderUtilTest {
         String decoded = DecoderUtil.decodeEncodedWords("=?ISO-8859-1?Q?You=92re_a_winner?=", DecodeMonitor.SILENT, null, overrides);
         Assert.assertEquals("You’re a winner", decoded);
     }
+
+    @Test
+    public void testCharSplitAcrossEncodedWords() {
+        Assert.assertEquals("\u65e5", DecoderUtil.decodeEncodedWords("=?UTF-8?Q?=E6=97?=\r\n =?UTF-8?Q?=A5?="));
+        Assert.assertEquals("\u65e5\u672c", DecoderUtil.decodeEncodedWords("=?UTF-8?B?5pel?= =?UTF-8?B?5pys?="));
+    }
+
+    @Test
+    public void testMalformedEncodedTextIsDecodedLeniently() {
+        Assert.assertEquals("a b", DecoderUtil.decodeEncodedWords("=?ISO-8859-1?Q?a b?="));
+        Assert.assertEquals("a=g2", DecoderUtil.decodeEncodedWords("=?ISO-8859-1?Q?a=g2?="));
+        Assert.assertEquals("Hello", DecoderUtil.decodeEncodedWords("=?US-ASCII?B?SGVs bG8=?="));
+        // incomplete quantum dropped
+        Assert.assertEquals("Hel", DecoderUtil.decodeEncodedWords("=?US-ASCII?B?SGVsbG?="));
+    }
 }
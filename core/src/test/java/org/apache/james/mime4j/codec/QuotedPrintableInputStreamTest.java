@@ -62,6 +62,18 @@ public class QuotedPrintableInputStreamTest {
                 "\u00e4\r\n\u00e1\u00e2\u00e3\u00e4\r\n\u00e1\u00e2\u00e3\u00e4\r\n", readText(decoder));
     }
 
+    @Test
+    public void testDecodeRunsAcrossBufferEdges() throws IOException {
+        String encoded = "plain  text \t with blanks   \r\nnext=20line=\r\n continued =3D end  \r\n=E9t=E9\r\n";
+        String expected = "plain  text \t with blanks\r\nnext line continued = end\r\n\u00e9t\u00e9\r\n";
+        for (int bufsize = 3; bufsize <= encoded.length(); bufsize++) {
+            Assert.assertEquals(expected, readText(
+                    new QuotedPrintableInputStream(bufsize, InputStreams.createAscii(encoded), false)));
+            Assert.assertEquals(expected, readTextByOne(
+                    new QuotedPrintableInputStream(bufsize, InputStreams.createAscii(encoded), false)));
+        }
+    }
+
     @Test
     public void testInvalidValueDecode() throws IOException, UnsupportedEncodingException {
         InputStream bis = InputStreams.createAscii("=e1=g2=E3=E4\r\n");
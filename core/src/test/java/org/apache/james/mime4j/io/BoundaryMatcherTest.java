@@ -0,0 +1,63 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.io;
+
+import org.apache.james.mime4j.util.ByteScanner;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BoundaryMatcherTest {
+
+    private static int indexOf(BoundaryMatcher matcher, String s, boolean lineStart) {
+        byte[] b = ContentUtil.toAsciiByteArray(s);
+        int result = matcher.indexOf(b, ByteScanner.longView(b), 0, b.length, lineStart);
+        Assert.assertEquals(result, matcher.indexOf(b, null, 0, b.length, lineStart));
+        return result;
+    }
+
+    @Test
+    public void testOnlyLineStartsMatch() throws Exception {
+        BoundaryMatcher matcher = new BoundaryMatcher("boundary");
+        Assert.assertEquals(10, matcher.length());
+        Assert.assertEquals(-1, indexOf(matcher, "text --boundary\r\nmore text --boundary\r\n", true));
+        Assert.assertEquals(19, indexOf(matcher, "text --boundary\r\n\r\n--boundary\r\n", true));
+        Assert.assertEquals(0, indexOf(matcher, "--boundary\r\n", true));
+        Assert.assertEquals(-1, indexOf(matcher, "--boundary\r\n", false));
+    }
+
+    @Test
+    public void testDelimiterTermination() throws Exception {
+        BoundaryMatcher matcher = new BoundaryMatcher("boundary");
+        Assert.assertEquals(1, indexOf(matcher, "\n--boundary--\r\n", false));
+        Assert.assertEquals(1, indexOf(matcher, "\n--boundary", false));
+        Assert.assertEquals(1, indexOf(matcher, "\n--boundary \r\n", false));
+        Assert.assertEquals(-1, indexOf(matcher, "\n--boundaryX\r\n", false));
+        Assert.assertEquals(-1, indexOf(matcher, "\n--boundary-\r\n", false));
+        Assert.assertEquals(-1, indexOf(matcher, "\n--bound", false));
+    }
+
+    @Test
+    public void testPrefixOfAnotherBoundary() throws Exception {
+        BoundaryMatcher matcher = new BoundaryMatcher("outer");
+        Assert.assertEquals(24, indexOf(matcher, "\n--outer-inner\r\nbody\r\n\r\n--outer--\r\n", false));
+    }
+
+}
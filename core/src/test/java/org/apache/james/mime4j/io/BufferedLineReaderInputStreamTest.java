@@ -181,4 +181,48 @@ public class BufferedLineReaderInputStreamTest {
         instream2.close();
     }
 
+    @Test
+    public void testBytesConsumedAcrossUnread() throws Exception {
+        String teststr = "Line 1\r\nLine 2\r\nLine 3\r\n";
+        BufferedLineReaderInputStream instream = create(teststr, 8);
+
+        ByteArrayBuffer linebuf = new ByteArrayBuffer(8);
+        instream.readLine(linebuf);
+        Assert.assertEquals(8, instream.getBytesConsumed());
+        linebuf.clear();
+        instream.readLine(linebuf);
+        Assert.assertEquals(16, instream.getBytesConsumed());
+
+        Assert.assertTrue(instream.unread(linebuf));
+        Assert.assertEquals(8, instream.getBytesConsumed());
+        ByteArrayBuffer again = new ByteArrayBuffer(8);
+        instream.readLine(again);
+        Assert.assertEquals("Line 2\r\n", ContentUtil.toAsciiString(again));
+        Assert.assertEquals(16, instream.getBytesConsumed());
+
+        again.clear();
+        instream.readLine(again);
+        Assert.assertEquals("Line 3\r\n", ContentUtil.toAsciiString(again));
+        Assert.assertEquals(24, instream.getBytesConsumed());
+        Assert.assertEquals(-1, instream.readLine(again));
+        Assert.assertEquals(24, instream.getBytesConsumed());
+
+        instream.close();
+    }
+
+    @Test
+    public void testSkipRemaining() throws Exception {
+        String teststr = "Line 1\r\nLine 2\r\nLine 3\r\n";
+        BufferedLineReaderInputStream instream = create(teststr, 8);
+
+        ByteArrayBuffer linebuf = new ByteArrayBuffer(8);
+        instream.readLine(linebuf);
+        Assert.assertEquals(16, instream.skipRemaining());
+        Assert.assertEquals(24, instream.getBytesConsumed());
+        Assert.assertEquals(-1, instream.read());
+        Assert.assertEquals(0, instream.skipRemaining());
+
+        instream.close();
+    }
+
 }
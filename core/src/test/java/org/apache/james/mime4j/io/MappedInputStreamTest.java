@@ -0,0 +1,118 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.io;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedInputStreamTest {
+
+    private static final String TEXT = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MappedInputStream map(int windowSize) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), ContentUtil.toAsciiByteArray("##" + TEXT));
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return MappedInputStream.map(channel, 2, TEXT.length(), windowSize);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void testReadAcrossWindows() throws Exception {
+        MappedInputStream instream = map(5);
+        Assert.assertEquals(TEXT.length(), instream.length());
+        Assert.assertEquals('0', instream.read());
+        byte[] tmp = new byte[64];
+        Assert.assertEquals(4, instream.read(tmp, 0, 64));
+        Assert.assertEquals("1234", new String(tmp, 0, 4, "US-ASCII"));
+        Assert.assertEquals(5, instream.position());
+        Assert.assertEquals(TEXT.substring(5), new String(IOUtils.toByteArray(instream), "US-ASCII"));
+        Assert.assertEquals(-1, instream.read());
+        Assert.assertEquals(-1, instream.read(tmp, 0, 64));
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        MappedInputStream instream = map(7);
+        Assert.assertEquals(16, instream.skip(16));
+        Assert.assertEquals('g', instream.read());
+        Assert.assertEquals(TEXT.length() - 17, instream.available());
+        Assert.assertEquals(TEXT.length() - 17, instream.skip(1000));
+        Assert.assertEquals(-1, instream.read());
+    }
+
+    @Test
+    public void testSlice() throws Exception {
+        MappedInputStream instream = map(7);
+        Assert.assertEquals(TEXT.substring(5, 23),
+                new String(IOUtils.toByteArray(instream.slice(5, 18)), "US-ASCII"));
+        Assert.assertEquals(TEXT.substring(7, 14),
+                new String(IOUtils.toByteArray(instream.slice(7, 7)), "US-ASCII"));
+        MappedInputStream slice = instream.slice(3, 30);
+        Assert.assertEquals(TEXT.substring(13, 18),
+                new String(IOUtils.toByteArray(slice.slice(10, 5)), "US-ASCII"));
+        Assert.assertEquals(0, instream.slice(TEXT.length(), 0).length());
+        Assert.assertEquals(0, instream.position());
+        Assert.assertEquals(TEXT, new String(IOUtils.toByteArray(instream), "US-ASCII"));
+    }
+
+    @Test
+    public void testMapBeyondChannelSize() throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), ContentUtil.toAsciiByteArray(TEXT));
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            MappedInputStream.map(channel, 2, TEXT.length(), 8);
+            Assert.fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void testWrap() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(ContentUtil.toAsciiByteArray("##" + TEXT));
+        buffer.position(2);
+        MappedInputStream instream = MappedInputStream.wrap(buffer);
+        Assert.assertEquals(TEXT.length(), instream.length());
+        Assert.assertEquals(TEXT.substring(5, 23),
+                new String(IOUtils.toByteArray(instream.slice(5, 18)), "US-ASCII"));
+        Assert.assertEquals(TEXT, new String(IOUtils.toByteArray(instream), "US-ASCII"));
+        Assert.assertEquals(2, buffer.position());
+    }
+
+}
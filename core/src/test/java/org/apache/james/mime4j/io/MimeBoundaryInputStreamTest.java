@@ -335,4 +335,26 @@ public class MimeBoundaryInputStreamTest {
         instream.close();
     }
 
+    @Test
+    public void testSkipStopsAtBoundary() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("Line ").append(i).append("\r\n");
+        }
+        String text = sb + "--boundary\r\nLine 3\r\n--boundary--";
+
+        BufferedLineReaderInputStream buffer = create(text, 64);
+
+        MimeBoundaryInputStream mime1 = new MimeBoundaryInputStream(buffer, "boundary");
+        Assert.assertEquals(10, mime1.skip(10));
+        Assert.assertEquals(sb.length() - 2 - 10, mime1.skip(Long.MAX_VALUE));
+        Assert.assertEquals(0, mime1.skip(Long.MAX_VALUE));
+        Assert.assertEquals(-1, mime1.read());
+        Assert.assertFalse(mime1.isLastPart());
+
+        MimeBoundaryInputStream mime2 = new MimeBoundaryInputStream(buffer, "boundary");
+        Assert.assertEquals("Line 3", read(mime2, 5));
+        Assert.assertTrue(mime2.isLastPart());
+    }
+
 }
@@ -0,0 +1,100 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CanonicalFieldNameTest {
+
+    private static CanonicalFieldName lookup(String s) {
+        byte[] b = ("xx" + s + "yy").getBytes(StandardCharsets.US_ASCII);
+        return CanonicalFieldName.lookup(b, 2, s.length());
+    }
+
+    @Test
+    public void testLookup() {
+        Assert.assertTrue(CanonicalFieldName.count() > 0);
+        CanonicalFieldName contentType = CanonicalFieldName.lookup("Content-Type");
+        Assert.assertNotNull(contentType);
+        Assert.assertEquals("Content-Type", contentType.getName());
+        Assert.assertEquals("content-type", contentType.getLowerCaseName());
+        Assert.assertSame(contentType, lookup("content-type"));
+        Assert.assertSame(contentType, lookup("CONTENT-TYPE"));
+        Assert.assertSame(contentType, CanonicalFieldName.lookup("cOnTeNt-TyPe"));
+
+        Assert.assertNull(lookup("Content-Typ"));
+        Assert.assertNull(lookup("Content-Types"));
+        Assert.assertNull(lookup("X-Mailer"));
+        Assert.assertNull(lookup(""));
+        Assert.assertNull(CanonicalFieldName.lookup("Subjéct"));
+        Assert.assertNull(lookup("Sub|ect"));
+    }
+
+    @Test
+    public void testAllNamesResolve() {
+        boolean[] seen = new boolean[CanonicalFieldName.count()];
+        for (String name : new String[] {"content-transfer-encoding", "MIME-VERSION", "to",
+                "Cc", "RESENT-BCC", "message-id", "Received", "in-reply-to"}) {
+            CanonicalFieldName canonical = lookup(name);
+            Assert.assertNotNull(name, canonical);
+            Assert.assertEquals(name.toLowerCase(Locale.US), canonical.getLowerCaseName());
+            Assert.assertFalse(seen[canonical.ordinal()]);
+            seen[canonical.ordinal()] = true;
+        }
+    }
+
+    @Test
+    public void testRawFieldSharesCanonicalStrings() throws Exception {
+        DefaultFieldBuilder builder = new DefaultFieldBuilder(0);
+        builder.reset();
+        builder.append(line("Subject: hello\r\n"));
+        RawField field = builder.build();
+        CanonicalFieldName subject = CanonicalFieldName.lookup("subject");
+        Assert.assertSame(subject, field.getCanonicalName());
+        Assert.assertSame(subject.getName(), field.getName());
+        Assert.assertSame(subject.getLowerCaseName(), field.getNameLowerCase());
+
+        builder.reset();
+        builder.append(line("SUBJECT: hello\r\n"));
+        field = builder.build();
+        Assert.assertSame(subject, field.getCanonicalName());
+        Assert.assertEquals("SUBJECT", field.getName());
+        Assert.assertSame(subject.getLowerCaseName(), field.getNameLowerCase());
+
+        builder.reset();
+        builder.append(line("X-Custom: hello\r\n"));
+        field = builder.build();
+        Assert.assertNull(field.getCanonicalName());
+        Assert.assertEquals("x-custom", field.getNameLowerCase());
+    }
+
+    private static ByteArrayBuffer line(String s) {
+        byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+        ByteArrayBuffer buf = new ByteArrayBuffer(b.length);
+        buf.append(b, 0, b.length);
+        return buf;
+    }
+
+}
@@ -21,6 +21,7 @@ package org.apache.james.mime4j.stream;
 
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.ByteArraySequence;
 import org.apache.james.mime4j.util.ByteSequence;
 import org.apache.james.mime4j.util.RecycledByteArrayBuffer;
 
@@ -134,4 +135,37 @@ public class DefaultFieldBuilderTest extends TestCase {
         }
     }
 
+    public void testFieldsShareArena() throws Exception {
+        DefaultFieldBuilder builder = new DefaultFieldBuilder(0);
+        builder.reset();
+        builder.append(line("Subject: hello\r\n"));
+        RawField first = builder.build();
+        builder.reset();
+        builder.append(line("To: someone@example.com\r\n"));
+        RawField second = builder.build();
+
+        assertEquals("Subject", first.getName());
+        assertEquals("subject", first.getNameLowerCase());
+        assertEquals("hello", first.getBody());
+        assertSame(first.getBody(), first.getBody());
+        assertEquals("To", second.getName());
+        assertEquals("someone@example.com", second.getBody());
+        assertEquals("To: someone@example.com", second.toString());
+
+        ByteArraySequence raw1 = (ByteArraySequence) first.getRaw();
+        ByteArraySequence raw2 = (ByteArraySequence) second.getRaw();
+        assertSame(raw1.buffer(), raw2.buffer());
+        assertEquals(raw1.offset() + raw1.length(), raw2.offset());
+    }
+
+    public void testCommentInNameFallsBackToParser() throws Exception {
+        DefaultFieldBuilder builder = new DefaultFieldBuilder(0);
+        builder.reset();
+        builder.append(line("raw(comment): stuff\r\n"));
+        RawField field = builder.build();
+        assertEquals("raw", field.getName());
+        assertEquals("stuff", field.getBody());
+        assertEquals("raw(comment): stuff", field.toString());
+    }
+
 }
@@ -0,0 +1,130 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FieldNameFilterTest {
+
+    private static final String MESSAGE =
+            "Received: from localhost\r\n" +
+            "\tby example.org\r\n" +
+            "From: tim@example.org\r\n" +
+            "X-Spam : no\r\n" +
+            "SUBJECT: filtered\r\n" +
+            "Content-Type: multipart/mixed; boundary=42\r\n" +
+            "\r\n" +
+            "--42\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "X-Part: 1\r\n" +
+            "\r\n" +
+            "first\r\n" +
+            "--42--\r\n";
+
+    private static boolean acceptField(FieldNameFilter filter, String field) {
+        byte[] b = ContentUtil.toAsciiByteArray(field);
+        return filter.acceptField(b, b.length);
+    }
+
+    @Test
+    public void testAccept() {
+        FieldNameFilter filter = FieldNameFilter.of("From", "Message-ID");
+        Assert.assertTrue(filter.accept("from"));
+        Assert.assertTrue(filter.accept("MESSAGE-ID"));
+        Assert.assertFalse(filter.accept("To"));
+        byte[] b = ContentUtil.toAsciiByteArray("xFROMx");
+        Assert.assertTrue(filter.accept(b, 1, 4));
+        Assert.assertFalse(filter.accept(b, 0, 4));
+        Assert.assertFalse(filter.accept(b, 0, b.length));
+    }
+
+    @Test
+    public void testAcceptField() {
+        FieldNameFilter filter = FieldNameFilter.of("From");
+        Assert.assertTrue(acceptField(filter, "From: tim@example.org\r\n"));
+        Assert.assertTrue(acceptField(filter, "from \t: tim@example.org\r\n"));
+        Assert.assertFalse(acceptField(filter, "To: tim@example.org\r\n"));
+        Assert.assertFalse(acceptField(filter, "Fromage: tim@example.org\r\n"));
+        // malformed fields are left to the parser
+        Assert.assertTrue(acceptField(filter, "no colon\r\n"));
+        Assert.assertTrue(acceptField(filter, "To do: something\r\n"));
+        Assert.assertTrue(acceptField(filter, ": no name\r\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidName() {
+        FieldNameFilter.of("From:");
+    }
+
+    @Test
+    public void testSkippedFieldsAreNotReported() throws Exception {
+        MimeConfig config = MimeConfig.custom()
+                .setFieldNameFilter(FieldNameFilter.of("from", "subject", "x-spam"))
+                .build();
+        MimeTokenStream stream = new MimeTokenStream(config);
+        stream.parse(new ByteArrayInputStream(ContentUtil.toAsciiByteArray(MESSAGE)));
+        List<String> fields = new ArrayList<String>();
+        int bodies = 0;
+        for (EntityState state = stream.getState();
+             state != EntityState.T_END_OF_STREAM;
+             state = stream.next()) {
+            if (state == EntityState.T_FIELD) {
+                fields.add(stream.getField().getName());
+            } else if (state == EntityState.T_BODY) {
+                bodies++;
+                Assert.assertEquals("text/plain", stream.getBodyDescriptor().getMimeType());
+            }
+        }
+        // the structure is still parsed
+        Assert.assertEquals(1, bodies);
+        Assert.assertEquals("[From, X-Spam, SUBJECT]", fields.toString());
+    }
+
+    @Test
+    public void testSkippedFieldsAreNotReportedByPushParser() throws Exception {
+        MimeConfig config = MimeConfig.custom()
+                .setFieldNameFilter(FieldNameFilter.of("x-part"))
+                .build();
+        NonBlockingMimeTokenStream stream = new NonBlockingMimeTokenStream(config);
+        stream.feed(ByteBuffer.wrap(ContentUtil.toAsciiByteArray(MESSAGE)));
+        stream.endOfInput();
+        List<String> fields = new ArrayList<String>();
+        boolean multipart = false;
+        for (EntityState state = stream.next();
+             state != EntityState.T_END_OF_STREAM;
+             state = stream.next()) {
+            if (state == EntityState.T_FIELD) {
+                fields.add(stream.getField().getName());
+            } else if (state == EntityState.T_START_MULTIPART) {
+                multipart = true;
+            }
+        }
+        Assert.assertTrue(multipart);
+        Assert.assertEquals("[X-Part]", fields.toString());
+    }
+
+}
@@ -0,0 +1,180 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.Charsets;
+import org.apache.james.mime4j.io.MappedInputStream;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MimeStructureIndexTest {
+
+    private static final String MESSAGE =
+            "Subject: outer\r\n" +
+            "Content-Type: multipart/mixed; boundary=\"outer\"\r\n" +
+            "\r\n" +
+            "preamble\r\n" +
+            "--outer\r\n" +
+            "Content-Type: text/plain; charset=UTF-8\r\n" +
+            "\r\n" +
+            "first\r\n" +
+            "--outer\r\n" +
+            "Content-Type: message/rfc822\r\n" +
+            "\r\n" +
+            "Subject: inner\r\n" +
+            "Content-Type: multipart/alternative; boundary=inner\r\n" +
+            "\r\n" +
+            "--inner\r\n" +
+            "Content-Type: text/html\r\n" +
+            "Content-Transfer-Encoding: quoted-printable\r\n" +
+            "\r\n" +
+            "<p>second</p>\r\n" +
+            "--inner--\r\n" +
+            "\r\n" +
+            "--outer\r\n" +
+            "Content-Type: message/rfc822\r\n" +
+            "Content-Transfer-Encoding: base64\r\n" +
+            "\r\n" +
+            "U3ViamVjdDogZW5jb2RlZA0KDQpib2R5DQo=\r\n" +
+            "--outer--\r\n" +
+            "epilogue\r\n";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static String slice(byte[] content, long start, long end) {
+        return new String(content, (int) start, (int) (end - start), Charsets.US_ASCII);
+    }
+
+    @Test
+    public void testBuildIndex() throws Exception {
+        byte[] content = ContentUtil.toAsciiByteArray(MESSAGE);
+        MimeStructureIndex index = MimeStructureIndex.build(new ByteArrayInputStream(content));
+
+        Assert.assertEquals(6, index.getParts().size());
+        Assert.assertEquals(content.length, index.getMessageLength());
+
+        MimeStructureIndex.Part root = index.getRoot();
+        Assert.assertEquals("", root.getPartNumber());
+        Assert.assertTrue(root.isMessage());
+        Assert.assertTrue(root.isMultipart());
+        Assert.assertEquals("outer", root.getBoundary());
+        Assert.assertEquals(0, root.getHeaderStartByte());
+        Assert.assertEquals(MESSAGE.indexOf("preamble"), root.getBodyStartByte());
+
+        MimeStructureIndex.Part first = index.getPart("1");
+        Assert.assertEquals(1, first.getDepth());
+        Assert.assertFalse(first.isMessage());
+        Assert.assertEquals("text/plain", first.getMimeType());
+        Assert.assertEquals("UTF-8", first.getCharset());
+        Assert.assertEquals("7bit", first.getTransferEncoding());
+        Assert.assertEquals("first", slice(content, first.getBodyStartByte(), first.getBodyEndByte()));
+        Assert.assertEquals("Content-Type: text/plain; charset=UTF-8\r\n\r\n",
+                slice(content, first.getHeaderStartByte(), first.getBodyStartByte()));
+
+        MimeStructureIndex.Part second = index.getPart("2");
+        Assert.assertFalse(second.isMessage());
+        Assert.assertEquals("message/rfc822", second.getMimeType());
+        Assert.assertEquals(MESSAGE.indexOf("Subject: inner"), second.getBodyStartByte());
+        Assert.assertEquals(MESSAGE.indexOf("\r\n--outer\r\nContent-Type: message/rfc822\r\nContent-Transfer"),
+                second.getBodyEndByte());
+
+        MimeStructureIndex.Part embedded = index.getParts().get(3);
+        Assert.assertEquals("2", embedded.getPartNumber());
+        Assert.assertEquals(2, embedded.getDepth());
+        Assert.assertTrue(embedded.isMessage());
+        Assert.assertEquals("multipart/alternative", embedded.getMimeType());
+        Assert.assertEquals(second.getBodyStartByte(), embedded.getHeaderStartByte());
+        Assert.assertEquals(second.getBodyEndByte(), embedded.getBodyEndByte());
+
+        MimeStructureIndex.Part html = index.getPart("2.1");
+        Assert.assertEquals(3, html.getDepth());
+        Assert.assertEquals("text/html", html.getMimeType());
+        Assert.assertEquals("quoted-printable", html.getTransferEncoding());
+        Assert.assertEquals("<p>second</p>", slice(content, html.getBodyStartByte(), html.getBodyEndByte()));
+
+        // transfer encoded message is opaque
+        MimeStructureIndex.Part third = index.getPart("3");
+        Assert.assertEquals("message/rfc822", third.getMimeType());
+        Assert.assertEquals("base64", third.getTransferEncoding());
+        Assert.assertEquals("U3ViamVjdDogZW5jb2RlZA0KDQpib2R5DQo=",
+                slice(content, third.getBodyStartByte(), third.getBodyEndByte()));
+        Assert.assertNull(index.getPart("3.1"));
+        Assert.assertEquals(index.getParts().size() - 1, index.getParts().indexOf(third));
+    }
+
+    @Test
+    public void testSinglePartMessage() throws Exception {
+        String message = "Subject: test\r\n\r\nbody\r\n";
+        MimeStructureIndex index = MimeStructureIndex.build(
+                new ByteArrayInputStream(ContentUtil.toAsciiByteArray(message)));
+        Assert.assertEquals(1, index.getParts().size());
+        MimeStructureIndex.Part root = index.getRoot();
+        Assert.assertEquals("text/plain", root.getMimeType());
+        Assert.assertEquals("us-ascii", root.getCharset());
+        Assert.assertNull(root.getBoundary());
+        Assert.assertEquals(message.indexOf("body"), root.getBodyStartByte());
+        Assert.assertEquals(message.length(), root.getBodyEndByte());
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        MimeStructureIndex index = MimeStructureIndex.build(
+                new ByteArrayInputStream(ContentUtil.toAsciiByteArray(MESSAGE)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.writeTo(out);
+        MimeStructureIndex copy = MimeStructureIndex.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(index.getParts().toString(), copy.getParts().toString());
+        Assert.assertEquals("text/html", copy.getPart("2.1").getMimeType());
+    }
+
+    @Test
+    public void testIndexFileNextToMessage() throws Exception {
+        Path message = tempFolder.newFile("1.eml").toPath();
+        Files.write(message, ContentUtil.toAsciiByteArray(MESSAGE));
+        MimeStructureIndex.build(message, null).write(MimeStructureIndex.indexFileFor(message));
+
+        Path indexFile = message.resolveSibling("1.eml" + MimeStructureIndex.INDEX_FILE_SUFFIX);
+        Assert.assertTrue(Files.isRegularFile(indexFile));
+        MimeStructureIndex index = MimeStructureIndex.read(indexFile);
+        Assert.assertEquals(Files.size(message), index.getMessageLength());
+
+        MimeStructureIndex.Part html = index.getPart("2.1");
+        MappedInputStream mapped = MappedInputStream.map(message);
+        byte[] body = IOUtils.toByteArray(mapped.slice(html.getBodyStartByte(), html.getBodyLength()));
+        Assert.assertEquals("<p>second</p>", new String(body, "US-ASCII"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalidIndex() throws Exception {
+        MimeStructureIndex.readFrom(new ByteArrayInputStream(ContentUtil.toAsciiByteArray(MESSAGE)));
+    }
+
+}
@@ -0,0 +1,151 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MimeTokenHeadersOnlyTest {
+
+    private static final String HEADER = "From: Timothy Tayler <tim@example.org>\r\n" +
+            "Subject: Headers only\r\n" +
+            "Content-Type: multipart/mixed;boundary=42\r\n\r\n";
+
+    private static final int BODY_LENGTH = 1024 * 1024;
+
+    private static byte[] message() {
+        byte[] header = ContentUtil.toAsciiByteArray(HEADER);
+        byte[] message = Arrays.copyOf(header, header.length + BODY_LENGTH);
+        Arrays.fill(message, header.length, message.length, (byte) 'x');
+        return message;
+    }
+
+    /**
+     * Counts the bytes actually read, as opposed to skipped.
+     */
+    private static final class CountingInputStream extends ByteArrayInputStream {
+
+        long read;
+
+        CountingInputStream(byte[] b) {
+            super(b);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                read += n;
+            }
+            return n;
+        }
+
+    }
+
+    @Test
+    public void testBodyIsSkipped() throws Exception {
+        byte[] message = message();
+        CountingInputStream in = new CountingInputStream(message);
+        MimeTokenStream stream = new MimeTokenStream();
+        stream.setRecursionMode(RecursionMode.M_HEADERS_ONLY);
+        stream.parse(in);
+
+        Assert.assertEquals(EntityState.T_START_MESSAGE, stream.getState());
+        Assert.assertEquals(EntityState.T_START_HEADER, stream.next());
+        Assert.assertEquals(EntityState.T_FIELD, stream.next());
+        Assert.assertEquals(EntityState.T_FIELD, stream.next());
+        Assert.assertEquals(EntityState.T_FIELD, stream.next());
+        Assert.assertEquals(EntityState.T_END_HEADER, stream.next());
+        Assert.assertEquals(EntityState.T_END_MESSAGE, stream.next());
+        Assert.assertEquals(EntityState.T_END_OF_STREAM, stream.next());
+
+        Assert.assertEquals(0, in.available());
+        Assert.assertTrue(in.read < 8 * 1024);
+    }
+
+    @Test
+    public void testBodyIsSkippedInPlace() throws Exception {
+        byte[] message = message();
+        final List<BodyDescriptor> built = new ArrayList<BodyDescriptor>();
+        MimeTokenStream stream = new MimeTokenStream(MimeConfig.DEFAULT, new FallbackBodyDescriptorBuilder() {
+            @Override
+            public BodyDescriptor build() {
+                BodyDescriptor body = super.build();
+                built.add(body);
+                return body;
+            }
+        });
+        stream.setRecursionMode(RecursionMode.M_HEADERS_ONLY);
+        stream.parse(ByteBuffer.wrap(message));
+        int fields = 0;
+        for (EntityState state = stream.getState();
+             state != EntityState.T_END_OF_STREAM;
+             state = stream.next()) {
+            Assert.assertNotEquals(EntityState.T_BODY, state);
+            Assert.assertNotEquals(EntityState.T_START_MULTIPART, state);
+            if (state == EntityState.T_FIELD) {
+                fields++;
+            }
+        }
+        Assert.assertEquals(3, fields);
+        Assert.assertEquals(1, built.size());
+        Assert.assertEquals(HEADER.length(), built.get(0).getBodyStartByte());
+        Assert.assertEquals(HEADER.length() + BODY_LENGTH, built.get(0).getBodyEndByte());
+    }
+
+    @Test
+    public void testPushParserDiscardsBody() throws Exception {
+        byte[] message = message();
+        final List<BodyDescriptor> built = new ArrayList<BodyDescriptor>();
+        NonBlockingMimeTokenStream stream = new NonBlockingMimeTokenStream(MimeConfig.DEFAULT,
+                new FallbackBodyDescriptorBuilder() {
+            @Override
+            public BodyDescriptor build() {
+                BodyDescriptor body = super.build();
+                built.add(body);
+                return body;
+            }
+        });
+        stream.setRecursionMode(RecursionMode.M_HEADERS_ONLY);
+        stream.feed(ByteBuffer.wrap(message, 0, HEADER.length() + 10));
+        Assert.assertEquals(EntityState.T_START_HEADER, stream.next());
+        Assert.assertEquals(EntityState.T_FIELD, stream.next());
+        Assert.assertEquals(EntityState.T_FIELD, stream.next());
+        Assert.assertEquals(EntityState.T_FIELD, stream.next());
+        Assert.assertEquals(EntityState.T_END_HEADER, stream.next());
+        Assert.assertNull(stream.next());
+        stream.feed(ByteBuffer.wrap(message, HEADER.length() + 10, BODY_LENGTH - 10));
+        Assert.assertNull(stream.next());
+        stream.endOfInput();
+        Assert.assertEquals(EntityState.T_END_MESSAGE, stream.next());
+        BodyDescriptor body = built.get(built.size() - 1);
+        Assert.assertEquals(HEADER.length(), body.getBodyStartByte());
+        Assert.assertEquals(HEADER.length() + BODY_LENGTH, body.getBodyEndByte());
+        Assert.assertEquals(EntityState.T_END_OF_STREAM, stream.next());
+    }
+
+}
@@ -0,0 +1,143 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestSuite;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.Charsets;
+import org.apache.james.mime4j.ExampleMessageTestCase;
+import org.apache.james.mime4j.ExampleMessageTestCaseFactory;
+import org.apache.james.mime4j.ExampleMessageTestSuiteBuilder;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.runner.RunWith;
+import org.junit.runners.AllTests;
+
+/**
+ * Checks that parsing sample messages in place from a byte array or a buffer,
+ * or from a memory mapped file, yields exactly the same tokens as parsing them
+ * from a stream.
+ */
+@RunWith(AllTests.class)
+public class MimeTokenStreamInPlaceExampleMessagesTest extends ExampleMessageTestCase {
+
+    public static TestSuite suite() throws IOException {
+        ExampleMessageTestSuiteBuilder testSuiteBuilder = new ExampleMessageTestSuiteBuilder(
+                new ExampleMessageTestCaseFactory() {
+
+                    public ExampleMessageTestCase create(final File file, final URL resource) throws IOException {
+                        return new MimeTokenStreamInPlaceExampleMessagesTest(file, resource);
+                    }
+
+                });
+        return testSuiteBuilder.build();
+    }
+
+    public MimeTokenStreamInPlaceExampleMessagesTest(final File file, final URL resource) {
+        super(file, resource);
+    }
+
+    @Override
+    public void runTest() throws Exception {
+        byte[] content;
+        InputStream msgstream = getResource().openStream();
+        try {
+            content = IOUtils.toByteArray(msgstream);
+        } finally {
+            msgstream.close();
+        }
+        // surround the message with junk to make sure offsets are honoured
+        byte[] padded = new byte[content.length + 16];
+        System.arraycopy(content, 0, padded, 7, content.length);
+
+        for (boolean decode : new boolean[] {false, true}) {
+            MimeTokenStream stream = new MimeTokenStream(getConfig());
+            stream.parse(new ByteArrayInputStream(content));
+            String expected = trace(stream, decode);
+
+            stream = new MimeTokenStream(getConfig());
+            stream.parse(padded, 7, content.length);
+            Assert.assertEquals(expected, trace(stream, decode));
+
+            stream = new MimeTokenStream(getConfig());
+            stream.parse(ByteBuffer.wrap(padded, 7, content.length).slice());
+            Assert.assertEquals(expected, trace(stream, decode));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+            direct.put(content).flip();
+            stream = new MimeTokenStream(getConfig());
+            stream.parse(direct);
+            Assert.assertEquals(expected, trace(stream, decode));
+            Assert.assertEquals(0, direct.position());
+
+            if (getSourceFile().isFile()) {
+                stream = new MimeTokenStream(getConfig());
+                stream.parse(getSourceFile().toPath());
+                Assert.assertEquals(expected, trace(stream, decode));
+            }
+        }
+    }
+
+    private static String trace(MimeTokenStream stream, boolean decode) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (EntityState state = stream.getState();
+             state != EntityState.T_END_OF_STREAM;
+             state = stream.next()) {
+            sb.append(state).append('\n');
+            switch (state) {
+                case T_FIELD:
+                    sb.append(ContentUtil.decode(stream.getField().getRaw())).append('\n');
+                    break;
+                case T_BODY:
+                case T_PREAMBLE:
+                case T_EPILOGUE:
+                case T_RAW_ENTITY:
+                    InputStream body = decode && state == EntityState.T_BODY
+                            ? stream.getDecodedInputStream() : stream.getInputStream();
+                    sb.append(new String(IOUtils.toByteArray(body), Charsets.ISO_8859_1)).append('\n');
+                    if (state == EntityState.T_RAW_ENTITY) {
+                        break;
+                    }
+                    // fall through
+                case T_START_MULTIPART:
+                case T_END_MULTIPART:
+                    BodyDescriptor bd = stream.getBodyDescriptor();
+                    sb.append(bd.getMimeType()).append(' ')
+                            .append(bd.getBoundary()).append(' ')
+                            .append(bd.getHeaderStartByte()).append(' ')
+                            .append(bd.getBodyStartByte()).append(' ')
+                            .append(bd.getBodyEndByte()).append('\n');
+                    break;
+                default:
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,126 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.InputStream;
+
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Streams a synthetic message larger than 4 GB through the parser and checks that
+ * byte offsets do not wrap.
+ */
+public class MimeTokenStreamLargeOffsetsTest {
+
+    private static final String HEAD = "Content-Type: multipart/mixed; boundary=xyz\r\n"
+            + "\r\n"
+            + "--xyz\r\n"
+            + "Content-Type: application/octet-stream\r\n"
+            + "\r\n";
+    private static final String TAIL = "--xyz\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "\r\n"
+            + "tail\r\n"
+            + "--xyz--\r\n";
+    private static final int LINE_LENGTH = 8 * 1024;
+    private static final long LINE_COUNT = (4L * 1024 * 1024 * 1024) / LINE_LENGTH + 1000;
+
+    /**
+     * Generates HEAD, LINE_COUNT lines of LINE_LENGTH bytes, and TAIL without
+     * holding more than one line in memory.
+     */
+    private static class SyntheticMessageInputStream extends InputStream {
+
+        private final byte[] head = ContentUtil.toAsciiByteArray(HEAD);
+        private final byte[] line = new byte[LINE_LENGTH];
+        private final byte[] tail = ContentUtil.toAsciiByteArray(TAIL);
+        private final long length = head.length + LINE_COUNT * LINE_LENGTH + tail.length;
+        private long pos;
+
+        SyntheticMessageInputStream() {
+            for (int i = 0; i < line.length - 2; i++) {
+                line[i] = (byte) 'A';
+            }
+            line[line.length - 2] = '\r';
+            line[line.length - 1] = '\n';
+        }
+
+        @Override
+        public int read() {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (pos >= length) {
+                return -1;
+            }
+            long bodyEnd = head.length + LINE_COUNT * LINE_LENGTH;
+            int chunk;
+            if (pos < head.length) {
+                chunk = Math.min(len, head.length - (int) pos);
+                System.arraycopy(head, (int) pos, b, off, chunk);
+            } else if (pos < bodyEnd) {
+                int lineOff = (int) ((pos - head.length) % LINE_LENGTH);
+                chunk = Math.min(len, LINE_LENGTH - lineOff);
+                System.arraycopy(line, lineOff, b, off, chunk);
+            } else {
+                chunk = Math.min(len, tail.length - (int) (pos - bodyEnd));
+                System.arraycopy(tail, (int) (pos - bodyEnd), b, off, chunk);
+            }
+            pos += chunk;
+            return chunk;
+        }
+    }
+
+    @Test
+    public void testOffsetsBeyondFourGigabytes() throws Exception {
+        SyntheticMessageInputStream instream = new SyntheticMessageInputStream();
+        long secondPartStart = HEAD.length() + LINE_COUNT * LINE_LENGTH + "--xyz\r\n".length();
+        Assert.assertTrue(secondPartStart > 4L * 1024 * 1024 * 1024);
+
+        MimeTokenStream stream = new MimeTokenStream();
+        stream.parse(instream);
+        int bodies = 0;
+        for (EntityState state = stream.getState();
+             state != EntityState.T_END_OF_STREAM;
+             state = stream.next()) {
+            if (state == EntityState.T_BODY) {
+                BodyDescriptor bd = stream.getBodyDescriptor();
+                if (bodies == 0) {
+                    Assert.assertEquals(HEAD.length(), bd.getBodyStartByte());
+                } else {
+                    Assert.assertEquals("text/plain", bd.getMimeType());
+                    Assert.assertEquals(secondPartStart, bd.getHeaderStartByte());
+                    Assert.assertEquals(secondPartStart + "Content-Type: text/plain\r\n\r\n".length(),
+                            bd.getBodyStartByte());
+                }
+                bodies++;
+            } else if (state == EntityState.T_END_MULTIPART) {
+                Assert.assertEquals(instream.length, stream.getBodyDescriptor().getBodyEndByte());
+            }
+        }
+        Assert.assertEquals(2, bodies);
+    }
+
+}
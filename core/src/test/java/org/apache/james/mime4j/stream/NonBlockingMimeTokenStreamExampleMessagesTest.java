@@ -0,0 +1,246 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import junit.framework.TestSuite;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.Charsets;
+import org.apache.james.mime4j.ExampleMessageTestCase;
+import org.apache.james.mime4j.ExampleMessageTestCaseFactory;
+import org.apache.james.mime4j.ExampleMessageTestSuiteBuilder;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.apache.james.mime4j.util.MimeUtil;
+import org.junit.Assert;
+import org.junit.runner.RunWith;
+import org.junit.runners.AllTests;
+
+/**
+ * Checks that feeding sample messages to the push parser in chunks of various
+ * sizes yields the same tokens, content and offsets as parsing them from a
+ * stream.
+ */
+@RunWith(AllTests.class)
+public class NonBlockingMimeTokenStreamExampleMessagesTest extends ExampleMessageTestCase {
+
+    private static final int[] CHUNK_SIZES = {1, 3, 64, 4096, Integer.MAX_VALUE};
+
+    public static TestSuite suite() throws IOException {
+        ExampleMessageTestSuiteBuilder testSuiteBuilder = new ExampleMessageTestSuiteBuilder(
+                new ExampleMessageTestCaseFactory() {
+
+                    public ExampleMessageTestCase create(final File file, final URL resource) throws IOException {
+                        return new NonBlockingMimeTokenStreamExampleMessagesTest(file, resource);
+                    }
+
+                });
+        return testSuiteBuilder.build();
+    }
+
+    public NonBlockingMimeTokenStreamExampleMessagesTest(final File file, final URL resource) {
+        super(file, resource);
+    }
+
+    @Override
+    public void runTest() throws Exception {
+        byte[] content;
+        InputStream msgstream = getResource().openStream();
+        try {
+            content = IOUtils.toByteArray(msgstream);
+        } finally {
+            msgstream.close();
+        }
+
+        MimeTokenStream stream = new MimeTokenStream(getConfig());
+        stream.parse(new ByteArrayInputStream(content));
+        String expected = trace(stream);
+
+        for (int chunkSize : CHUNK_SIZES) {
+            NonBlockingMimeTokenStream push = new NonBlockingMimeTokenStream(getConfig());
+            Trace trace = new Trace();
+            trace.add(push);
+            for (int off = 0; off < content.length; off += chunkSize) {
+                push.feed(ByteBuffer.wrap(content, off, Math.min(chunkSize, content.length - off)));
+                for (EntityState state = push.next(); state != null; state = push.next()) {
+                    trace.add(push);
+                }
+            }
+            push.endOfInput();
+            for (EntityState state = push.next(); state != EntityState.T_END_OF_STREAM; state = push.next()) {
+                Assert.assertNotNull(state);
+                trace.add(push);
+            }
+            Assert.assertEquals("chunk size " + chunkSize, expected, trace.toString());
+        }
+    }
+
+    /**
+     * Builds the trace of the pull parser. Transfer encoded embedded messages
+     * are not parsed, as the push parser reports them as bodies.
+     */
+    private static String trace(MimeTokenStream stream) throws Exception {
+        Trace trace = new Trace();
+        String contentType = null;
+        String transferEncoding = null;
+        for (EntityState state = stream.getState();
+             state != EntityState.T_END_OF_STREAM;
+             state = stream.next()) {
+            trace.add(state, stream);
+            if (state == EntityState.T_START_HEADER) {
+                contentType = null;
+                transferEncoding = null;
+            } else if (state == EntityState.T_FIELD) {
+                Field field = stream.getField();
+                String body = field.getBody().trim().toLowerCase(Locale.US);
+                if (contentType == null && field.getName().equalsIgnoreCase("Content-Type")) {
+                    contentType = body;
+                } else if (transferEncoding == null && field.getName().equalsIgnoreCase("Content-Transfer-Encoding")) {
+                    transferEncoding = body;
+                }
+            } else if (state == EntityState.T_END_HEADER
+                    && contentType != null && contentType.startsWith("message/")
+                    && (MimeUtil.isBase64Encoding(transferEncoding)
+                    || MimeUtil.isQuotedPrintableEncoded(transferEncoding))) {
+                stream.setRecursionMode(RecursionMode.M_NO_RECURSE);
+                trace.add(stream.next(), stream);
+                stream.setRecursionMode(RecursionMode.M_RECURSE);
+            }
+        }
+        return trace.toString();
+    }
+
+    private static final class Trace {
+
+        private final StringBuilder sb = new StringBuilder();
+        private EntityState contentState;
+        private StringBuilder content;
+        private String descriptor;
+
+        void add(NonBlockingMimeTokenStream stream) throws IOException {
+            EntityState state = stream.getState();
+            switch (state) {
+                case T_FIELD:
+                    add(state, ContentUtil.decode(stream.getField().getRaw()), null);
+                    break;
+                case T_BODY:
+                case T_PREAMBLE:
+                case T_EPILOGUE:
+                    add(state, read(stream.getInputStream()), describe(stream.getBodyDescriptor()));
+                    break;
+                case T_RAW_ENTITY:
+                    add(state, read(stream.getInputStream()), null);
+                    break;
+                case T_START_MULTIPART:
+                case T_END_MULTIPART:
+                    add(state, null, describe(stream.getBodyDescriptor()));
+                    break;
+                default:
+                    add(state, null, null);
+                    break;
+            }
+        }
+
+        void add(EntityState state, MimeTokenStream stream) throws IOException {
+            switch (state) {
+                case T_FIELD:
+                    add(state, ContentUtil.decode(stream.getField().getRaw()), null);
+                    break;
+                case T_BODY:
+                case T_PREAMBLE:
+                case T_EPILOGUE:
+                    add(state, read(stream.getInputStream()), describe(stream.getBodyDescriptor()));
+                    break;
+                case T_RAW_ENTITY:
+                    add(state, read(stream.getInputStream()), null);
+                    break;
+                case T_START_MULTIPART:
+                case T_END_MULTIPART:
+                    add(state, null, describe(stream.getBodyDescriptor()));
+                    break;
+                default:
+                    add(state, null, null);
+                    break;
+            }
+        }
+
+        private void add(EntityState state, String text, String desc) {
+            boolean isContent = state == EntityState.T_BODY
+                    || state == EntityState.T_PREAMBLE
+                    || state == EntityState.T_EPILOGUE
+                    || state == EntityState.T_RAW_ENTITY;
+            if (isContent && state == contentState) {
+                // consecutive chunks of the same content
+                content.append(text);
+                return;
+            }
+            flush();
+            if (isContent) {
+                contentState = state;
+                content = new StringBuilder(text);
+                descriptor = desc;
+                return;
+            }
+            sb.append(state).append('\n');
+            if (text != null) {
+                sb.append(text).append('\n');
+            }
+            if (desc != null) {
+                sb.append(desc).append('\n');
+            }
+        }
+
+        private void flush() {
+            if (contentState != null) {
+                sb.append(contentState).append('\n').append(content).append('\n');
+                if (descriptor != null) {
+                    sb.append(descriptor).append('\n');
+                }
+                contentState = null;
+            }
+        }
+
+        private static String read(InputStream in) throws IOException {
+            return new String(IOUtils.toByteArray(in), Charsets.ISO_8859_1);
+        }
+
+        private static String describe(BodyDescriptor bd) {
+            return bd.getMimeType() + ' ' + bd.getBoundary() + ' '
+                    + bd.getHeaderStartByte() + ' '
+                    + bd.getBodyStartByte() + ' '
+                    + bd.getBodyEndByte();
+        }
+
+        @Override
+        public String toString() {
+            flush();
+            return sb.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,136 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.util.ContentUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NonBlockingMimeTokenStreamTest {
+
+    private static ByteBuffer ascii(String s) {
+        return ByteBuffer.wrap(ContentUtil.toAsciiByteArray(s));
+    }
+
+    private static String content(NonBlockingMimeTokenStream stream) throws IOException {
+        return new String(IOUtils.toByteArray(stream.getInputStream()), "US-ASCII");
+    }
+
+    @Test
+    public void testNeedsInput() throws Exception {
+        NonBlockingMimeTokenStream stream = new NonBlockingMimeTokenStream();
+        Assert.assertEquals(EntityState.T_START_MESSAGE, stream.getState());
+        Assert.assertEquals(EntityState.T_START_HEADER, stream.next());
+        Assert.assertNull(stream.next());
+
+        stream.feed(ascii("Subject: te"));
+        Assert.assertNull(stream.next());
+        stream.feed(ascii("st\r\n"));
+        // the field may still be folded
+        Assert.assertNull(stream.next());
+        stream.feed(ascii("\r\nbody"));
+        Assert.assertEquals(EntityState.T_FIELD, stream.next());
+        Assert.assertEquals("Subject", stream.getField().getName());
+        Assert.assertEquals(EntityState.T_END_HEADER, stream.next());
+        Assert.assertEquals(EntityState.T_BODY, stream.next());
+        Assert.assertEquals("body", content(stream));
+        Assert.assertNull(stream.next());
+        Assert.assertEquals(EntityState.T_BODY, stream.getState());
+
+        stream.feed(ascii(" more"));
+        Assert.assertEquals(EntityState.T_BODY, stream.next());
+        Assert.assertEquals(" more", content(stream));
+        stream.endOfInput();
+        Assert.assertEquals(EntityState.T_END_MESSAGE, stream.next());
+        Assert.assertEquals(EntityState.T_END_OF_STREAM, stream.next());
+    }
+
+    @Test
+    public void testDelimiterSplitAcrossChunks() throws Exception {
+        NonBlockingMimeTokenStream stream = new NonBlockingMimeTokenStream();
+        stream.feed(ascii("Content-Type: multipart/mixed; boundary=foo\r\n\r\n--foo\r\n\r\nfirst\r\n--f"));
+        StringBuilder sb = new StringBuilder();
+        for (EntityState state = stream.next(); state != null; state = stream.next()) {
+            if (state == EntityState.T_BODY) {
+                sb.append(content(stream));
+            }
+        }
+        // the line break may precede a delimiter, so it is held back
+        Assert.assertEquals("first", sb.toString());
+        Assert.assertEquals(EntityState.T_BODY, stream.getState());
+
+        stream.feed(ascii("oo--\r\n"));
+        stream.endOfInput();
+        Assert.assertEquals(EntityState.T_END_BODYPART, stream.next());
+        Assert.assertEquals(EntityState.T_END_MULTIPART, stream.next());
+        Assert.assertEquals(EntityState.T_END_MESSAGE, stream.next());
+        Assert.assertEquals(EntityState.T_END_OF_STREAM, stream.next());
+    }
+
+    @Test
+    public void testLongBodyInSmallChunks() throws Exception {
+        NonBlockingMimeTokenStream stream = new NonBlockingMimeTokenStream();
+        stream.feed(ascii("Subject: test\r\n\r\n"));
+        byte[] chunk = new byte[1024];
+        Arrays.fill(chunk, (byte) 'x');
+        long total = 0;
+        for (int i = 0; i < 1024; i++) {
+            stream.feed(ByteBuffer.wrap(chunk));
+            for (EntityState state = stream.next(); state != null; state = stream.next()) {
+                if (state == EntityState.T_BODY) {
+                    total += IOUtils.toByteArray(stream.getInputStream()).length;
+                }
+            }
+        }
+        stream.endOfInput();
+        Assert.assertEquals(EntityState.T_END_MESSAGE, stream.next());
+        Assert.assertEquals(1024 * 1024, total);
+    }
+
+    @Test
+    public void testEncodedMessageIsReportedAsBody() throws Exception {
+        NonBlockingMimeTokenStream stream = new NonBlockingMimeTokenStream();
+        stream.feed(ascii("Content-Type: message/rfc822\r\n"
+                + "Content-Transfer-Encoding: base64\r\n\r\n"
+                + "U3ViamVjdDogZW5jb2RlZA0KDQpib2R5DQo=\r\n"));
+        stream.endOfInput();
+        Assert.assertEquals(EntityState.T_START_HEADER, stream.next());
+        Assert.assertEquals(EntityState.T_FIELD, stream.next());
+        Assert.assertEquals(EntityState.T_FIELD, stream.next());
+        Assert.assertEquals(EntityState.T_END_HEADER, stream.next());
+        Assert.assertEquals(EntityState.T_BODY, stream.next());
+        Assert.assertEquals("message/rfc822", stream.getBodyDescriptor().getMimeType());
+        Assert.assertEquals("U3ViamVjdDogZW5jb2RlZA0KDQpib2R5DQo=\r\n", content(stream));
+        Assert.assertEquals(EntityState.T_END_MESSAGE, stream.next());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFeedAfterEndOfInput() throws Exception {
+        NonBlockingMimeTokenStream stream = new NonBlockingMimeTokenStream();
+        stream.endOfInput();
+        stream.feed(ascii("Subject: test\r\n"));
+    }
+
+}
@@ -0,0 +1,175 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.util;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.james.mime4j.stream.EntityState;
+import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimeTokenStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferRecyclerPoolTest {
+
+    @Test
+    public void testThreadLocalPoolKeepsOneRecyclerPerThread() throws Exception {
+        BufferRecyclerPool pool = BufferRecyclerPools.threadLocal();
+        BufferRecycler recycler = pool.getBufferRecycler();
+        Assert.assertSame(recycler, pool.getBufferRecycler());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            BufferRecycler other = executor.submit(new Callable<BufferRecycler>() {
+                public BufferRecycler call() {
+                    return BufferRecyclerPools.threadLocal().getBufferRecycler();
+                }
+            }).get();
+            Assert.assertNotSame(recycler, other);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSharedPoolReusesBuffersAcrossThreads() throws Exception {
+        final BufferRecycler recycler = new StripedBufferRecycler(1, 4);
+        final byte[] buffer = recycler.allocByteBuffer(0, 4096);
+        recycler.releaseByteBuffer(0, buffer);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                // a single stripe is shared by all threads
+                Assert.assertSame(buffer, recycler.allocByteBuffer(0, 4096));
+            }
+        };
+        thread.start();
+        thread.join();
+        Assert.assertNotSame(buffer, recycler.allocByteBuffer(0, 4096));
+    }
+
+    @Test
+    public void testStripedRecyclerRetainsBoundedNumberOfBuffers() {
+        BufferRecycler recycler = new StripedBufferRecycler(1, 2);
+        byte[] first = recycler.allocByteBuffer(0, 100);
+        byte[] second = recycler.allocByteBuffer(0, 100);
+        byte[] third = recycler.allocByteBuffer(0, 100);
+        recycler.releaseByteBuffer(0, first);
+        recycler.releaseByteBuffer(0, second);
+        recycler.releaseByteBuffer(0, third);
+        Set<byte[]> reused = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+        reused.add(recycler.allocByteBuffer(0, 100));
+        reused.add(recycler.allocByteBuffer(0, 100));
+        reused.add(recycler.allocByteBuffer(0, 100));
+        Assert.assertTrue(reused.contains(first));
+        Assert.assertTrue(reused.contains(second));
+        Assert.assertFalse(reused.contains(third));
+    }
+
+    @Test
+    public void testStripedRecyclerTooSmallBufferIsNotReused() {
+        BufferRecycler recycler = new StripedBufferRecycler(1, 2);
+        char[] small = recycler.allocCharBuffer(0, 10);
+        recycler.releaseCharBuffer(0, small);
+        char[] large = recycler.allocCharBuffer(0, small.length + 1);
+        Assert.assertNotSame(small, large);
+        Assert.assertTrue(large.length > small.length);
+        int[] ints = recycler.allocintBuffer(256);
+        recycler.releaseIntBuffer(ints);
+        Assert.assertSame(ints, recycler.allocintBuffer(256));
+    }
+
+    @Test
+    public void testStripedRecyclerNeverHandsOutABufferTwice() throws Exception {
+        final BufferRecycler recycler = new StripedBufferRecycler(2, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        for (int i = 0; i < 10000; i++) {
+                            byte[] buffer = recycler.allocByteBuffer(0, 4000);
+                            buffer[0] = 0;
+                            buffer[0]++;
+                            Assert.assertEquals(1, buffer[0]);
+                            recycler.releaseByteBuffer(0, buffer);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPoolNames() {
+        Assert.assertSame(BufferRecyclerPools.threadLocal(), BufferRecyclerPools.forName(null));
+        Assert.assertSame(BufferRecyclerPools.threadLocal(), BufferRecyclerPools.forName("thread-local"));
+        Assert.assertSame(BufferRecyclerPools.shared(), BufferRecyclerPools.forName("shared"));
+        Assert.assertTrue(BufferRecyclerPools.shared().getBufferRecycler() instanceof StripedBufferRecycler);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownPoolName() {
+        BufferRecyclerPools.forName("no.such.Pool");
+    }
+
+    @Test
+    public void testConfiguredPool() {
+        MimeConfig config = MimeConfig.custom().setBufferRecyclerPool(BufferRecyclerPools.shared()).build();
+        Assert.assertSame(BufferRecyclerPools.shared(), config.getBufferRecyclerPool());
+        Assert.assertSame(BufferRecyclerPools.shared(), MimeConfig.copy(config).build().getBufferRecyclerPool());
+        Assert.assertSame(BufferRecyclerPools.getDefault(), MimeConfig.DEFAULT.getBufferRecyclerPool());
+    }
+
+    @Test
+    public void testParseWithSharedPool() throws Exception {
+        MimeConfig config = MimeConfig.custom().setBufferRecyclerPool(BufferRecyclerPools.shared()).build();
+        String message = "Content-Type: multipart/mixed; boundary=foo\r\n\r\n"
+                + "--foo\r\n\r\nfirst\r\n--foo\r\n\r\nsecond\r\n--foo--\r\n";
+        for (int i = 0; i < 3; i++) {
+            MimeTokenStream stream = new MimeTokenStream(config);
+            stream.parse(new ByteArrayInputStream(ContentUtil.toAsciiByteArray(message)));
+            StringBuilder bodies = new StringBuilder();
+            for (EntityState state = stream.getState(); state != EntityState.T_END_OF_STREAM; state = stream.next()) {
+                if (state == EntityState.T_BODY) {
+                    bodies.append(ContentUtil.buffer(stream.getInputStream()).length).append(' ');
+                }
+            }
+            stream.stop();
+            Assert.assertEquals("5 6 ", bodies.toString());
+        }
+    }
+
+}
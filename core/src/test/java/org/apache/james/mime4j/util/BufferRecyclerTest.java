@@ -0,0 +1,123 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferRecyclerTest {
+
+    @Test
+    public void testSizesAreRoundedUpToPowerOfTwo() {
+        BufferRecycler recycler = new BufferRecycler();
+        Assert.assertEquals(4096, recycler.allocByteBuffer(0).length);
+        Assert.assertEquals(8192, recycler.allocByteBuffer(0, 5000).length);
+        Assert.assertEquals(4096, recycler.allocCharBuffer(0, 10).length);
+        Assert.assertEquals(256, recycler.allocintBuffer(100).length);
+    }
+
+    @Test
+    public void testBuffersAreReusedBySizeClass() {
+        BufferRecycler recycler = new BufferRecycler();
+        byte[] buffer = recycler.allocByteBuffer(0, 5000);
+        recycler.releaseByteBuffer(1, buffer);
+        // the index is only a hint, any buffer of the class fits
+        Assert.assertSame(buffer, recycler.allocByteBuffer(0, 6000));
+        recycler.releaseByteBuffer(0, buffer);
+        // a buffer of a smaller class does not fit
+        Assert.assertNotSame(buffer, recycler.allocByteBuffer(0, 9000));
+        // but serves smaller requests of its own class only
+        Assert.assertNotSame(buffer, recycler.allocByteBuffer(0, 4096));
+        Assert.assertSame(buffer, recycler.allocByteBuffer(0, 8192));
+    }
+
+    @Test
+    public void testBufferOfOddSizeServesSmallerClass() {
+        BufferRecycler recycler = new BufferRecycler();
+        byte[] buffer = new byte[6000];
+        recycler.releaseByteBuffer(0, buffer);
+        Assert.assertNotSame(buffer, recycler.allocByteBuffer(0, 6000));
+        Assert.assertSame(buffer, recycler.allocByteBuffer(0, 4096));
+    }
+
+    @Test
+    public void testRetainsBoundedNumberOfBuffersPerClass() {
+        BufferRecycler recycler = new BufferRecycler(2, BufferRecycler.DEFAULT_MAX_BUFFER_SIZE);
+        char[] first = recycler.allocCharBuffer(0);
+        char[] second = recycler.allocCharBuffer(0);
+        char[] third = recycler.allocCharBuffer(0);
+        recycler.releaseCharBuffer(0, first);
+        recycler.releaseCharBuffer(0, second);
+        recycler.releaseCharBuffer(0, third);
+        Assert.assertEquals(2 * 2 * 4096, recycler.getRetainedBytes());
+        Assert.assertSame(second, recycler.allocCharBuffer(0));
+        Assert.assertSame(first, recycler.allocCharBuffer(0));
+        Assert.assertNotSame(third, recycler.allocCharBuffer(0));
+    }
+
+    @Test
+    public void testOversizedBuffersAreNotRetained() {
+        BufferRecycler recycler = new BufferRecycler(4, 64 * 1024);
+        byte[] huge = recycler.allocByteBuffer(0, 50 * 1024 * 1024);
+        Assert.assertEquals(50 * 1024 * 1024, huge.length);
+        recycler.releaseByteBuffer(0, huge);
+        Assert.assertEquals(0, recycler.getRetainedBytes());
+        Assert.assertNotSame(huge, recycler.allocByteBuffer(0, 50 * 1024 * 1024));
+
+        byte[] large = recycler.allocByteBuffer(0, 64 * 1024);
+        recycler.releaseByteBuffer(0, large);
+        Assert.assertEquals(64 * 1024, recycler.getRetainedBytes());
+    }
+
+    @Test
+    public void testMetrics() {
+        BufferRecycler recycler = new BufferRecycler();
+        byte[] bytes = recycler.allocByteBuffer(0);
+        int[] ints = recycler.allocintBuffer(256);
+        Assert.assertEquals(0, recycler.getHits());
+        Assert.assertEquals(2, recycler.getMisses());
+
+        recycler.releaseByteBuffer(0, bytes);
+        recycler.releaseIntBuffer(ints);
+        Assert.assertEquals(4096 + 4 * 256, recycler.getRetainedBytes());
+
+        recycler.allocByteBuffer(0);
+        Assert.assertEquals(1, recycler.getHits());
+        Assert.assertEquals(4 * 256, recycler.getRetainedBytes());
+        Assert.assertEquals(4096 + 4 * 256, recycler.getPeakRetainedBytes());
+    }
+
+    @Test
+    public void testStripedRecyclerMetrics() {
+        BufferRecycler recycler = new StripedBufferRecycler(1, 1, 8192);
+        byte[] first = recycler.allocByteBuffer(0);
+        byte[] second = recycler.allocByteBuffer(0);
+        recycler.releaseByteBuffer(0, first);
+        recycler.releaseByteBuffer(0, second);
+        recycler.releaseByteBuffer(0, new byte[16384]);
+        Assert.assertEquals(4096, recycler.getRetainedBytes());
+        Assert.assertSame(first, recycler.allocByteBuffer(0));
+        Assert.assertEquals(1, recycler.getHits());
+        Assert.assertEquals(2, recycler.getMisses());
+        Assert.assertEquals(0, recycler.getRetainedBytes());
+        Assert.assertEquals(4096, recycler.getPeakRetainedBytes());
+    }
+
+}
@@ -0,0 +1,86 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.util;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteScannerTest {
+
+    private static int naiveIndexOf(byte[] buf, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testIndexOfMatchesNaiveScan() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            byte[] buf = new byte[random.nextInt(64) + 1];
+            for (int i = 0; i < buf.length; i++) {
+                // small alphabet so that matches (and near-matches) are frequent
+                buf[i] = (byte) (random.nextInt(4) == 0 ? '\n' : random.nextInt(256));
+            }
+            ByteBuffer view = ByteScanner.longView(buf);
+            int from = random.nextInt(buf.length);
+            int to = from + random.nextInt(buf.length - from + 1);
+            for (byte b : new byte[] {'\n', 0, (byte) 0x80, (byte) 0xff, 0x0b, 0x09}) {
+                int expected = naiveIndexOf(buf, b, from, to);
+                Assert.assertEquals(expected, ByteScanner.indexOf(buf, view, b, from, to));
+                Assert.assertEquals(expected, ByteScanner.indexOf(buf, null, b, from, to));
+            }
+        }
+    }
+
+    @Test
+    public void testIndexOfAny() throws Exception {
+        byte[] buf = ContentUtil.toAsciiByteArray("abcdefghijklmnop=qrstuvwxyz\r\n");
+        ByteBuffer view = ByteScanner.longView(buf);
+        Assert.assertEquals(16, ByteScanner.indexOfAny(buf, view, (byte) '=', (byte) '\r', 0, buf.length));
+        Assert.assertEquals(27, ByteScanner.indexOfAny(buf, view, (byte) '=', (byte) '\r', 17, buf.length));
+        Assert.assertEquals(-1, ByteScanner.indexOfAny(buf, view, (byte) '=', (byte) '\r', 0, 16));
+    }
+
+    @Test
+    public void testIndexOfNonAscii() throws Exception {
+        byte[] buf = new byte[40];
+        for (int i = 0; i < buf.length; i++) {
+            buf[i] = 'a';
+        }
+        ByteBuffer view = ByteScanner.longView(buf);
+        Assert.assertEquals(-1, ByteScanner.indexOfNonAscii(buf, view, 0, buf.length));
+        buf[37] = (byte) 0xc3;
+        buf[21] = (byte) 0x80;
+        Assert.assertEquals(21, ByteScanner.indexOfNonAscii(buf, view, 0, buf.length));
+        Assert.assertEquals(37, ByteScanner.indexOfNonAscii(buf, view, 22, buf.length));
+        Assert.assertEquals(37, ByteScanner.indexOfNonAscii(buf, null, 22, buf.length));
+        Assert.assertEquals(-1, ByteScanner.indexOfNonAscii(buf, view, 22, 37));
+        Assert.assertEquals(21, ByteScanner.indexOfNonAscii(buf, 0, buf.length));
+        Assert.assertEquals(37, ByteScanner.indexOfNonAscii(buf, 30, buf.length));
+    }
+
+}
@@ -19,7 +19,9 @@
 
 package org.apache.james.mime4j.util;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
 
 import org.apache.james.mime4j.Charsets;
 import org.junit.Assert;
@@ -62,4 +64,31 @@ public class CharsetUtilTest {
         Assert.assertNull(c1);
     }
 
+    @Test
+    public void testCharsetLookupAliases() {
+        Assert.assertEquals(Charsets.UTF_8, CharsetUtil.lookup("utf8mb4"));
+        Assert.assertEquals(Charsets.UTF_8, CharsetUtil.lookup("UTF8MB4"));
+        Assert.assertEquals(Charsets.UTF_8, CharsetUtil.lookup(" \"utf-8\" "));
+        Assert.assertEquals(Charsets.ISO_8859_1, CharsetUtil.lookup("latin-1"));
+        Assert.assertEquals(Charset.forName("windows-1252"), CharsetUtil.lookup("win-1252"));
+    }
+
+    @Test
+    public void testCharsetLookupFailureIsCached() {
+        Assert.assertNull(CharsetUtil.lookup("x-unknown"));
+        Assert.assertNull(CharsetUtil.lookup("X-Unknown"));
+        Assert.assertNull(CharsetUtil.lookup("not a charset"));
+        Assert.assertNull(CharsetUtil.lookup(""));
+    }
+
+    @Test
+    public void testDecoderIsReusedByThread() throws Exception {
+        CharsetDecoder decoder = CharsetUtil.decoder(Charsets.UTF_8);
+        Assert.assertSame(decoder, CharsetUtil.decoder(Charsets.UTF_8));
+        Assert.assertNotSame(decoder, CharsetUtil.decoder(Charsets.ISO_8859_1));
+        Assert.assertSame(decoder, CharsetUtil.decoder(Charsets.UTF_8));
+        // malformed input is replaced
+        Assert.assertEquals("a\ufffd", decoder.decode(ByteBuffer.wrap(new byte[] { 'a', (byte) 0xff })).toString());
+    }
+
 }
@@ -0,0 +1,60 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.util;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContentUtilTest {
+
+    @Test
+    public void testDecodeAsciiAndHighBytes() throws Exception {
+        byte[] ascii = "Subject: plain ascii header text".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertEquals("plain ascii header text",
+                ContentUtil.decode(StandardCharsets.UTF_8, ascii, 9, ascii.length - 9));
+
+        byte[] utf8 = "Subject: café crème brûlée".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals("café crème brûlée",
+                ContentUtil.decode(StandardCharsets.UTF_8, utf8, 9, utf8.length - 9));
+
+        // ascii bytes do not mean ascii chars in every charset
+        byte[] utf16 = "ab".getBytes(StandardCharsets.UTF_16BE);
+        Assert.assertEquals("ab", ContentUtil.decode(StandardCharsets.UTF_16BE, utf16, 0, utf16.length));
+    }
+
+    @Test
+    public void testDecodeByteSequence() throws Exception {
+        ByteArrayBuffer buf = new ByteArrayBuffer(64);
+        byte[] bytes = "To: Jürgen <juergen@example.com>".getBytes(StandardCharsets.UTF_8);
+        buf.append(bytes, 0, bytes.length);
+
+        Assert.assertEquals("Jürgen <juergen@example.com>",
+                ContentUtil.decode(buf, 4, buf.length() - 4, StandardCharsets.UTF_8));
+        Assert.assertEquals("<juergen@example.com>",
+                ContentUtil.decode(buf, 12, buf.length() - 12, StandardCharsets.UTF_8));
+        Assert.assertEquals("JÃ¼rgen", ContentUtil.decode(buf, 4, 7));
+
+        ByteArraySequence seq = new ByteArraySequence(bytes, 4, bytes.length - 4);
+        Assert.assertEquals("Jürgen <juergen@example.com>",
+                ContentUtil.decode(seq, 0, seq.length(), StandardCharsets.UTF_8));
+    }
+
+}
@@ -19,20 +19,18 @@
 
 package org.apache.james.mime4j.dom.field;
 
-import java.util.Locale;
-
 /**
  * Constants for common header field names.
  */
 public class FieldName {
 
     public static final String CONTENT_TYPE = "Content-Type";
-    public static final String CONTENT_TYPE_LOWERCASE = CONTENT_TYPE.toLowerCase(Locale.US);
+    public static final String CONTENT_TYPE_LOWERCASE = "content-type";
     public static final String CONTENT_LENGTH = "Content-Length";
     public static final String CONTENT_TRANSFER_ENCODING = "Content-Transfer-Encoding";
-    public static final String CONTENT_TRANSFER_ENCODING_LOWERCASE = CONTENT_TRANSFER_ENCODING.toLowerCase(Locale.US);
+    public static final String CONTENT_TRANSFER_ENCODING_LOWERCASE = "content-transfer-encoding";
     public static final String CONTENT_DISPOSITION = "Content-Disposition";
-    public static final String CONTENT_DISPOSITION_LOWERCASE = CONTENT_DISPOSITION.toLowerCase(Locale.US);
+    public static final String CONTENT_DISPOSITION_LOWERCASE = "content-disposition";
     public static final String CONTENT_ID = "Content-ID";
     public static final String CONTENT_MD5 = "Content-MD5";
     public static final String CONTENT_DESCRIPTION = "Content-Description";
@@ -40,26 +38,26 @@ public class FieldName {
     public static final String CONTENT_LOCATION = "Content-Location";
 
     public static final String MIME_VERSION = "MIME-Version";
-    public static final String MIME_VERSION_LOWERCASE = MIME_VERSION.toLowerCase(Locale.US);
+    public static final String MIME_VERSION_LOWERCASE = "mime-version";
     public static final String DATE = "Date";
-    public static final String DATE_LOWERCASE = DATE.toLowerCase(Locale.US);
+    public static final String DATE_LOWERCASE = "date";
     public static final String MESSAGE_ID = "Message-ID";
-    public static final String MESSAGE_ID_LOWERCASE = MESSAGE_ID.toLowerCase(Locale.US);
+    public static final String MESSAGE_ID_LOWERCASE = "message-id";
     public static final String SUBJECT = "Subject";
-    public static final String SUBJECT_LOWERCASE = SUBJECT.toLowerCase(Locale.US);
+    public static final String SUBJECT_LOWERCASE = "subject";
 
     public static final String FROM = "From";
-    public static final String FROM_LOWERCASE = FROM.toLowerCase(Locale.US);
+    public static final String FROM_LOWERCASE = "from";
     public static final String SENDER = "Sender";
-    public static final String SENDER_LOWERCASE = SENDER.toLowerCase(Locale.US);
+    public static final String SENDER_LOWERCASE = "sender";
     public static final String TO = "To";
-    public static final String TO_LOWERCASE = TO.toLowerCase(Locale.US);
+    public static final String TO_LOWERCASE = "to";
     public static final String CC = "Cc";
-    public static final String CC_LOWERCASE = CC.toLowerCase(Locale.US);
+    public static final String CC_LOWERCASE = "cc";
     public static final String BCC = "Bcc";
-    public static final String BCC_LOWERCASE = BCC.toLowerCase(Locale.US);
+    public static final String BCC_LOWERCASE = "bcc";
     public static final String REPLY_TO = "Reply-To";
-    public static final String REPLY_TO_LOWERCASE = REPLY_TO.toLowerCase(Locale.US);
+    public static final String REPLY_TO_LOWERCASE = "reply-to";
 
     public static final String RESENT_DATE = "Resent-Date";
 
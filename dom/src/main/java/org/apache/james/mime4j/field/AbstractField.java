@@ -22,6 +22,7 @@ package org.apache.james.mime4j.field;
 import org.apache.james.mime4j.codec.DecodeMonitor;
 import org.apache.james.mime4j.dom.field.ParseException;
 import org.apache.james.mime4j.dom.field.ParsedField;
+import org.apache.james.mime4j.stream.CanonicalFieldName;
 import org.apache.james.mime4j.stream.Field;
 import org.apache.james.mime4j.stream.RawField;
 import org.apache.james.mime4j.util.ByteSequence;
@@ -61,6 +62,11 @@ public abstract class AbstractField implements ParsedField {
         return rawField.getNameLowerCase();
     }
 
+    @Override
+    public CanonicalFieldName getCanonicalName() {
+        return rawField.getCanonicalName();
+    }
+
     /**
      * Gets the unfolded, unparsed and possibly encoded (see RFC 2047) field
      * body string.
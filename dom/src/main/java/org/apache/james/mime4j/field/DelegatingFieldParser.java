@@ -25,17 +25,21 @@ import java.util.Map;
 import org.apache.james.mime4j.codec.DecodeMonitor;
 import org.apache.james.mime4j.dom.FieldParser;
 import org.apache.james.mime4j.dom.field.ParsedField;
+import org.apache.james.mime4j.stream.CanonicalFieldName;
 import org.apache.james.mime4j.stream.Field;
 
 public class DelegatingFieldParser implements FieldParser<ParsedField> {
 
     private final FieldParser<? extends ParsedField> defaultParser;
     private final Map<String, FieldParser<? extends ParsedField>> parsers;
+    // parsers of the well-known names, indexed by canonical name ordinal
+    private final FieldParser<?>[] knownParsers;
 
     public DelegatingFieldParser(final FieldParser<? extends ParsedField> defaultParser) {
         super();
         this.defaultParser = defaultParser;
         this.parsers = new HashMap<String, FieldParser<? extends ParsedField>>();
+        this.knownParsers = new FieldParser<?>[CanonicalFieldName.count()];
     }
 
     /**
@@ -44,10 +48,19 @@ public class DelegatingFieldParser implements FieldParser<ParsedField> {
      * @param parser the parser for fields named <code>name</code>
      */
     public void setFieldParser(final String name, final FieldParser<? extends ParsedField> parser) {
-        parsers.put(name.toLowerCase(), parser);
+        CanonicalFieldName canonical = CanonicalFieldName.lookup(name);
+        if (canonical != null) {
+            knownParsers[canonical.ordinal()] = parser;
+        } else {
+            parsers.put(name.toLowerCase(), parser);
+        }
     }
 
     public FieldParser<? extends ParsedField> getParser(final String name) {
+        CanonicalFieldName canonical = CanonicalFieldName.lookup(name);
+        if (canonical != null) {
+            return getParser(canonical);
+        }
         final FieldParser<? extends ParsedField> field = parsers.get(name.toLowerCase());
         if (field == null) {
             return defaultParser;
@@ -55,7 +68,19 @@ public class DelegatingFieldParser implements FieldParser<ParsedField> {
         return field;
     }
 
+    private FieldParser<? extends ParsedField> getParser(final CanonicalFieldName canonical) {
+        final FieldParser<? extends ParsedField> field = knownParsers[canonical.ordinal()];
+        if (field == null) {
+            return defaultParser;
+        }
+        return field;
+    }
+
     private FieldParser<? extends ParsedField> getParser(final Field rawField) {
+        CanonicalFieldName canonical = rawField.getCanonicalName();
+        if (canonical != null) {
+            return getParser(canonical);
+        }
         final FieldParser<? extends ParsedField> field = parsers.get(rawField.getNameLowerCase());
         if (field == null) {
             return defaultParser;
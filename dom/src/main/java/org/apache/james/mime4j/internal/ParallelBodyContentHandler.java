@@ -0,0 +1,248 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.codec.Base64InputStream;
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.codec.QuotedPrintableInputStream;
+import org.apache.james.mime4j.dom.Entity;
+import org.apache.james.mime4j.dom.field.FieldName;
+import org.apache.james.mime4j.io.MappedInputStream;
+import org.apache.james.mime4j.message.BodyFactory;
+import org.apache.james.mime4j.message.MessageImplFactory;
+import org.apache.james.mime4j.stream.BodyDescriptor;
+import org.apache.james.mime4j.stream.Field;
+import org.apache.james.mime4j.util.MimeUtil;
+
+/**
+ * A {@link ParserStreamContentHandler} decoding and storing the leaf bodies of
+ * a message in parallel.
+ * <p>
+ * The parser must report raw (not decoded) content. While it searches for
+ * the boundaries, the body of every leaf entity is only skipped, and its
+ * position in the source is used to decode and store it from a slice of the
+ * source, on the given executor. Entities nested in a base64 or
+ * quoted-printable encoded message are located by the parser in the decoded
+ * content, not in the source, so their bodies are decoded and stored on the
+ * parsing thread instead. {@link #awaitBodies()} must be called once
+ * the parser is done. The body factory and the decode monitor must be safe
+ * for use by several threads.
+ */
+public class ParallelBodyContentHandler extends ParserStreamContentHandler {
+
+    /** Bodies shorter than this are decoded on the parsing thread */
+    private static final int MIN_PARALLEL_LENGTH = 8 * 1024;
+
+    private final MappedInputStream source;
+    private final long offset;
+    private final Executor executor;
+    private final DecodeMonitor monitor;
+    private final boolean contentDecoding;
+    private final List<FutureTask<Void>> tasks;
+    private volatile boolean cancelled;
+
+    // transfer encoding of the last header, the one of an embedded message
+    private String transferEncoding;
+    private int messageDepth;
+    // depth of the outermost message with an encoded content, or 0
+    private int encodedDepth;
+
+    /**
+     * @param entity the entity to build.
+     * @param messageImplFactory factory of embedded messages.
+     * @param bodyFactory factory of the leaf bodies.
+     * @param source the parsed content, parsing must start at its current position.
+     * @param executor executor decoding and storing the bodies.
+     * @param monitor monitor of transfer decoding errors.
+     * @param contentDecoding whether to decode the content transfer encoding.
+     */
+    public ParallelBodyContentHandler(
+            final Entity entity,
+            final MessageImplFactory messageImplFactory,
+            final BodyFactory bodyFactory,
+            final MappedInputStream source,
+            final Executor executor,
+            final DecodeMonitor monitor,
+            final boolean contentDecoding) {
+        super(entity, messageImplFactory, bodyFactory);
+        this.source = source;
+        this.offset = source.position();
+        this.executor = executor;
+        this.monitor = monitor;
+        this.contentDecoding = contentDecoding;
+        this.tasks = new ArrayList<FutureTask<Void>>();
+    }
+
+    @Override
+    public void startMessage() throws MimeException {
+        super.startMessage();
+        messageDepth++;
+        if (encodedDepth == 0 && (MimeUtil.isBase64Encoding(transferEncoding)
+                || MimeUtil.isQuotedPrintableEncoded(transferEncoding))) {
+            encodedDepth = messageDepth;
+        }
+    }
+
+    @Override
+    public void endMessage() throws MimeException {
+        super.endMessage();
+        if (messageDepth == encodedDepth) {
+            encodedDepth = 0;
+        }
+        messageDepth--;
+    }
+
+    @Override
+    public void startHeader() throws MimeException {
+        super.startHeader();
+        transferEncoding = null;
+    }
+
+    @Override
+    public void field(Field field) throws MimeException {
+        super.field(field);
+        if (FieldName.CONTENT_TRANSFER_ENCODING.equalsIgnoreCase(field.getName())) {
+            transferEncoding = field.getBody().trim();
+        }
+    }
+
+    @Override
+    protected void body(
+            final Entity entity,
+            final BodyDescriptor bd,
+            final InputStream is) throws MimeException, IOException {
+        if (encodedDepth > 0) {
+            // positions are relative to the decoded message, not to the source
+            entity.setBody(createBody(bd, decodedStream(bd, is)));
+            return;
+        }
+        long length = 0;
+        long n;
+        while ((n = is.skip(Long.MAX_VALUE)) > 0) {
+            length += n;
+        }
+        final InputStream content = source.slice(offset + bd.getBodyStartByte(), length);
+        FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+            public Void call() throws IOException {
+                if (cancelled) {
+                    return null;
+                }
+                entity.setBody(createBody(bd, decodedStream(bd, content)));
+                return null;
+            }
+        });
+        if (length < MIN_PARALLEL_LENGTH) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+        tasks.add(task);
+    }
+
+    private InputStream decodedStream(BodyDescriptor bd, InputStream instream) {
+        if (contentDecoding) {
+            String transferEncoding = bd.getTransferEncoding();
+            if (MimeUtil.isBase64Encoding(transferEncoding)) {
+                return new Base64InputStream(instream, monitor);
+            } else if (MimeUtil.isQuotedPrintableEncoded(transferEncoding)) {
+                return new QuotedPrintableInputStream(instream, monitor);
+            }
+        }
+        return instream;
+    }
+
+    /**
+     * Gives up on the bodies, when parsing failed: the bodies not being
+     * decoded yet are skipped, and the ones being decoded are waited for, so
+     * that no body is set once this method returns. Failures are ignored.
+     */
+    public void cancelBodies() {
+        cancelled = true;
+        boolean interrupted = false;
+        try {
+            for (FutureTask<Void> task : tasks) {
+                while (true) {
+                    try {
+                        task.get();
+                        break;
+                    } catch (ExecutionException ex) {
+                        break;
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+            }
+        } finally {
+            tasks.clear();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits for all the bodies to be set.
+     *
+     * @throws IOException the first failure to decode or store a body.
+     */
+    public void awaitBodies() throws IOException {
+        Throwable failure = null;
+        try {
+            for (FutureTask<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            for (FutureTask<Void> task : tasks) {
+                task.cancel(false);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding bodies");
+        } finally {
+            tasks.clear();
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new IOException(failure);
+        }
+    }
+
+}
@@ -124,15 +124,30 @@ public class ParserStreamContentHandler implements ContentHandler {
     public void body(BodyDescriptor bd, final InputStream is) throws MimeException, IOException {
         expect(Entity.class);
 
-        final Body body;
+        Entity entity = ((Entity) stack.peek());
+        body(entity, bd, is);
+    }
+
+    /**
+     * Sets the body of a leaf entity.
+     *
+     * @param entity the entity the body belongs to.
+     * @param bd descriptor of the body.
+     * @param is content of the body.
+     */
+    protected void body(Entity entity, BodyDescriptor bd, InputStream is) throws MimeException, IOException {
+        entity.setBody(createBody(bd, is));
+    }
+
+    /**
+     * Creates a body through the body factory of this handler.
+     */
+    protected Body createBody(BodyDescriptor bd, InputStream is) throws IOException {
         if (bd.getMimeType().startsWith("text/")) {
-            body = bodyFactory.textBody(is, bd.getCharset());
+            return bodyFactory.textBody(is, bd.getCharset());
         } else {
-            body = bodyFactory.binaryBody(is);
+            return bodyFactory.binaryBody(is);
         }
-
-        Entity entity = ((Entity) stack.peek());
-        entity.setBody(body);
     }
 
     public void endMultipart() throws MimeException {
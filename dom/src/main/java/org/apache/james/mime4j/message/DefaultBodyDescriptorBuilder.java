@@ -58,9 +58,9 @@ public class DefaultBodyDescriptorBuilder implements BodyDescriptorBuilder {
     private final DecodeMonitor monitor;
     private final FieldParser<? extends ParsedField> fieldParser;
     private final Map<String, ParsedField> fields;
-    private int headerStartByte;
-    private int bodyStartByte;
-    private int bodyEndByte;
+    private long headerStartByte;
+    private long bodyStartByte;
+    private long bodyEndByte;
     private Charset defaultCharset = StandardCharsets.US_ASCII;
 
     /**
@@ -168,17 +168,17 @@ public class DefaultBodyDescriptorBuilder implements BodyDescriptorBuilder {
     }
 
     @Override
-    public void setHeaderStartByte(int headerStartByte) {
+    public void setHeaderStartByte(long headerStartByte) {
         this.headerStartByte = headerStartByte;
     }
 
     @Override
-    public void setBodyStartByte(int bodyStartByte) {
+    public void setBodyStartByte(long bodyStartByte) {
         this.bodyStartByte = bodyStartByte;
     }
 
     @Override
-    public void setBodyEndByte(int bodyEndByte) {
+    public void setBodyEndByte(long bodyEndByte) {
         this.bodyEndByte = bodyEndByte;
     }
 }
@@ -21,7 +21,9 @@ package org.apache.james.mime4j.message;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.concurrent.Executor;
 
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.MimeIOException;
@@ -38,13 +40,17 @@ import org.apache.james.mime4j.dom.SingleBody;
 import org.apache.james.mime4j.dom.field.ParsedField;
 import org.apache.james.mime4j.field.DefaultFieldParser;
 import org.apache.james.mime4j.field.LenientFieldParser;
+import org.apache.james.mime4j.internal.ParallelBodyContentHandler;
 import org.apache.james.mime4j.internal.ParserStreamContentHandler;
-import org.apache.james.mime4j.parser.AbstractContentHandler;
+import org.apache.james.mime4j.io.MappedInputStream;
 import org.apache.james.mime4j.parser.MimeStreamParser;
 import org.apache.james.mime4j.stream.BodyDescriptorBuilder;
+import org.apache.james.mime4j.stream.EntityState;
 import org.apache.james.mime4j.stream.Field;
 import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimeTokenStream;
 import org.apache.james.mime4j.stream.NameValuePair;
+import org.apache.james.mime4j.stream.RecursionMode;
 
 /**
  * Default implementation of {@link MessageBuilder}.
@@ -59,6 +65,7 @@ public class DefaultMessageBuilder implements MessageBuilder {
     private boolean contentDecoding = true;
     private boolean flatMode = false;
     private DecodeMonitor monitor = null;
+    private Executor executor = null;
 
     public DefaultMessageBuilder() {
         super();
@@ -96,6 +103,23 @@ public class DefaultMessageBuilder implements MessageBuilder {
         this.flatMode = flatMode;
     }
 
+    /**
+     * Sets the executor decoding and storing the leaf bodies of messages parsed
+     * from a random access source: a {@link MappedInputStream}, including
+     * content held in memory (see {@link MappedInputStream#wrap(java.nio.ByteBuffer)}),
+     * or a file (see {@link #parseMessage(Path)}). The boundaries are searched
+     * for on the calling thread while the bodies are decoded in parallel. Both
+     * the body factory and the decode monitor must then be thread-safe.
+     * <p>
+     * Messages read from other streams are still parsed on the calling thread.
+     *
+     * @param executor executor such as a {@link java.util.concurrent.ForkJoinPool},
+     *        or <code>null</code> to decode the bodies on the calling thread.
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
     /**
      * Creates a new <code>Header</code> from the specified
      * <code>Header</code>. The <code>Header</code> instance is initialized
@@ -266,31 +290,43 @@ public class DefaultMessageBuilder implements MessageBuilder {
         final FieldParser<? extends ParsedField> fp = fieldParser != null ? fieldParser :
             strict ? DefaultFieldParser.getParser() : LenientFieldParser.getParser();
         final HeaderImpl header = new HeaderImpl();
-        final MimeStreamParser parser = new MimeStreamParser(cfg, mon, null);
-        parser.setContentHandler(new AbstractContentHandler() {
-            @Override
-            public void endHeader() {
-                parser.stop();
+        final MimeTokenStream stream = new MimeTokenStream(cfg, mon, null);
+        try {
+            if (cfg.getHeadlessParsing() != null) {
+                Field contentType = stream.parseHeadless(is, cfg.getHeadlessParsing());
+                header.addField(parseField(contentType, fp, mon));
+                stream.stop();
+            } else {
+                // the body is neither parsed nor read
+                stream.setRecursionMode(RecursionMode.M_HEADERS_ONLY);
+                stream.parse(is);
             }
-            @Override
-            public void field(Field field) throws MimeException {
-                ParsedField parsedField;
-                if (field instanceof ParsedField) {
-                    parsedField = (ParsedField) field;
-                } else {
-                    parsedField = fp.parse(field, mon);
+            for (EntityState state = stream.getState();
+                 state != EntityState.T_END_OF_STREAM;
+                 state = stream.next()) {
+                if (state == EntityState.T_FIELD) {
+                    header.addField(parseField(stream.getField(), fp, mon));
+                } else if (state == EntityState.T_END_HEADER) {
+                    // leave the rest of the input alone
+                    stream.stop();
                 }
-                header.addField(parsedField);
             }
-        });
-        try {
-            parser.parse(is);
         } catch (MimeException ex) {
             throw new MimeIOException(ex);
         }
         return header;
     }
 
+    private static ParsedField parseField(
+            final Field field,
+            final FieldParser<? extends ParsedField> fp,
+            final DecodeMonitor mon) {
+        if (field instanceof ParsedField) {
+            return (ParsedField) field;
+        }
+        return fp.parse(field, mon);
+    }
+
     public Message newMessage() {
         return newMessageImpl();
     }
@@ -311,21 +347,51 @@ public class DefaultMessageBuilder implements MessageBuilder {
                     strict ? DefaultFieldParser.getParser() : LenientFieldParser.getParser(), mon);
             BodyFactory bf = bodyFactory != null ? bodyFactory : new BasicBodyFactory(!strict);
             MimeStreamParser parser = new MimeStreamParser(cfg, mon, bdb);
-            parser.setContentHandler(new ParserStreamContentHandler(message, bf));
-            parser.setContentDecoding(contentDecoding);
+            ParallelBodyContentHandler parallelHandler = null;
+            if (executor != null && is instanceof MappedInputStream) {
+                parallelHandler = new ParallelBodyContentHandler(message, new DefaultMessageImplFactory(), bf,
+                        (MappedInputStream) is, executor, mon, contentDecoding);
+                parser.setContentHandler(parallelHandler);
+                parser.setContentDecoding(false);
+            } else {
+                parser.setContentHandler(new ParserStreamContentHandler(message, bf));
+                parser.setContentDecoding(contentDecoding);
+            }
             if (flatMode) {
                 parser.setFlat();
             } else {
                 parser.setRecurse();
             }
-            parser.parse(is);
+            boolean parsed = false;
+            try {
+                parser.parse(is);
+                parsed = true;
+            } finally {
+                if (parallelHandler != null && !parsed) {
+                    parallelHandler.cancelBodies();
+                }
+            }
             parser.stop();
+            if (parallelHandler != null) {
+                parallelHandler.awaitBodies();
+            }
             return message;
         } catch (MimeException e) {
             throw new MimeIOException(e);
         }
     }
 
+    /**
+     * Parses the given file, read through memory mapped windows (see
+     * {@link MappedInputStream}).
+     *
+     * @see #parseMessage(InputStream)
+     * @see #setExecutor(Executor)
+     */
+    public Message parseMessage(final Path path) throws IOException, MimeIOException {
+        return parseMessage(MappedInputStream.map(path));
+    }
+
     private MessageImpl newMessageImpl() {
         MessageImplFactory mif = messageImplFactory != null ? messageImplFactory : new DefaultMessageImplFactory();
         return mif.messageImpl();
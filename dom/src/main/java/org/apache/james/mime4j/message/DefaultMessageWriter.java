@@ -37,6 +37,7 @@ import org.apache.james.mime4j.dom.field.ContentTypeField;
 import org.apache.james.mime4j.dom.field.FieldName;
 import org.apache.james.mime4j.stream.Field;
 import org.apache.james.mime4j.util.ByteArrayBuffer;
+import org.apache.james.mime4j.util.ByteArraySequence;
 import org.apache.james.mime4j.util.ByteSequence;
 import org.apache.james.mime4j.util.ContentUtil;
 import org.apache.james.mime4j.util.MimeUtil;
@@ -276,6 +277,9 @@ public class DefaultMessageWriter implements MessageWriter {
         } else if (byteSequence instanceof RecycledByteArrayBuffer) {
             RecycledByteArrayBuffer bab = (RecycledByteArrayBuffer) byteSequence;
             out.write(bab.buffer(), 0, bab.length());
+        } else if (byteSequence instanceof ByteArraySequence) {
+            ByteArraySequence bas = (ByteArraySequence) byteSequence;
+            out.write(bas.buffer(), bas.offset(), bas.length());
         } else {
             out.write(byteSequence.toByteArray());
         }
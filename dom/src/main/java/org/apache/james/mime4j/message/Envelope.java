@@ -0,0 +1,91 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.message;
+
+import java.util.Date;
+
+import org.apache.james.mime4j.dom.address.AddressList;
+import org.apache.james.mime4j.dom.address.MailboxList;
+
+/**
+ * The fields of a message header used to route it: <i>From</i>, <i>To</i>,
+ * <i>Cc</i>, <i>Subject</i>, <i>Message-ID</i> and <i>Date</i>, as returned by
+ * {@link EnvelopeExtractor}. Each value is <code>null</code> if the field is
+ * not present or cannot be parsed.
+ */
+public final class Envelope {
+
+    private final MailboxList from;
+    private final AddressList to;
+    private final AddressList cc;
+    private final String subject;
+    private final String messageId;
+    private final Date date;
+
+    Envelope(
+            MailboxList from,
+            AddressList to,
+            AddressList cc,
+            String subject,
+            String messageId,
+            Date date) {
+        this.from = from;
+        this.to = to;
+        this.cc = cc;
+        this.subject = subject;
+        this.messageId = messageId;
+        this.date = date;
+    }
+
+    public MailboxList getFrom() {
+        return from;
+    }
+
+    public AddressList getTo() {
+        return to;
+    }
+
+    public AddressList getCc() {
+        return cc;
+    }
+
+    /**
+     * @return the decoded subject.
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    @Override
+    public String toString() {
+        return "[from=" + from + ", to=" + to + ", cc=" + cc
+                + ", subject=" + subject + ", messageId=" + messageId
+                + ", date=" + date + "]";
+    }
+
+}
@@ -0,0 +1,168 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.MimeIOException;
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.dom.FieldParser;
+import org.apache.james.mime4j.dom.address.AddressList;
+import org.apache.james.mime4j.dom.address.MailboxList;
+import org.apache.james.mime4j.dom.field.AddressListField;
+import org.apache.james.mime4j.dom.field.DateTimeField;
+import org.apache.james.mime4j.dom.field.FieldName;
+import org.apache.james.mime4j.dom.field.MailboxListField;
+import org.apache.james.mime4j.dom.field.ParsedField;
+import org.apache.james.mime4j.dom.field.UnstructuredField;
+import org.apache.james.mime4j.field.DefaultFieldParser;
+import org.apache.james.mime4j.field.LenientFieldParser;
+import org.apache.james.mime4j.stream.EntityState;
+import org.apache.james.mime4j.stream.FieldNameFilter;
+import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimeTokenStream;
+import org.apache.james.mime4j.stream.RecursionMode;
+
+/**
+ * Reads the {@link Envelope} of a message: only the <i>From</i>, <i>To</i>,
+ * <i>Cc</i>, <i>Subject</i>, <i>Message-ID</i> and <i>Date</i> fields are
+ * materialized, all other fields are skipped as raw bytes, and reading stops
+ * at the end of the header. When a field occurs more than once, the first
+ * occurrence is used.
+ * <p>
+ * Instances are immutable and may be shared by any number of threads.
+ */
+public class EnvelopeExtractor {
+
+    static final FieldNameFilter ENVELOPE_FIELDS = FieldNameFilter.of(
+            FieldName.FROM,
+            FieldName.TO,
+            FieldName.CC,
+            FieldName.SUBJECT,
+            FieldName.MESSAGE_ID,
+            FieldName.DATE);
+
+    private final MimeConfig config;
+    private final DecodeMonitor monitor;
+    private final FieldParser<? extends ParsedField> fieldParser;
+
+    public EnvelopeExtractor() {
+        this(null, null);
+    }
+
+    public EnvelopeExtractor(final MimeConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * @param config parser configuration, its field name filter and headless
+     *        parsing settings are ignored.
+     * @param monitor monitor of decoding errors, or <code>null</code> for the
+     *        default of the configuration.
+     */
+    public EnvelopeExtractor(final MimeConfig config, final DecodeMonitor monitor) {
+        MimeConfig cfg = config != null ? config : MimeConfig.DEFAULT;
+        boolean strict = cfg.isStrictParsing();
+        this.config = MimeConfig.copy(cfg)
+                .setFieldNameFilter(ENVELOPE_FIELDS)
+                .setHeadlessParsing(null)
+                .build();
+        this.monitor = monitor != null ? monitor :
+            strict ? DecodeMonitor.STRICT : DecodeMonitor.SILENT;
+        this.fieldParser = strict ? DefaultFieldParser.getParser() : LenientFieldParser.getParser();
+    }
+
+    /**
+     * Reads the envelope of the message read from <code>is</code>. The stream
+     * is read up to the end of the header, plus read-ahead, and is not closed.
+     *
+     * @throws IOException on I/O errors.
+     * @throws MimeIOException if the header cannot be parsed.
+     */
+    public Envelope extract(final InputStream is) throws IOException, MimeIOException {
+        MailboxList from = null;
+        AddressList to = null;
+        AddressList cc = null;
+        String subject = null;
+        String messageId = null;
+        Date date = null;
+        boolean hasFrom = false;
+        boolean hasTo = false;
+        boolean hasCc = false;
+        boolean hasSubject = false;
+        boolean hasMessageId = false;
+        boolean hasDate = false;
+
+        final MimeTokenStream stream = new MimeTokenStream(config, monitor, null);
+        stream.setRecursionMode(RecursionMode.M_HEADERS_ONLY);
+        stream.parse(is);
+        try {
+            for (EntityState state = stream.getState();
+                 state != EntityState.T_END_OF_STREAM;
+                 state = stream.next()) {
+                if (state == EntityState.T_END_HEADER) {
+                    // leave the rest of the input alone
+                    stream.stop();
+                    continue;
+                }
+                if (state != EntityState.T_FIELD) {
+                    continue;
+                }
+                ParsedField field = fieldParser.parse(stream.getField(), monitor);
+                String name = field.getNameLowerCase();
+                if (!hasFrom && name.equals(FieldName.FROM_LOWERCASE)) {
+                    hasFrom = true;
+                    if (field instanceof MailboxListField) {
+                        from = ((MailboxListField) field).getMailboxList();
+                    }
+                } else if (!hasTo && name.equals(FieldName.TO_LOWERCASE)) {
+                    hasTo = true;
+                    if (field instanceof AddressListField) {
+                        to = ((AddressListField) field).getAddressList();
+                    }
+                } else if (!hasCc && name.equals(FieldName.CC_LOWERCASE)) {
+                    hasCc = true;
+                    if (field instanceof AddressListField) {
+                        cc = ((AddressListField) field).getAddressList();
+                    }
+                } else if (!hasSubject && name.equals(FieldName.SUBJECT_LOWERCASE)) {
+                    hasSubject = true;
+                    subject = field instanceof UnstructuredField ?
+                            ((UnstructuredField) field).getValue() : field.getBody();
+                } else if (!hasMessageId && name.equals(FieldName.MESSAGE_ID_LOWERCASE)) {
+                    hasMessageId = true;
+                    messageId = field.getBody();
+                } else if (!hasDate && name.equals(FieldName.DATE_LOWERCASE)) {
+                    hasDate = true;
+                    if (field instanceof DateTimeField) {
+                        date = ((DateTimeField) field).getDate();
+                    }
+                }
+            }
+        } catch (MimeException ex) {
+            throw new MimeIOException(ex);
+        }
+        return new Envelope(from, to, cc, subject, messageId, date);
+    }
+
+}
@@ -63,9 +63,9 @@ public class MaximalBodyDescriptor implements BodyDescriptor {
     private final String mimeType;
     private final String boundary;
     private final String charset;
-    private final int headerStartByte;
-    private final int bodyStartByte;
-    private final int bodyEndByte;
+    private final long headerStartByte;
+    private final long bodyStartByte;
+    private final long bodyEndByte;
 
     private final Map<String, ParsedField> fields;
 
@@ -75,9 +75,9 @@ public class MaximalBodyDescriptor implements BodyDescriptor {
       final String subType,
       final String boundary,
       final String charset,
-      int headerStartByte,
-      int bodyStartByte,
-      int bodyEndByte, final Map<String, ParsedField> fields) {
+      long headerStartByte,
+      long bodyStartByte,
+      long bodyEndByte, final Map<String, ParsedField> fields) {
         super();
         this.mimeType = mimeType;
         this.mediaType = mediaType;
@@ -305,17 +305,17 @@ public class MaximalBodyDescriptor implements BodyDescriptor {
     }
 
     @Override
-    public int getHeaderStartByte() {
+    public long getHeaderStartByte() {
         return this.headerStartByte;
     }
 
     @Override
-    public int getBodyStartByte() {
+    public long getBodyStartByte() {
         return this.bodyStartByte;
     }
 
     @Override
-    public int getBodyEndByte() {
+    public long getBodyEndByte() {
       return this.bodyEndByte;
     }
 
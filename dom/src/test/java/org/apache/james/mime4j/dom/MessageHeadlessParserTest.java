@@ -110,4 +110,26 @@ public class MessageHeadlessParserTest {
         Multipart multipart = (Multipart) message.getBody();
         Assert.assertEquals(3, multipart.getCount());
     }
+
+    @Test
+    public void testParseHeader() throws Exception {
+        String content = "Subject: my subject\r\n"
+                + "Content-Type: text/plain; charset=UTF-8\r\n"
+                + "\r\n"
+                + "Body: not a header\r\n";
+        DefaultMessageBuilder builder = new DefaultMessageBuilder();
+        Header header = builder.parseHeader(InputStreams.create(content, Charsets.UTF_8));
+        Assert.assertEquals(2, header.getFields().size());
+        Assert.assertEquals("my subject", header.getField("Subject").getBody());
+        Assert.assertNull(header.getField("Body"));
+
+        MimeConfig config = MimeConfig.custom()
+                .setHeadlessParsing("text/html")
+                .build();
+        builder.setMimeEntityConfig(config);
+        header = builder.parseHeader(InputStreams.create(content, Charsets.UTF_8));
+        Assert.assertEquals(1, header.getFields().size());
+        Assert.assertEquals("text/html",
+                ((ContentTypeField) header.getField(FieldName.CONTENT_TYPE)).getMimeType());
+    }
 }
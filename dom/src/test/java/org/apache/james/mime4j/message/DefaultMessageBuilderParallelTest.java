@@ -0,0 +1,164 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.james.mime4j.dom.BinaryBody;
+import org.apache.james.mime4j.dom.Message;
+import org.apache.james.mime4j.dom.Multipart;
+import org.apache.james.mime4j.dom.SingleBody;
+import org.apache.james.mime4j.dom.TextBody;
+import org.apache.james.mime4j.io.MappedInputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DefaultMessageBuilderParallelTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] message() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        sb.append("Subject: attachments\r\n");
+        sb.append("Content-Type: multipart/mixed; boundary=outer\r\n\r\n");
+        sb.append("preamble\r\n");
+        sb.append("--outer\r\n");
+        sb.append("Content-Type: text/plain; charset=UTF-8\r\n");
+        sb.append("Content-Transfer-Encoding: quoted-printable\r\n\r\n");
+        for (int i = 0; i < 1000; i++) {
+            sb.append("caf=C3=A9 line ").append(i).append("=\r\n");
+        }
+        sb.append("end\r\n");
+        for (int i = 0; i < 6; i++) {
+            byte[] data = new byte[20000 + i * 1000];
+            random.nextBytes(data);
+            sb.append("--outer\r\n");
+            sb.append("Content-Type: application/octet-stream\r\n");
+            sb.append("Content-Transfer-Encoding: base64\r\n\r\n");
+            sb.append(Base64.getMimeEncoder().encodeToString(data)).append("\r\n");
+        }
+        sb.append("--outer\r\n");
+        sb.append("Content-Type: message/rfc822\r\n\r\n");
+        sb.append("Subject: inner\r\n");
+        sb.append("Content-Type: multipart/alternative; boundary=inner\r\n\r\n");
+        sb.append("--inner\r\n\r\nshort\r\n");
+        sb.append("--inner--\r\n");
+        sb.append("--outer--\r\n");
+        sb.append("epilogue\r\n");
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] write(Message message) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DefaultMessageWriter().writeMessage(message, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testParallelDecodingMatchesSequential() throws Exception {
+        byte[] raw = message();
+        DefaultMessageBuilder builder = new DefaultMessageBuilder();
+        Message expected = builder.parseMessage(new ByteArrayInputStream(raw));
+
+        builder.setExecutor(executor);
+        Message actual = builder.parseMessage(MappedInputStream.wrap(ByteBuffer.wrap(raw)));
+
+        Multipart multipart = (Multipart) actual.getBody();
+        Assert.assertEquals(8, multipart.getCount());
+        TextBody text = (TextBody) multipart.getBodyParts().get(0).getBody();
+        Assert.assertTrue(new String(readAll(text), StandardCharsets.UTF_8).startsWith("café line 0café line 1"));
+        for (int i = 1; i < 7; i++) {
+            BinaryBody binary = (BinaryBody) multipart.getBodyParts().get(i).getBody();
+            Assert.assertEquals(20000 + (i - 1) * 1000, readAll(binary).length);
+        }
+        Assert.assertArrayEquals(write(expected), write(actual));
+    }
+
+    @Test
+    public void testParallelWithoutContentDecoding() throws Exception {
+        byte[] raw = message();
+        DefaultMessageBuilder builder = new DefaultMessageBuilder();
+        builder.setContentDecoding(false);
+        Message expected = builder.parseMessage(new ByteArrayInputStream(raw));
+
+        builder.setExecutor(executor);
+        Message actual = builder.parseMessage(MappedInputStream.wrap(ByteBuffer.wrap(raw)));
+        Assert.assertArrayEquals(write(expected), write(actual));
+    }
+
+    @Test
+    public void testParallelWithEncodedEmbeddedMessage() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("inner line ").append(i).append("\r\n");
+        }
+        String inner = "Subject: inner\r\n"
+            + "Content-Type: text/plain; charset=US-ASCII\r\n\r\n"
+            + text;
+        StringBuilder sb = new StringBuilder();
+        sb.append("Subject: encoded message\r\n");
+        sb.append("Content-Type: multipart/mixed; boundary=XX\r\n\r\n");
+        sb.append("--XX\r\n");
+        sb.append("Content-Type: message/rfc822\r\n");
+        sb.append("Content-Transfer-Encoding: base64\r\n\r\n");
+        sb.append(Base64.getMimeEncoder().encodeToString(inner.getBytes(StandardCharsets.US_ASCII))).append("\r\n");
+        sb.append("--XX--\r\n");
+        byte[] raw = sb.toString().getBytes(StandardCharsets.US_ASCII);
+
+        DefaultMessageBuilder builder = new DefaultMessageBuilder();
+        Message expected = builder.parseMessage(new ByteArrayInputStream(raw));
+
+        builder.setExecutor(executor);
+        Message actual = builder.parseMessage(MappedInputStream.wrap(ByteBuffer.wrap(raw)));
+
+        Multipart multipart = (Multipart) actual.getBody();
+        Message message = (Message) multipart.getBodyParts().get(0).getBody();
+        TextBody body = (TextBody) message.getBody();
+        Assert.assertEquals(text.toString(), new String(readAll(body), StandardCharsets.US_ASCII));
+        Assert.assertArrayEquals(write(expected), write(actual));
+    }
+
+    private static byte[] readAll(SingleBody body) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        return out.toByteArray();
+    }
+
+}
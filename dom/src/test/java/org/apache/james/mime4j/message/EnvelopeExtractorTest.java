@@ -0,0 +1,73 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.james.mime4j.Charsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EnvelopeExtractorTest {
+
+    private static final String HEADER =
+            "Received: from localhost by example.org\r\n" +
+            "From: Timothy Tayler <tim@example.org>\r\n" +
+            "To: Joshua Tetley <joshua@example.org>, jane@example.org\r\n" +
+            "Subject: =?ISO-8859-1?Q?Caf=E9?=\r\n" +
+            "Subject: second subject\r\n" +
+            "Message-ID: <msg17@example.org>\r\n" +
+            "Date: Tue, 12 Feb 2008 17:34:09 +0000\r\n" +
+            "Content-Type: multipart/mixed; boundary=42\r\n" +
+            "\r\n";
+
+    @Test
+    public void testExtract() throws Exception {
+        byte[] body = new byte[1024 * 1024];
+        Arrays.fill(body, (byte) 'x');
+        byte[] header = HEADER.getBytes(Charsets.US_ASCII);
+        byte[] message = Arrays.copyOf(header, header.length + body.length);
+        System.arraycopy(body, 0, message, header.length, body.length);
+        InputStream in = new ByteArrayInputStream(message);
+
+        Envelope envelope = new EnvelopeExtractor().extract(in);
+        Assert.assertEquals(1, envelope.getFrom().size());
+        Assert.assertEquals("tim@example.org", envelope.getFrom().get(0).getAddress());
+        Assert.assertEquals(2, envelope.getTo().size());
+        Assert.assertNull(envelope.getCc());
+        Assert.assertEquals("Café", envelope.getSubject());
+        Assert.assertEquals("<msg17@example.org>", envelope.getMessageId());
+        Assert.assertEquals(1202837649000L, envelope.getDate().getTime());
+        // reading stops with the header
+        Assert.assertTrue(in.available() > body.length - 8 * 1024);
+    }
+
+    @Test
+    public void testEmptyHeader() throws Exception {
+        Envelope envelope = new EnvelopeExtractor().extract(
+                new ByteArrayInputStream("\r\nbody".getBytes(Charsets.US_ASCII)));
+        Assert.assertNull(envelope.getFrom());
+        Assert.assertNull(envelope.getSubject());
+        Assert.assertNull(envelope.getDate());
+    }
+
+}
@@ -71,11 +71,11 @@ public class CharBufferWrapper {
     /**
      * Provide an InputStream view over a ByteBuffer.
      */
-    private static class ByteBufferInputStream extends InputStream {
+    static class ByteBufferInputStream extends InputStream {
 
         private final ByteBuffer buf;
 
-        private ByteBufferInputStream(ByteBuffer buf) {
+        ByteBufferInputStream(ByteBuffer buf) {
             this.buf = buf;
         }
 
@@ -114,5 +114,20 @@ public class CharBufferWrapper {
             return actualAmount;
         }
 
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            int skipped = (int) Math.min(n, buf.remaining());
+            buf.position(buf.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buf.remaining();
+        }
+
     }
 }
@@ -0,0 +1,116 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.mboxiterator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds From_ lines by scanning the bytes of an mbox, without decoding it.
+ * <p>
+ * Only lines starting with <code>"From "</code> are candidates, as required by
+ * the mbox format. They are then checked against the From_ line pattern. The
+ * charset of the mbox must be ASCII compatible. Instances hold a
+ * {@link Matcher} and must not be shared between threads.
+ */
+final class FromLineScanner {
+
+    private static final byte[] FROM = "From ".getBytes(StandardCharsets.US_ASCII);
+
+    private final Matcher matcher;
+
+    FromLineScanner(Pattern pattern) {
+        this.matcher = pattern.matcher("");
+    }
+
+    /**
+     * Finds the first From_ line starting at or after <code>from</code>. If
+     * <code>from</code> is inside a line, that line is not considered.
+     *
+     * @param buf mbox content, only read through absolute gets.
+     * @param from index the search starts at.
+     * @param to index no From_ line may start at or after.
+     * @param last whether the buffer ends with the mbox. If not, a line that
+     *        is not ended within the buffer is not a From_ line.
+     * @return the index of the From_ line, or <code>-1</code> if none is found.
+     */
+    int find(ByteBuffer buf, int from, int to, boolean last) {
+        int i = from;
+        if (i > 0 && buf.get(i - 1) != '\n') {
+            i = nextLine(buf, i);
+        }
+        while (i >= 0 && i < to) {
+            int eol = indexOf(buf, (byte) '\n', i, buf.limit());
+            if (eol < 0 && !last) {
+                return -1;
+            }
+            int lineEnd = eol < 0 ? buf.limit() : eol;
+            if (startsWithFrom(buf, i, lineEnd) && matches(buf, i, lineEnd)) {
+                return i;
+            }
+            i = eol < 0 ? -1 : eol + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index following the line feed ending the line that contains
+     *         <code>i</code>, or the buffer limit if that line is the last one.
+     */
+    private static int nextLine(ByteBuffer buf, int i) {
+        int eol = indexOf(buf, (byte) '\n', i, buf.limit());
+        return eol < 0 ? buf.limit() : eol + 1;
+    }
+
+    static int indexOf(ByteBuffer buf, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWithFrom(ByteBuffer buf, int start, int end) {
+        if (end - start < FROM.length) {
+            return false;
+        }
+        for (int i = 0; i < FROM.length; i++) {
+            if (buf.get(start + i) != FROM[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(ByteBuffer buf, int start, int end) {
+        if (end > start && buf.get(end - 1) == '\r') {
+            end--;
+        }
+        char[] line = new char[end - start];
+        for (int i = 0; i < line.length; i++) {
+            line[i] = (char) (buf.get(start + i) & 0xff);
+        }
+        matcher.reset(new String(line));
+        return matcher.find() && matcher.start() == 0;
+    }
+
+}
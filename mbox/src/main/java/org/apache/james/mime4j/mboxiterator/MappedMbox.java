@@ -0,0 +1,192 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.mboxiterator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An mbox file mapped window by window, so that files larger than 2 GB can be
+ * read.
+ * <p>
+ * Window <i>k</i> holds the lines starting in
+ * <code>[k * windowSize, (k + 1) * windowSize)</code>. It is mapped from the
+ * byte preceding that range, to tell whether the range starts with a line, to
+ * a margin past it, so that a From_ line starting in the range is mapped as a
+ * whole. From_ lines longer than the margin (64 KB) may be missed at window
+ * edges. Windows are mapped on demand and only held by the {@link Cursor}
+ * reading them, their mapping is released once the cursor moves on.
+ * <p>
+ * The size of the file is read once, bytes appended later are ignored.
+ */
+final class MappedMbox {
+
+    static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private static final int LINE_MARGIN = 64 * 1024;
+    private static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE - LINE_MARGIN - 1;
+
+    private final Path path;
+    private final long size;
+    private final int windowSize;
+
+    MappedMbox(Path path, int windowSize) throws IOException {
+        if (windowSize <= 0 || windowSize > MAX_WINDOW_SIZE) {
+            throw new IllegalArgumentException("Invalid window size: " + windowSize);
+        }
+        this.path = path;
+        this.size = Files.size(path);
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return size of the file, in bytes.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Maps a region of the file. The mapping does not depend on a channel
+     * being kept open.
+     */
+    ByteBuffer map(long position, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        }
+    }
+
+    private ByteBuffer mapUnchecked(long position, int length) {
+        try {
+            return map(position, length);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Maps the message in <code>[start, limit)</code> on its own, in parts of
+     * at most 2 GB.
+     *
+     * @throws UncheckedIOException if the file cannot be mapped.
+     */
+    MboxMessage mapMessage(long start, long limit) {
+        ByteBuffer[] parts = new ByteBuffer[(int) (Math.max(0, limit - start - 1) / Integer.MAX_VALUE) + 1];
+        for (int i = 0; i < parts.length; i++) {
+            long position = start + (long) i * Integer.MAX_VALUE;
+            parts[i] = mapUnchecked(position, (int) Math.min(Integer.MAX_VALUE, limit - position));
+        }
+        return new MboxMessage(parts, start);
+    }
+
+    /**
+     * @return a new cursor, which must not be shared between threads.
+     */
+    Cursor newCursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Reads the file through one window at a time, mapping the next one when
+     * needed. Failures to map are reported as {@link UncheckedIOException}.
+     */
+    final class Cursor {
+
+        private int index = -1;
+        private long base;
+        private ByteBuffer window;
+
+        private Cursor() {
+        }
+
+        private ByteBuffer window(long position) {
+            int k = (int) (Math.min(position, Math.max(0, size - 1)) / windowSize);
+            if (k != index) {
+                long start = Math.max(0, (long) k * windowSize - 1);
+                long end = Math.min(size, (long) (k + 1) * windowSize + LINE_MARGIN);
+                window = mapUnchecked(start, (int) (end - start));
+                base = start;
+                index = k;
+            }
+            return window;
+        }
+
+        /**
+         * Finds the first From_ line starting at or after <code>from</code>.
+         * If <code>from</code> is inside a line, that line is not considered.
+         *
+         * @return the offset of the From_ line, or <code>-1</code> if none
+         *         starts before <code>to</code>.
+         */
+        long find(FromLineScanner scanner, long from, long to) {
+            long position = from;
+            while (position < to) {
+                ByteBuffer buf = window(position);
+                long rangeEnd = Math.min(to, (long) (index + 1) * windowSize);
+                boolean last = base + buf.limit() == size;
+                int found = scanner.find(buf, (int) (position - base), (int) (rangeEnd - base), last);
+                if (found >= 0) {
+                    return base + found;
+                }
+                position = (long) (index + 1) * windowSize;
+            }
+            return -1;
+        }
+
+        /**
+         * @return the offset following the line feed ending the line that
+         *         contains <code>position</code>, or the size of the file if
+         *         that line is the last one.
+         */
+        long nextLine(long position) {
+            while (position < size) {
+                ByteBuffer buf = window(position);
+                int eol = FromLineScanner.indexOf(buf, (byte) '\n', (int) (position - base), buf.limit());
+                if (eol >= 0) {
+                    return base + eol + 1;
+                }
+                position = base + buf.limit();
+            }
+            return size;
+        }
+
+        /**
+         * Returns the message in <code>[start, limit)</code>: a slice of the
+         * current window if it holds the whole message, or else a mapping of
+         * its own, split in parts of at most 2 GB.
+         */
+        MboxMessage message(long start, long limit) {
+            ByteBuffer buf = window(start);
+            if (limit <= base + buf.limit()) {
+                ByteBuffer content = buf.duplicate();
+                content.limit((int) (limit - base));
+                content.position((int) (start - base));
+                return new MboxMessage(content.slice(), start);
+            }
+            return mapMessage(start, limit);
+        }
+
+    }
+
+}
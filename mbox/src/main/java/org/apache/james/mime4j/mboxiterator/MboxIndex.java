@@ -0,0 +1,499 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.mboxiterator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Index of the messages of an mbox file, giving random access to them. For
+ * every message it records its offset and length and, optionally, its
+ * Message-ID and Date.
+ * </p>
+ * <p>
+ * The index is kept in primitive arrays and saved to a side file, by default
+ * the mbox path followed by <code>".idx"</code>. It is loaded back as long as
+ * the size and modification time of the mbox are the ones it was built for.
+ * When the mbox has grown, it is assumed to have been appended to: only the
+ * last indexed message and the new ones are scanned, and the side file is
+ * updated. In any other case the index is rebuilt.
+ * </p>
+ */
+public final class MboxIndex {
+
+    private static final int MAGIC = 0x4d425849; // "MBXI"
+    private static final int VERSION = 1;
+    private static final int WITH_MESSAGE_IDS = 1;
+    private static final int WITH_DATES = 2;
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final int MAX_HEADER_SIZE = 256 * 1024;
+    /** Number of stored offsets checked before an index is extended */
+    private static final int CHECKED_OFFSETS = 16;
+    /** Length of the longest From_ line looked for before a stored offset */
+    private static final int MAX_FROM_LINE_LENGTH = 4 * 1024;
+    private static final Pattern FOLDING = Pattern.compile("\\r?\\n(?=[ \\t])");
+
+    private final MappedMbox mbox;
+    private final int options;
+    private int count;
+    private long[] offsets;
+    private long[] lengths;
+    private long[] dates;
+    private String[] messageIds;
+
+    private MboxIndex(MappedMbox mbox, int options) {
+        this.mbox = mbox;
+        this.options = options;
+        this.offsets = new long[16];
+        this.lengths = new long[16];
+        this.dates = (options & WITH_DATES) != 0 ? new long[16] : null;
+        this.messageIds = (options & WITH_MESSAGE_IDS) != 0 ? new String[16] : null;
+    }
+
+    /**
+     * @return number of messages of the mbox.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @param n index of the message, starting at 0.
+     * @return offset of the message in the mbox file, its From_ line excluded.
+     */
+    public long getOffset(int n) {
+        checkIndex(n);
+        return offsets[n];
+    }
+
+    /**
+     * @param n index of the message, starting at 0.
+     * @return length of the message in bytes.
+     */
+    public long getLength(int n) {
+        checkIndex(n);
+        return lengths[n];
+    }
+
+    /**
+     * @param n index of the message, starting at 0.
+     * @return the Message-ID of the message, or <code>null</code> if it has
+     *         none or if Message-IDs are not indexed.
+     */
+    public String getMessageId(int n) {
+        checkIndex(n);
+        return messageIds != null ? messageIds[n] : null;
+    }
+
+    /**
+     * @param n index of the message, starting at 0.
+     * @return the date of the message, or <code>null</code> if it has no
+     *         Date field in RFC 5322 format or if dates are not indexed.
+     */
+    public Date getDate(int n) {
+        checkIndex(n);
+        return dates != null && dates[n] != NO_DATE ? new Date(dates[n]) : null;
+    }
+
+    /**
+     * Maps a message of the mbox, without scanning it.
+     *
+     * @param n index of the message, starting at 0.
+     * @return the message.
+     * @throws java.io.UncheckedIOException if the mbox cannot be mapped.
+     */
+    public MboxMessage getMessage(int n) {
+        checkIndex(n);
+        return mbox.mapMessage(offsets[n], offsets[n] + lengths[n]);
+    }
+
+    private void checkIndex(int n) {
+        if (n < 0 || n >= count) {
+            throw new IndexOutOfBoundsException("Message " + n + " of " + count);
+        }
+    }
+
+    /**
+     * Scans the mbox from a From_ line, and indexes the messages found.
+     */
+    private void scan(Pattern fromLine, long from) {
+        Spliterator<MboxMessage> messages = new MboxSpliterator(mbox, fromLine, from, mbox.size());
+        while (messages.tryAdvance(new Consumer<MboxMessage>() {
+            public void accept(MboxMessage message) {
+                if (count == offsets.length) {
+                    grow();
+                }
+                offsets[count] = message.getOffset();
+                lengths[count] = message.getLength();
+                if (options != 0) {
+                    indexHeader(count, message);
+                }
+                count++;
+            }
+        })) {
+            // index all messages
+        }
+    }
+
+    /**
+     * Extends the index over the bytes appended to the mbox since it was
+     * built.
+     */
+    private void extend(Pattern fromLine) {
+        if (count == 0) {
+            scan(fromLine, mbox.newCursor().find(new FromLineScanner(fromLine), 0, mbox.size()));
+            return;
+        }
+        // the last message may have grown, it is indexed again
+        count--;
+        long next = mbox.newCursor().find(new FromLineScanner(fromLine), offsets[count], mbox.size());
+        long end = next < 0 ? mbox.size() : next;
+        lengths[count] = end - offsets[count];
+        if (options != 0) {
+            indexHeader(count, mbox.mapMessage(offsets[count], end));
+        }
+        count++;
+        if (next >= 0) {
+            scan(fromLine, next);
+        }
+    }
+
+    /**
+     * Checks that the stored offsets still follow From_ lines, as they do when
+     * messages were only appended to the mbox. The first and last offsets are
+     * checked, and a sample of the others.
+     */
+    private boolean isPrefixOf(Pattern fromLine) throws IOException {
+        if (count == 0) {
+            return true;
+        }
+        FromLineScanner scanner = new FromLineScanner(fromLine);
+        int step = Math.max(1, count / CHECKED_OFFSETS);
+        for (int i = count - 1; i > 0; i -= step) {
+            if (!followsFromLine(scanner, offsets[i])) {
+                return false;
+            }
+        }
+        return followsFromLine(scanner, offsets[0]);
+    }
+
+    /**
+     * @return whether the line ending right before <code>offset</code> is a
+     *         From_ line.
+     */
+    private boolean followsFromLine(FromLineScanner scanner, long offset) throws IOException {
+        if (offset <= 0 || offset > mbox.size()) {
+            return false;
+        }
+        long start = Math.max(0, offset - MAX_FROM_LINE_LENGTH);
+        ByteBuffer buf = mbox.map(start, (int) (offset - start));
+        int eol = buf.limit() - 1;
+        if (buf.get(eol) != '\n') {
+            return false;
+        }
+        int line = eol;
+        while (line > 0 && buf.get(line - 1) != '\n') {
+            line--;
+        }
+        if (line == 0 && start > 0) {
+            return false;
+        }
+        return scanner.find(buf, line, line + 1, true) == line;
+    }
+
+    private void grow() {
+        int capacity = offsets.length * 2;
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        if (dates != null) {
+            dates = Arrays.copyOf(dates, capacity);
+        }
+        if (messageIds != null) {
+            messageIds = Arrays.copyOf(messageIds, capacity);
+        }
+    }
+
+    private void indexHeader(int n, MboxMessage message) {
+        String messageId = null;
+        String date = null;
+        String header = readHeader(message.asInputStream());
+        // unfold, then split into fields
+        for (String field : FOLDING.matcher(header).replaceAll("").split("\\r?\\n")) {
+            int colon = field.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String name = field.substring(0, colon).trim();
+            if (messageId == null && name.equalsIgnoreCase("Message-ID")) {
+                messageId = field.substring(colon + 1).trim();
+            } else if (date == null && name.equalsIgnoreCase("Date")) {
+                date = field.substring(colon + 1);
+            }
+        }
+        if (messageIds != null) {
+            messageIds[n] = messageId;
+        }
+        if (dates != null) {
+            dates[n] = parseDate(date);
+        }
+    }
+
+    /**
+     * Reads the header of a message, up to the empty line that ends it, as
+     * ISO-8859-1. Headers are read up to {@link #MAX_HEADER_SIZE} bytes.
+     */
+    private static String readHeader(InputStream in) {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(1024);
+        try {
+            int lineLength = 0;
+            for (int b = in.read(); b != -1 && header.size() < MAX_HEADER_SIZE; b = in.read()) {
+                if (b == '\n') {
+                    if (lineLength == 0) {
+                        break;
+                    }
+                    lineLength = 0;
+                } else if (b != '\r') {
+                    lineLength++;
+                }
+                header.write(b);
+            }
+        } catch (IOException ex) {
+            // streams over mapped bytes do not throw
+            throw new IllegalStateException(ex);
+        }
+        return new String(header.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static long parseDate(String date) {
+        if (date == null) {
+            return NO_DATE;
+        }
+        // drop a trailing comment such as "(UTC)"
+        int comment = date.indexOf('(');
+        String value = (comment < 0 ? date : date.substring(0, comment)).trim().replaceAll("\\s+", " ");
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            return NO_DATE;
+        }
+    }
+
+    /**
+     * Loads the side file, if it was saved for the same From_ line pattern
+     * and options.
+     *
+     * @return the size and modification time of the mbox the side file was
+     *         saved for, or <code>null</code> if it cannot be used.
+     */
+    private long[] load(Path indexFile, Pattern fromLine) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != options
+                    || !in.readUTF().equals(fromLine.pattern()) || in.readInt() != fromLine.flags()) {
+                return null;
+            }
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            int n = in.readInt();
+            offsets = readLongs(in, n);
+            lengths = readLongs(in, n);
+            if (dates != null) {
+                dates = readLongs(in, n);
+            }
+            if (messageIds != null) {
+                messageIds = new String[Math.max(n, 16)];
+                for (int i = 0; i < n; i++) {
+                    messageIds[i] = in.readBoolean() ? in.readUTF() : null;
+                }
+            }
+            count = n;
+            return new long[] { size, lastModified };
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            // unreadable or truncated, build it again
+            return null;
+        }
+    }
+
+    private static long[] readLongs(DataInputStream in, int n) throws IOException {
+        long[] values = new long[Math.max(n, 16)];
+        for (int i = 0; i < n; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+    /**
+     * Saves the side file through a temporary file, so that it is never seen
+     * partially written.
+     */
+    private void save(Path indexFile, Pattern fromLine, long lastModified) throws IOException {
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(options);
+            out.writeUTF(fromLine.pattern());
+            out.writeInt(fromLine.flags());
+            out.writeLong(mbox.size());
+            out.writeLong(lastModified);
+            out.writeInt(count);
+            writeLongs(out, offsets);
+            writeLongs(out, lengths);
+            if (dates != null) {
+                writeLongs(out, dates);
+            }
+            if (messageIds != null) {
+                for (int i = 0; i < count; i++) {
+                    // writeUTF is limited to 65535 bytes, longer values are not kept
+                    boolean present = messageIds[i] != null && messageIds[i].length() <= 65535 / 3;
+                    out.writeBoolean(present);
+                    if (present) {
+                        out.writeUTF(messageIds[i]);
+                    }
+                }
+            }
+        }
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.writeLong(values[i]);
+        }
+    }
+
+    public static Builder forFile(Path filePath) {
+        return new Builder(filePath);
+    }
+
+    public static Builder forFile(File filePath) {
+        return forFile(filePath.toPath());
+    }
+
+    public static Builder forFile(String file) {
+        return forFile(new File(file));
+    }
+
+    public static class Builder {
+        private final Path path;
+        private Path indexFile;
+        private String regexpPattern = FromLinePatterns.DEFAULT;
+        private int flags = Pattern.MULTILINE;
+        private int windowSize = MappedMbox.DEFAULT_WINDOW_SIZE;
+        private boolean messageIds;
+        private boolean dates;
+
+        private Builder(Path path) {
+            this.path = path;
+            this.indexFile = path.resolveSibling(path.getFileName() + ".idx");
+        }
+
+        /**
+         * @param indexFile side file the index is saved to.
+         */
+        public Builder indexFile(Path indexFile) {
+            this.indexFile = indexFile;
+            return this;
+        }
+
+        public Builder fromLine(String fromLine) {
+            this.regexpPattern = fromLine;
+            return this;
+        }
+
+        public Builder flags(int flags) {
+            this.flags = flags;
+            return this;
+        }
+
+        /**
+         * @param windowSize size, in bytes, of the mapped windows the file is
+         *        scanned through.
+         */
+        public Builder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * @param messageIds whether to index the Message-ID of the messages.
+         */
+        public Builder messageIds(boolean messageIds) {
+            this.messageIds = messageIds;
+            return this;
+        }
+
+        /**
+         * @param dates whether to index the Date of the messages.
+         */
+        public Builder dates(boolean dates) {
+            this.dates = dates;
+            return this;
+        }
+
+        /**
+         * Loads the index from its side file, extends or builds it if needed,
+         * and saves it back when it changed.
+         */
+        public MboxIndex build() throws IOException {
+            Pattern fromLine = Pattern.compile(regexpPattern, flags);
+            int options = (messageIds ? WITH_MESSAGE_IDS : 0) | (dates ? WITH_DATES : 0);
+            // read before the size, so that a concurrent append causes a rebuild
+            long lastModified = Files.getLastModifiedTime(path).toMillis();
+            MappedMbox mbox = new MappedMbox(path, windowSize);
+
+            MboxIndex index = new MboxIndex(mbox, options);
+            long[] saved = index.load(indexFile, fromLine);
+            if (saved != null && saved[0] == mbox.size() && saved[1] == lastModified) {
+                return index;
+            }
+            // a larger mbox is only extended if it was appended to
+            if (saved == null || saved[0] >= mbox.size() || !index.isPrefixOf(fromLine)) {
+                index = new MboxIndex(mbox, options);
+            }
+            index.extend(fromLine);
+            index.save(indexFile, fromLine, lastModified);
+            return index;
+        }
+    }
+
+}
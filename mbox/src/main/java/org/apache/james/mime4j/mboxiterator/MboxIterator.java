@@ -26,15 +26,20 @@ import java.io.IOException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <p>
@@ -46,12 +51,30 @@ import java.util.regex.Pattern;
  * <li>http://tools.ietf.org/html/rfc4155</li>
  * <li>http://qmail.org/man/man5/mbox.html</li>
  * </ul>
+ * <p>
+ * The file is mapped one window at a time, see {@link Builder#windowSize(int)},
+ * so that files larger than 2 GB can be read.
+ * </p>
  */
 public class MboxIterator implements Iterable<CharBufferWrapper>, Closeable {
-    private final CharBuffer mboxCharBuffer;
+    /**
+     * Decoded messages, allocated when iterated for the first time.
+     */
+    private CharBuffer mboxCharBuffer;
     private Matcher fromLineMatcher;
     private boolean fromLineFound;
-    private final ByteBuffer byteBuffer;
+    private final MappedMbox mapped;
+    /**
+     * Byte-level reader, created when first needed.
+     */
+    private MboxReader reader;
+    private final int windowSize;
+    /**
+     * Mapped window of the file being decoded, which starts at {@link #windowStart}.
+     */
+    private ByteBuffer byteBuffer;
+    private long windowStart;
+    private final Charset charset;
     private final CharsetDecoder DECODER;
     /**
      * Flag to signal end of input to {@link java.nio.charset.CharsetDecoder#decode(java.nio.ByteBuffer)} .
@@ -67,21 +90,36 @@ public class MboxIterator implements Iterable<CharBufferWrapper>, Closeable {
                          final Charset charset,
                          final String regexpPattern,
                          final int regexpFlags,
-                         final int MAX_MESSAGE_SIZE)
+                         final int MAX_MESSAGE_SIZE,
+                         final int windowSize)
             throws FileNotFoundException, IOException, CharConversionException {
         //TODO: do better exception handling - try to process some of them maybe?
         this.maxMessageSize = MAX_MESSAGE_SIZE;
         this.MESSAGE_START = Pattern.compile(regexpPattern, regexpFlags);
         this.DECODER = charset.newDecoder();
-        this.mboxCharBuffer = CharBuffer.allocate(MAX_MESSAGE_SIZE);
         this.mbox = mbox;
 
-        try (FileChannel channel = FileChannel.open(mbox, StandardOpenOption.READ)) {
-            // Safe to keep buffer around because it does not depend on the channel.
-            this.byteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        this.mapped = new MappedMbox(mbox, windowSize);
+        // the window must hold at least as many bytes as the decoded chars
+        this.windowSize = Math.max(windowSize, MAX_MESSAGE_SIZE);
+        this.charset = charset;
+        // scanning bytes only finds From_ lines starting with an ASCII "From ",
+        // anything else is checked by decoding, as the iterators do
+        if (!isAsciiCompatible(charset) || messages().isEmpty()) {
+            initMboxIterator();
         }
+    }
 
-        initMboxIterator();
+    private static boolean isAsciiCompatible(Charset charset) {
+        return Arrays.equals("From \n".getBytes(charset), "From \n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private IllegalArgumentException noFromLine() {
+        String path = "";
+        if (mbox != null)
+            path = mbox.toString();
+        return new IllegalArgumentException("File " + path + " does not contain From_ lines that match the pattern '"
+                + MESSAGE_START.pattern() + "'! Maybe not be a valid Mbox or wrong matcher.");
     }
 
     /**
@@ -91,21 +129,22 @@ public class MboxIterator implements Iterable<CharBufferWrapper>, Closeable {
      * @throws CharConversionException
      */
     protected void initMboxIterator() throws IOException {
+        mboxCharBuffer = CharBuffer.allocate(maxMessageSize);
+        byteBuffer = mapped.map(0, (int) Math.min(windowSize, mapped.size()));
         decodeNextCharBuffer();
         fromLineMatcher = MESSAGE_START.matcher(mboxCharBuffer);
         fromLineFound = fromLineMatcher.find();
         if (fromLineFound) {
             saveFindPositions(fromLineMatcher);
         } else if (fromLineMatcher.hitEnd()) {
-            String path = "";
-            if (mbox != null)
-                path = mbox.toString();
-            throw new IllegalArgumentException("File " + path + " does not contain From_ lines that match the pattern '"
-                    + MESSAGE_START.pattern() + "'! Maybe not be a valid Mbox or wrong matcher.");
+            throw noFromLine();
         }
     }
 
-    private void decodeNextCharBuffer() throws CharConversionException {
+    private void decodeNextCharBuffer() throws IOException {
+        if (byteBuffer.remaining() < mboxCharBuffer.remaining() && !isLastWindow()) {
+            slideWindow();
+        }
         CoderResult coderResult = DECODER.decode(byteBuffer, mboxCharBuffer, endOfInputFlag);
         updateEndOfInputFlag();
         mboxCharBuffer.flip();
@@ -118,21 +157,155 @@ public class MboxIterator implements Iterable<CharBufferWrapper>, Closeable {
         }
     }
 
+    private boolean isLastWindow() {
+        return windowStart + byteBuffer.limit() == mapped.size();
+    }
+
+    /**
+     * Maps the next window, starting with the bytes not decoded yet.
+     */
+    private void slideWindow() throws IOException {
+        windowStart += byteBuffer.position();
+        byteBuffer = mapped.map(windowStart, (int) Math.min(windowSize, mapped.size() - windowStart));
+    }
+
+    private boolean hasRemainingInput() {
+        return byteBuffer.hasRemaining() || !isLastWindow();
+    }
+
     private void updateEndOfInputFlag() {
-        if (byteBuffer.remaining() <= maxMessageSize) {
+        if (mapped.size() - windowStart - byteBuffer.position() <= maxMessageSize) {
             endOfInputFlag = true;
         }
     }
 
+    /**
+     * @return the index of the message following a From_ line match ending at
+     *         <code>end</code>, past the LF or CRLF that ends the line.
+     */
+    private int messageStart(int end) {
+        if (end + 1 < mboxCharBuffer.limit() && mboxCharBuffer.get(end) == '\r'
+                && mboxCharBuffer.get(end + 1) == '\n') {
+            return end + 2;
+        }
+        return end + 1;
+    }
+
     private void saveFindPositions(Matcher lineMatcher) {
         findStart = lineMatcher.start();
         findEnd = lineMatcher.end();
     }
 
+    /**
+     * Returns the iterator over the decoded messages. All the iterators of an
+     * instance share a single pass over the mbox.
+     * <p>
+     * Messages are decoded in batches into a buffer of max message size
+     * chars, allocated on first use. Use {@link #messages()} to iterate with
+     * a memory footprint that does not depend on the size of the messages.
+     */
     public Iterator<CharBufferWrapper> iterator() {
+        if (mboxCharBuffer == null) {
+            try {
+                initMboxIterator();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
         return new MessageIterator();
     }
 
+    /**
+     * Returns the messages of the mbox as views over the mapped file, which
+     * are neither copied nor decoded, see {@link MboxReader}. Messages are not
+     * limited to the max message size, and can be read as streams through
+     * {@link MboxMessage#asInputStream()} or {@link MboxMessage#asReader(Charset)}.
+     * Nothing is allocated per mbox beyond the reader itself.
+     */
+    public MboxReader messages() {
+        if (reader == null) {
+            reader = new MboxReader(mapped, MESSAGE_START);
+        }
+        return reader;
+    }
+
+    /**
+     * Returns a {@link Spliterator} splitting the mbox at From_ lines, so that
+     * messages can be processed in parallel. It is independent of the iterators
+     * of this instance and always covers all the messages.
+     * <p>
+     * From_ lines are found by scanning bytes, see {@link #stream()}. If the
+     * charset does not encode US-ASCII as single bytes, the spliterator wraps
+     * {@link #iterator()} instead: it does not split, and shares the pass of
+     * the iterators.
+     */
+    @Override
+    public Spliterator<CharBufferWrapper> spliterator() {
+        if (!isAsciiCompatible(charset)) {
+            // From_ lines cannot be found in the bytes, decode the whole mbox
+            return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+        }
+        return new DecodingSpliterator(messages().spliterator(), charset);
+    }
+
+    /**
+     * Returns a sequential stream over the messages of the mbox.
+     * <p>
+     * Unlike iterators, the stream does not decode the whole mbox, but finds
+     * From_ lines among the lines starting with <code>"From "</code>, and
+     * decodes each message on its own, when the charset is ASCII compatible.
+     * Messages are then not limited in size. Both return the same text for a
+     * message, which starts after the LF or CRLF ending its From_ line.
+     *
+     * @see MboxReader
+     */
+    public Stream<CharBufferWrapper> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream over the messages of the mbox, see {@link #stream()}.
+     */
+    public Stream<CharBufferWrapper> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Decodes the messages of a byte-level spliterator.
+     */
+    private static final class DecodingSpliterator implements Spliterator<CharBufferWrapper> {
+
+        private final Spliterator<MboxMessage> messages;
+        private final Charset charset;
+
+        DecodingSpliterator(Spliterator<MboxMessage> messages, Charset charset) {
+            this.messages = messages;
+            this.charset = charset;
+        }
+
+        public boolean tryAdvance(final Consumer<? super CharBufferWrapper> action) {
+            return messages.tryAdvance(new Consumer<MboxMessage>() {
+                public void accept(MboxMessage message) {
+                    action.accept(message.decode(charset));
+                }
+            });
+        }
+
+        public Spliterator<CharBufferWrapper> trySplit() {
+            Spliterator<MboxMessage> prefix = messages.trySplit();
+            return prefix != null ? new DecodingSpliterator(prefix, charset) : null;
+        }
+
+        public long estimateSize() {
+            return messages.estimateSize();
+        }
+
+        public int characteristics() {
+            return messages.characteristics();
+        }
+
+    }
+
     public void close() throws IOException {}
 
     private class MessageIterator implements Iterator<CharBufferWrapper> {
@@ -159,7 +332,7 @@ public class MboxIterator implements Iterable<CharBufferWrapper>, Closeable {
             fromLineFound = fromLineMatcher.find();
             if (fromLineFound) {
                 message = mboxCharBuffer.slice();
-                message.position(findEnd + 1);
+                message.position(messageStart(findEnd));
                 saveFindPositions(fromLineMatcher);
                 message.limit(fromLineMatcher.start());
             } else {
@@ -167,7 +340,7 @@ public class MboxIterator implements Iterable<CharBufferWrapper>, Closeable {
                  *  - we reached end of mbox and no more messages
                  *  - we reached end of CharBuffer and need to decode another batch.
                  */
-                if (byteBuffer.hasRemaining()) {
+                if (hasRemainingInput()) {
                     // decode another batch, but remember to copy the remaining chars first
                     CharBuffer oldData = mboxCharBuffer.duplicate();
                     mboxCharBuffer.clear();
@@ -177,7 +350,7 @@ public class MboxIterator implements Iterable<CharBufferWrapper>, Closeable {
                     }
                     try {
                         decodeNextCharBuffer();
-                    } catch (CharConversionException ex) {
+                    } catch (IOException ex) {
                         throw new RuntimeException(ex);
                     }
                     fromLineMatcher = MESSAGE_START.matcher(mboxCharBuffer);
@@ -186,7 +359,7 @@ public class MboxIterator implements Iterable<CharBufferWrapper>, Closeable {
                         saveFindPositions(fromLineMatcher);
                     }
                     message = mboxCharBuffer.slice();
-                    message.position(fromLineMatcher.end() + 1);
+                    message.position(messageStart(fromLineMatcher.end()));
                     fromLineFound = fromLineMatcher.find();
                     if (fromLineFound) {
                         saveFindPositions(fromLineMatcher);
@@ -194,7 +367,7 @@ public class MboxIterator implements Iterable<CharBufferWrapper>, Closeable {
                     }
                 } else {
                     message = mboxCharBuffer.slice();
-                    message.position(findEnd + 1);
+                    message.position(messageStart(findEnd));
                     message.limit(message.capacity());
                 }
             }
@@ -228,6 +401,7 @@ public class MboxIterator implements Iterable<CharBufferWrapper>, Closeable {
          * will not be decoded correctly.
          */
         private int maxMessageSize = 10 * 1024 * 1024;
+        private int windowSize = MappedMbox.DEFAULT_WINDOW_SIZE;
 
         private Builder(Path path) {
             this.path = path;
@@ -253,8 +427,17 @@ public class MboxIterator implements Iterable<CharBufferWrapper>, Closeable {
             return this;
         }
 
+        /**
+         * @param windowSize size, in bytes, of the mapped windows the file is
+         *        read through. Windows are never smaller than the max message size.
+         */
+        public Builder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
         public MboxIterator build() throws FileNotFoundException, IOException {
-            return new MboxIterator(path, charset, regexpPattern, flags, maxMessageSize);
+            return new MboxIterator(path, charset, regexpPattern, flags, maxMessageSize, windowSize);
         }
     }
 
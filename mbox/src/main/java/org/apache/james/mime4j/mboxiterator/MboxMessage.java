@@ -0,0 +1,136 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.mboxiterator;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A message of an mbox, without its From_ line, exposed as a slice of the
+ * mapped mbox: its bytes are neither copied nor decoded.
+ * <p>
+ * Messages larger than 2 GB are mapped in several parts, and can only be read
+ * through {@link #asInputStream()}.
+ */
+public final class MboxMessage {
+
+    private final ByteBuffer[] parts;
+    private final long offset;
+
+    MboxMessage(ByteBuffer content, long offset) {
+        this(new ByteBuffer[] { content }, offset);
+    }
+
+    MboxMessage(ByteBuffer[] parts, long offset) {
+        this.parts = parts;
+        this.offset = offset;
+    }
+
+    /**
+     * @return offset of the message in the mbox file, its From_ line excluded.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return length of the message in bytes.
+     */
+    public long getLength() {
+        long length = 0;
+        for (ByteBuffer part : parts) {
+            length += part.remaining();
+        }
+        return length;
+    }
+
+    /**
+     * @return a new read-only buffer over the bytes of the message.
+     * @throws UnsupportedOperationException if the message is larger than 2 GB.
+     */
+    public ByteBuffer asByteBuffer() {
+        return content().asReadOnlyBuffer();
+    }
+
+    private ByteBuffer content() {
+        if (parts.length > 1) {
+            throw new UnsupportedOperationException("Message at offset " + offset + " is larger than 2 GB");
+        }
+        return parts[0];
+    }
+
+    /**
+     * @return a new stream over the bytes of the message, which can be parsed
+     *         as is.
+     */
+    public InputStream asInputStream() {
+        if (parts.length == 1) {
+            return new CharBufferWrapper.ByteBufferInputStream(parts[0].duplicate());
+        }
+        List<InputStream> streams = new ArrayList<InputStream>(parts.length);
+        for (ByteBuffer part : parts) {
+            streams.add(new CharBufferWrapper.ByteBufferInputStream(part.duplicate()));
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    /**
+     * Returns a reader decoding the message as it is read, through a buffer
+     * whose size does not depend on the size of the message. Malformed or
+     * unmappable input is reported as a
+     * {@link java.nio.charset.CharacterCodingException} when read.
+     *
+     * @param charset charset of the mbox.
+     * @return a new reader over the message.
+     */
+    public Reader asReader(Charset charset) {
+        return new InputStreamReader(asInputStream(), charset.newDecoder());
+    }
+
+    /**
+     * Decodes the message.
+     *
+     * @param charset charset of the mbox.
+     * @return the decoded message.
+     * @throws UncheckedIOException if the message cannot be decoded with the given charset.
+     * @throws UnsupportedOperationException if the message is larger than 2 GB.
+     */
+    public CharBufferWrapper decode(Charset charset) {
+        try {
+            return new CharBufferWrapper(charset.newDecoder().decode(content().duplicate()));
+        } catch (CharacterCodingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MboxMessage[offset: " + offset + ", length: " + getLength() + "]";
+    }
+
+}
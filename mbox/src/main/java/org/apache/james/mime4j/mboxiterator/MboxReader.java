@@ -0,0 +1,144 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.mboxiterator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>
+ * Byte-level reader of the messages of an mbox file. The file is mapped and
+ * scanned for From_ lines without being decoded, and every message is returned
+ * as a {@link MboxMessage}, a slice of the mapped file that can be parsed as
+ * is, whatever the charset of its content.
+ * </p>
+ * <p>
+ * Only lines starting with <code>"From "</code> are checked against the From_
+ * line pattern. Messages are not limited in size, and can be processed in
+ * parallel through {@link #parallelStream()}.
+ * </p>
+ * <p>
+ * The file is mapped one window at a time (256 MB by default, see
+ * {@link Builder#windowSize(int)}), so that files larger than 2 GB can be read.
+ * A message that straddles a window edge is mapped on its own.
+ * </p>
+ */
+public class MboxReader implements Iterable<MboxMessage>, Closeable {
+
+    private final MappedMbox mbox;
+    private final Pattern fromLine;
+    private final long first;
+
+    MboxReader(final MappedMbox mbox, final Pattern fromLine) {
+        this.mbox = mbox;
+        this.fromLine = fromLine;
+        this.first = mbox.newCursor().find(new FromLineScanner(fromLine), 0, mbox.size());
+    }
+
+    /**
+     * @return whether the mbox holds no From_ line.
+     */
+    boolean isEmpty() {
+        return first < 0;
+    }
+
+    public Iterator<MboxMessage> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    /**
+     * Returns a {@link Spliterator} splitting the mbox at From_ lines. Failures
+     * to map the file are reported as {@link java.io.UncheckedIOException}.
+     */
+    @Override
+    public Spliterator<MboxMessage> spliterator() {
+        return new MboxSpliterator(mbox, fromLine, first, mbox.size());
+    }
+
+    /**
+     * @return a sequential stream over the messages.
+     */
+    public Stream<MboxMessage> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * @return a parallel stream over the messages.
+     */
+    public Stream<MboxMessage> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    public void close() throws IOException {}
+
+    public static Builder fromFile(Path filePath) {
+        return new Builder(filePath);
+    }
+
+    public static Builder fromFile(File filePath) {
+        return fromFile(filePath.toPath());
+    }
+
+    public static Builder fromFile(String file) {
+        return fromFile(new File(file));
+    }
+
+    public static class Builder {
+        private final Path path;
+        private String regexpPattern = FromLinePatterns.DEFAULT;
+        private int flags = Pattern.MULTILINE;
+        private int windowSize = MappedMbox.DEFAULT_WINDOW_SIZE;
+
+        private Builder(Path path) {
+            this.path = path;
+        }
+
+        public Builder fromLine(String fromLine) {
+            this.regexpPattern = fromLine;
+            return this;
+        }
+
+        public Builder flags(int flags) {
+            this.flags = flags;
+            return this;
+        }
+
+        /**
+         * @param windowSize size, in bytes, of the mapped windows the file is
+         *        read through.
+         */
+        public Builder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        public MboxReader build() throws IOException {
+            return new MboxReader(new MappedMbox(path, windowSize), Pattern.compile(regexpPattern, flags));
+        }
+    }
+
+}
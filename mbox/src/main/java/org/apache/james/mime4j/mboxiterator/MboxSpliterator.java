@@ -0,0 +1,97 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.mboxiterator;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * {@link Spliterator} over the messages of a mapped mbox, which splits the
+ * mbox at From_ lines into independent ranges.
+ * <p>
+ * A range always starts at a From_ line and ends at a From_ line or at the
+ * end of the mbox. Ranges share nothing but the read-only mapped file, each
+ * one reads it through its own {@link MappedMbox.Cursor}, and they can be
+ * traversed in parallel.
+ */
+class MboxSpliterator implements Spliterator<MboxMessage> {
+
+    /** Ranges shorter than this are not split */
+    private static final int MIN_SPLIT_SIZE = 64 * 1024;
+    /** Rough size of a message, to estimate the number of messages of a range */
+    private static final int AVERAGE_MESSAGE_SIZE = 8 * 1024;
+
+    private final MappedMbox mbox;
+    private final Pattern fromLine;
+    private final FromLineScanner scanner;
+    private final MappedMbox.Cursor cursor;
+    private long position;
+    private final long end;
+
+    /**
+     * @param mbox mapped mbox.
+     * @param fromLine From_ line pattern.
+     * @param position offset of the first From_ line of the range.
+     * @param end end of the range.
+     */
+    MboxSpliterator(MappedMbox mbox, Pattern fromLine, long position, long end) {
+        this.mbox = mbox;
+        this.fromLine = fromLine;
+        this.scanner = new FromLineScanner(fromLine);
+        this.cursor = mbox.newCursor();
+        this.position = position;
+        this.end = end;
+    }
+
+    public boolean tryAdvance(Consumer<? super MboxMessage> action) {
+        if (position < 0 || position >= end) {
+            return false;
+        }
+        long start = Math.min(cursor.nextLine(position), end);
+        long next = start < end ? cursor.find(scanner, start, end) : -1;
+        long limit = next < 0 ? end : next;
+        position = limit;
+        action.accept(cursor.message(start, limit));
+        return true;
+    }
+
+    public Spliterator<MboxMessage> trySplit() {
+        if (position < 0 || end - position < MIN_SPLIT_SIZE) {
+            return null;
+        }
+        long mid = position + (end - position) / 2;
+        long split = cursor.find(scanner, mid, end);
+        if (split <= position) {
+            return null;
+        }
+        MboxSpliterator prefix = new MboxSpliterator(mbox, fromLine, position, split);
+        position = split;
+        return prefix;
+    }
+
+    public long estimateSize() {
+        return position < 0 ? 0 : Math.max(1, (end - position) / AVERAGE_MESSAGE_SIZE);
+    }
+
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+}
@@ -0,0 +1,134 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.mboxiterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MboxIndexTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] messages(int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            sb.append("From sender").append(i).append("@example.com Fri Sep 09 14:04:52 2011\r\n");
+            if (i % 5 != 0) {
+                sb.append("Message-ID:\r\n <").append(i).append("@example.com>\r\n");
+            }
+            sb.append("Date: Fri, 9 Sep 2011 14:04:").append(10 + i % 50).append(" +0200 (CEST)\r\n");
+            sb.append("Subject: message ").append(i).append("\r\n\r\n");
+            sb.append("Message-ID: <not-a-header@example.com>\r\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void assertMatchesReader(Path mbox, MboxIndex index) throws IOException {
+        List<MboxMessage> messages = new ArrayList<MboxMessage>();
+        for (MboxMessage message : MboxReader.fromFile(mbox).build()) {
+            messages.add(message);
+        }
+        Assert.assertEquals(messages.size(), index.count());
+        for (int i = 0; i < messages.size(); i++) {
+            Assert.assertEquals(messages.get(i).getOffset(), index.getOffset(i));
+            Assert.assertEquals(messages.get(i).getLength(), index.getLength(i));
+            Assert.assertEquals(messages.get(i).asByteBuffer(), index.getMessage(i).asByteBuffer());
+        }
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        Path mbox = folder.newFile("test.mbox").toPath();
+        Files.write(mbox, messages(0, 100));
+        MboxIndex index = MboxIndex.forFile(mbox).messageIds(true).dates(true).build();
+        assertMatchesReader(mbox, index);
+        Assert.assertNull(index.getMessageId(0));
+        Assert.assertEquals("<1@example.com>", index.getMessageId(1));
+        Assert.assertEquals(1315569851000L, index.getDate(1).getTime());
+        Assert.assertTrue(Files.exists(mbox.resolveSibling("test.mbox.idx")));
+
+        MboxIndex loaded = MboxIndex.forFile(mbox).messageIds(true).dates(true).build();
+        Assert.assertEquals(100, loaded.count());
+        Assert.assertEquals(index.getOffset(99), loaded.getOffset(99));
+        Assert.assertEquals("<99@example.com>", loaded.getMessageId(99));
+        Assert.assertEquals(index.getDate(42), loaded.getDate(42));
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        Path mbox = folder.newFile("test.mbox").toPath();
+        Files.write(mbox, messages(0, 10));
+        Assert.assertEquals(10, MboxIndex.forFile(mbox).messageIds(true).build().count());
+
+        Files.write(mbox, messages(10, 25), StandardOpenOption.APPEND);
+        MboxIndex index = MboxIndex.forFile(mbox).messageIds(true).build();
+        assertMatchesReader(mbox, index);
+        Assert.assertEquals("<24@example.com>", index.getMessageId(24));
+        Assert.assertNull(index.getDate(24));
+    }
+
+    @Test
+    public void testRebuild() throws IOException {
+        Path mbox = folder.newFile("test.mbox").toPath();
+        File indexFile = folder.newFile("other.idx");
+        Files.write(mbox, messages(0, 20));
+        Assert.assertEquals(20, MboxIndex.forFile(mbox).indexFile(indexFile.toPath()).build().count());
+
+        Files.write(mbox, messages(0, 5));
+        MboxIndex index = MboxIndex.forFile(mbox).indexFile(indexFile.toPath()).build();
+        assertMatchesReader(mbox, index);
+
+        // options differ from the ones of the side file
+        Assert.assertEquals("<3@example.com>",
+                MboxIndex.forFile(mbox).indexFile(indexFile.toPath()).messageIds(true).build().getMessageId(3));
+    }
+
+    @Test
+    public void testRewrittenAndGrown() throws IOException {
+        Path mbox = folder.newFile("test.mbox").toPath();
+        Files.write(mbox, messages(0, 3));
+        Assert.assertEquals(3, MboxIndex.forFile(mbox).build().count());
+
+        // longer sender addresses shift every message
+        Files.write(mbox, messages(100, 104));
+        MboxIndex index = MboxIndex.forFile(mbox).build();
+        assertMatchesReader(mbox, index);
+        Assert.assertEquals(4, index.count());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() throws IOException {
+        Path mbox = folder.newFile("test.mbox").toPath();
+        Files.write(mbox, messages(0, 3));
+        MboxIndex.forFile(mbox).build().getMessage(3);
+    }
+
+}
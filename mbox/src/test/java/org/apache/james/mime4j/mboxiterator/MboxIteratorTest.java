@@ -21,9 +21,14 @@ package org.apache.james.mime4j.mboxiterator;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.rules.TestName;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Tests for {@link MboxIterator}.
@@ -32,6 +37,8 @@ public class MboxIteratorTest {
 
     @Rule
     public final TestName name = new TestName();
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
     public static final String MBOX_PATH = "src/test/resources/test-1/mbox.rlug";
     private final int DEFAULT_MESSAGE_SIZE = 10 * 1024;
     // number of chars oin our largest test message
@@ -59,6 +66,121 @@ public class MboxIteratorTest {
         }
     }
 
+    @Test
+    public void testSlidingWindow() throws IOException {
+        for (int i = CHARS_IN_MAX_MSG; i < MORE_THAN_FILE_SIZE; i += 97) {
+            int count = 0;
+            for (CharBufferWrapper msg : MboxIterator.fromFile(MBOX_PATH).maxMessageSize(i).windowSize(1).build()) {
+                Assert.assertEquals("Missmatch with file " + count, fileToString(new File(MBOX_PATH + "-" + count)),
+                        msg.toString());
+                count++;
+            }
+            Assert.assertEquals(5, count);
+        }
+    }
+
+    @Test
+    public void testMessagesAreNotLimitedInSize() throws IOException {
+        int count = 0;
+        // far smaller than the messages, which would not be decoded by the iterator
+        for (MboxMessage message : MboxIterator.fromFile(MBOX_PATH).maxMessageSize(16).build().messages()) {
+            StringBuilder sb = new StringBuilder();
+            Reader reader = message.asReader(StandardCharsets.UTF_8);
+            try {
+                char[] buf = new char[64];
+                int n;
+                while ((n = reader.read(buf)) != -1) {
+                    sb.append(buf, 0, n);
+                }
+            } finally {
+                reader.close();
+            }
+            Assert.assertEquals(fileToString(new File(MBOX_PATH + "-" + count)), sb.toString());
+            count++;
+        }
+        Assert.assertEquals(5, count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoFromLine() throws IOException {
+        File mbox = folder.newFile("empty.mbox");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mbox), StandardCharsets.UTF_8);
+        try {
+            writer.write("no messages\n");
+        } finally {
+            writer.close();
+        }
+        MboxIterator.fromFile(mbox).build();
+    }
+
+    @Test
+    public void testNonAsciiCompatibleCharset() throws IOException {
+        File mbox = folder.newFile("utf16.mbox");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mbox), StandardCharsets.UTF_16LE);
+        try {
+            writer.write("From sender1@example.com Fri Sep 09 14:04:52 2011\nSubject: one\n\nfirst\n\n");
+            writer.write("From sender2@example.com Fri Sep 09 14:04:52 2011\nSubject: two\n\nsecond\n\n");
+        } finally {
+            writer.close();
+        }
+        int count = 0;
+        for (CharBufferWrapper msg : MboxIterator.fromFile(mbox).charset(StandardCharsets.UTF_16LE).build()) {
+            Assert.assertTrue(msg.toString().contains("Subject: " + (count == 0 ? "one" : "two")));
+            count++;
+        }
+        Assert.assertEquals(2, count);
+        Assert.assertEquals(2, MboxIterator.fromFile(mbox).charset(StandardCharsets.UTF_16LE).build().stream().count());
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        List<String> messages = MboxIterator.fromFile(MBOX_PATH).build().stream()
+                .map(CharBufferWrapper::toString)
+                .collect(Collectors.toList());
+        Assert.assertEquals(5, messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Assert.assertEquals(fileToString(new File(MBOX_PATH + "-" + i)), messages.get(i));
+        }
+    }
+
+    @Test
+    public void testParallelStream() throws IOException {
+        assertParallelStream("\n");
+    }
+
+    @Test
+    public void testParallelStreamWithCrlf() throws IOException {
+        assertParallelStream("\r\n");
+    }
+
+    private void assertParallelStream(String eol) throws IOException {
+        File mbox = folder.newFile("large.mbox");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mbox), StandardCharsets.UTF_8);
+        try {
+            for (int i = 0; i < 2000; i++) {
+                writer.write("From sender" + i + "@example.com Fri Sep 09 14:04:52 2011" + eol);
+                writer.write("Subject: message " + i + eol + eol);
+                writer.write("From the body of message " + i + ", not a From_ line" + eol);
+                writer.write(">From escaped" + eol + eol);
+            }
+        } finally {
+            writer.close();
+        }
+        MboxIterator iterator = MboxIterator.fromFile(mbox).build();
+        Assert.assertNotNull(iterator.spliterator().trySplit());
+
+        List<String> expected = new ArrayList<String>();
+        for (CharBufferWrapper message : iterator) {
+            expected.add(message.toString());
+        }
+        List<String> actual = MboxIterator.fromFile(mbox).build().parallelStream()
+                .map(CharBufferWrapper::toString)
+                .collect(Collectors.toList());
+        Assert.assertEquals(2000, expected.size());
+        Assert.assertTrue(expected.get(1).startsWith("Subject: message 1" + eol));
+        Assert.assertEquals(expected, actual);
+    }
+
     private void iterateWithMaxMessage(int maxMessageSize) throws IOException {
         int count = 0;
         for (CharBufferWrapper msg : MboxIterator.fromFile(MBOX_PATH).maxMessageSize(maxMessageSize).build()) {
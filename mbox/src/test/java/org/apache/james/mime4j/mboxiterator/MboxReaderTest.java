@@ -0,0 +1,131 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mime4j.mboxiterator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MboxReaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] toByteArray(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testMessages() throws IOException {
+        File mbox = new File(MboxIteratorTest.MBOX_PATH);
+        byte[] content = Files.readAllBytes(mbox.toPath());
+        int count = 0;
+        for (MboxMessage message : MboxReader.fromFile(mbox).build()) {
+            byte[] expected = Files.readAllBytes(new File(MboxIteratorTest.MBOX_PATH + "-" + count).toPath());
+            Assert.assertEquals(expected.length, message.getLength());
+            Assert.assertArrayEquals(expected, toByteArray(message.asInputStream()));
+            ByteBuffer buffer = message.asByteBuffer();
+            Assert.assertTrue(buffer.isReadOnly());
+            Assert.assertEquals(content[(int) message.getOffset()], buffer.get(0));
+            Assert.assertEquals('\n', content[(int) message.getOffset() - 1]);
+            count++;
+        }
+        Assert.assertEquals(5, count);
+    }
+
+    @Test
+    public void testEightBitContentIsNotDecoded() throws IOException {
+        File mbox = folder.newFile("latin1.mbox");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("From someone@example.com Fri Sep 09 14:04:52 2011\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.write("Subject: café\r\n\r\nnaïve\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        out.write("From - Wed Apr 02 06:51:08 2014\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.write("Subject: second\r\n".getBytes(StandardCharsets.US_ASCII));
+        Files.write(mbox.toPath(), out.toByteArray());
+
+        List<MboxMessage> messages = new ArrayList<MboxMessage>();
+        for (MboxMessage message : MboxReader.fromFile(mbox).fromLine(FromLinePatterns.DEFAULT2).build()) {
+            messages.add(message);
+        }
+        Assert.assertEquals(2, messages.size());
+        Assert.assertArrayEquals("Subject: café\r\n\r\nnaïve\r\n".getBytes(StandardCharsets.ISO_8859_1),
+                toByteArray(messages.get(0).asInputStream()));
+        Assert.assertEquals("Subject: second\r\n",
+                messages.get(1).decode(StandardCharsets.US_ASCII).toString());
+    }
+
+    @Test
+    public void testWindowEdges() throws IOException {
+        File mbox = folder.newFile("windows.mbox");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 300; i++) {
+            out.write(("From sender" + i + "@example.com Fri Sep 09 14:04:52 2011\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(("Subject: message " + i + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (int j = 0; j < i % 37; j++) {
+                out.write("From the body, not a From_ line\r\n".getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        byte[] content = out.toByteArray();
+        Files.write(mbox.toPath(), content);
+
+        List<MboxMessage> expected = new ArrayList<MboxMessage>();
+        for (MboxMessage message : MboxReader.fromFile(mbox).build()) {
+            expected.add(message);
+        }
+        Assert.assertEquals(300, expected.size());
+        for (int windowSize : new int[] { 100, 1000, 4096 }) {
+            List<MboxMessage> messages = new ArrayList<MboxMessage>();
+            for (MboxMessage message : MboxReader.fromFile(mbox).windowSize(windowSize).build()) {
+                messages.add(message);
+            }
+            Assert.assertEquals(expected.size(), messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                Assert.assertEquals(expected.get(i).getOffset(), messages.get(i).getOffset());
+                Assert.assertEquals(expected.get(i).asByteBuffer(), messages.get(i).asByteBuffer());
+            }
+            Assert.assertEquals(300, MboxReader.fromFile(mbox).windowSize(windowSize).build()
+                    .parallelStream().count());
+        }
+    }
+
+    @Test
+    public void testNoFromLine() throws IOException {
+        File mbox = folder.newFile("empty.mbox");
+        Files.write(mbox.toPath(), "no messages\n".getBytes(StandardCharsets.US_ASCII));
+        Assert.assertFalse(MboxReader.fromFile(mbox).build().iterator().hasNext());
+    }
+
+}